@@ -0,0 +1,102 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the lazy initialization patterns that LazyInitBan accepts and suggests. All getters are measured
+ * after the value has been initialized, since that is the path every later call takes.
+ *
+ * <p>Run it with several threads: a synchronized getter takes a lock on every call, while the
+ * holder class idiom and double checked locking only read a field once initialized.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class LazyInitBenchmark {
+
+  private final Object eager = new Object();
+
+  private Object synchronizedValue;
+
+  private volatile Object doubleCheckedValue;
+
+  private Object racyValue;
+
+  private static final class Holder {
+
+    static final Object VALUE = new Object();
+  }
+
+  /** Baseline: a final field that is initialized eagerly. */
+  @Benchmark
+  public Object eager() {
+    return eager;
+  }
+
+  /** A synchronized getter, which LazyInitBan asks for when a lazy getter is not synchronized. */
+  @Benchmark
+  public Object synchronizedGetter() {
+    synchronized (this) {
+      if (synchronizedValue == null) {
+        synchronizedValue = new Object();
+      }
+      return synchronizedValue;
+    }
+  }
+
+  /** The initialization on demand holder idiom, which relies on class initialization instead. */
+  @Benchmark
+  public Object holder() {
+    return Holder.VALUE;
+  }
+
+  /** Double checked locking on a volatile field. */
+  @Benchmark
+  public Object doubleCheckedLocking() {
+    Object value = doubleCheckedValue;
+    if (value == null) {
+      synchronized (this) {
+        value = doubleCheckedValue;
+        if (value == null) {
+          value = new Object();
+          doubleCheckedValue = value;
+        }
+      }
+    }
+    return value;
+  }
+
+  /**
+   * The racy single check idiom that LazyInitBan accepts on a {@code @LazyInit} field. The value
+   * may be computed more than once, so it is only correct for immutable values.
+   */
+  @Benchmark
+  public Object racySingleCheck() {
+    Object value = racyValue;
+    if (value == null) {
+      value = new Object();
+      racyValue = value;
+    }
+    return value;
+  }
+}
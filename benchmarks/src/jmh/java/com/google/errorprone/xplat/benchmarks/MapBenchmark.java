@@ -0,0 +1,148 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.benchmarks;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the maps that UnnecessaryConcurrentHashMap suggests with the alternatives.
+ *
+ * <p>{@link #shared} uses one map for all benchmark threads, which is what a published map looks
+ * like. Run it with several threads to see how each strategy behaves under contention.
+ * {@link #confined} gives every thread its own map, which is what a map that never escapes its
+ * method looks like, and shows what an uncontended lock costs compared to a plain HashMap.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MapBenchmark {
+
+  /** Number of distinct keys, small enough for all maps to stay in the cache. */
+  private static final int KEYS = 1024;
+
+  /** The maps that are safe to share between threads. */
+  public enum SharedStrategy {
+    SYNCHRONIZED_MAP,
+    CONCURRENT_HASH_MAP,
+    STRIPED_MAP;
+
+    Map<Integer, Integer> newMap() {
+      switch (this) {
+        case SYNCHRONIZED_MAP:
+          return Collections.synchronizedMap(new HashMap<>());
+        case CONCURRENT_HASH_MAP:
+          return new ConcurrentHashMap<>();
+        case STRIPED_MAP:
+          return new StripedMap<>(16);
+      }
+      throw new AssertionError(this);
+    }
+  }
+
+  /** The maps that are only correct as long as they are confined to a single thread. */
+  public enum ConfinedStrategy {
+    HASH_MAP,
+    SYNCHRONIZED_MAP,
+    CONCURRENT_HASH_MAP;
+
+    Map<Integer, Integer> newMap() {
+      switch (this) {
+        case HASH_MAP:
+          return new HashMap<>();
+        case SYNCHRONIZED_MAP:
+          return Collections.synchronizedMap(new HashMap<>());
+        case CONCURRENT_HASH_MAP:
+          return new ConcurrentHashMap<>();
+      }
+      throw new AssertionError(this);
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class SharedMap {
+
+    @Param
+    public SharedStrategy strategy;
+
+    /** Percentage of the operations that are reads, the rest are writes. */
+    @Param({"100", "90", "50"})
+    public int readPercent;
+
+    Map<Integer, Integer> map;
+
+    @Setup
+    public void setup() {
+      map = strategy.newMap();
+      fill(map);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class ConfinedMap {
+
+    @Param
+    public ConfinedStrategy strategy;
+
+    /** Percentage of the operations that are reads, the rest are writes. */
+    @Param({"100", "90", "50"})
+    public int readPercent;
+
+    Map<Integer, Integer> map;
+
+    @Setup
+    public void setup() {
+      map = strategy.newMap();
+      fill(map);
+    }
+  }
+
+  private static void fill(Map<Integer, Integer> map) {
+    for (int i = 0; i < KEYS; i++) {
+      map.put(i, i);
+    }
+  }
+
+  private static Integer access(Map<Integer, Integer> map, int readPercent) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    Integer key = random.nextInt(KEYS);
+
+    if (random.nextInt(100) < readPercent) {
+      return map.get(key);
+    }
+    return map.put(key, key);
+  }
+
+  @Benchmark
+  public Integer shared(SharedMap state) {
+    return access(state.map, state.readPercent);
+  }
+
+  @Benchmark
+  public Integer confined(ConfinedMap state) {
+    return access(state.map, state.readPercent);
+  }
+}
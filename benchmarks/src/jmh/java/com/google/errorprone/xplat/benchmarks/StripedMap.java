@@ -0,0 +1,75 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.benchmarks;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A map that is split into a fixed number of stripes, each guarded by its own lock. This is the
+ * usual middle ground between a single {@code Collections.synchronizedMap} lock and
+ * {@code ConcurrentHashMap}, and only relies on monitors, which translate to every platform.
+ */
+final class StripedMap<K, V> extends AbstractMap<K, V> {
+
+  private final Map<K, V>[] stripes;
+
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  StripedMap(int stripeCount) {
+    stripes = new Map[stripeCount];
+    for (int i = 0; i < stripeCount; i++) {
+      stripes[i] = Collections.synchronizedMap(new HashMap<>());
+    }
+  }
+
+  private Map<K, V> stripe(Object key) {
+    int hash = key == null ? 0 : key.hashCode();
+    // Spread the high bits, as HashMap does, before picking a stripe
+    return stripes[Math.floorMod(hash ^ (hash >>> 16), stripes.length)];
+  }
+
+  @Override
+  public V get(Object key) {
+    return stripe(key).get(key);
+  }
+
+  @Override
+  public V put(K key, V value) {
+    return stripe(key).put(key, value);
+  }
+
+  @Override
+  public V remove(Object key) {
+    return stripe(key).remove(key);
+  }
+
+  /** Returns a snapshot of the entries, which is not needed by the benchmarks on the hot path. */
+  @Override
+  public Set<Entry<K, V>> entrySet() {
+    Set<Entry<K, V>> entries = new HashSet<>();
+    for (Map<K, V> stripe : stripes) {
+      synchronized (stripe) {
+        for (Entry<K, V> entry : stripe.entrySet()) {
+          entries.add(new SimpleImmutableEntry<>(entry));
+        }
+      }
+    }
+    return entries;
+  }
+}
@@ -0,0 +1,194 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.gradle;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.inject.Inject;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.SkipWhenEmpty;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
+
+/**
+ * Runs the xplat checkers on Java sources that have already been compiled, in a Gradle worker
+ * process. The sources are analyzed by javac with the {@code -Xplugin:Xplat} plugin, which stops
+ * after the analysis, so no classes are written again.
+ *
+ * <p>The findings are written to {@link #getReport()}, and the task fails if there are errors
+ * unless {@link #getIgnoreFailures()} is set. Since all inputs are declared, the report is taken
+ * from the build cache when the sources, the class path and the checkers have not changed, unless
+ * only the changes since {@link #getDiffBase()} are checked.
+ */
+@CacheableTask
+public class XplatCheck extends DefaultTask {
+
+  private final WorkerExecutor workerExecutor;
+
+  private final ConfigurableFileCollection source;
+
+  private final ConfigurableFileCollection classpath;
+
+  private final ConfigurableFileCollection checkerClasspath;
+
+  private final ListProperty<String> pluginArgs;
+
+  private final ConfigurableFileCollection configFiles;
+
+  private final Property<String> encoding;
+
+  private final Property<String> diffBase;
+
+  private final Property<Boolean> ignoreFailures;
+
+  private final RegularFileProperty report;
+
+  @Inject
+  public XplatCheck(WorkerExecutor workerExecutor, ObjectFactory objects) {
+    this.workerExecutor = workerExecutor;
+    this.source = objects.fileCollection();
+    this.classpath = objects.fileCollection();
+    this.checkerClasspath = objects.fileCollection();
+    this.pluginArgs = objects.listProperty(String.class).empty();
+    this.configFiles = objects.fileCollection();
+    this.encoding = objects.property(String.class);
+    this.diffBase = objects.property(String.class);
+    this.ignoreFailures = objects.property(Boolean.class).convention(false);
+    this.report = objects.fileProperty();
+
+    // The findings then depend on the state of the git work tree, which is not an input.
+    getOutputs().doNotCacheIf("a git diff base is set", task -> diffBase.isPresent());
+    getOutputs().upToDateWhen(task -> !diffBase.isPresent());
+  }
+
+  /** The Java sources to check. */
+  @InputFiles
+  @SkipWhenEmpty
+  @PathSensitive(PathSensitivity.RELATIVE)
+  public ConfigurableFileCollection getSource() {
+    return source;
+  }
+
+  /** The class path the sources were compiled with, including their compiled classes. */
+  @Classpath
+  public ConfigurableFileCollection getClasspath() {
+    return classpath;
+  }
+
+  /** The xplat checkers and Error Prone, loaded by javac as its plugin path. */
+  @Classpath
+  public ConfigurableFileCollection getCheckerClasspath() {
+    return checkerClasspath;
+  }
+
+  /**
+   * The {@code Checker:Option=Value} arguments of the plugin, e.g. {@code Xplat:Checks=XplatBans}
+   * or {@code XplatBans:JSON=bans.json}. Neither names nor values may contain spaces.
+   */
+  @Input
+  public ListProperty<String> getPluginArgs() {
+    return pluginArgs;
+  }
+
+  /**
+   * The files that {@link #getPluginArgs()} refer to, such as ban configs, so that the report is
+   * only reused as long as they have not changed. The {@code .xplatbans.json} files in and above
+   * the source directories are added by {@link XplatCheckPlugin}.
+   */
+  @InputFiles
+  @PathSensitive(PathSensitivity.NONE)
+  public ConfigurableFileCollection getConfigFiles() {
+    return configFiles;
+  }
+
+  /** The encoding of the sources, or the platform encoding if not set. */
+  @Input
+  @Optional
+  public Property<String> getEncoding() {
+    return encoding;
+  }
+
+  /**
+   * The git revision to compare the sources with. If set, only the sources that changed since this
+   * revision are analyzed, and only the findings in their changed classes and methods are
+   * reported. Set from the {@code xplatDiffBase} project property by default.
+   */
+  @Input
+  @Optional
+  public Property<String> getDiffBase() {
+    return diffBase;
+  }
+
+  /** Whether the build goes on if errors are found. Defaults to {@code false}. */
+  @Input
+  public Property<Boolean> getIgnoreFailures() {
+    return ignoreFailures;
+  }
+
+  /** The report with all findings, one per line. */
+  @OutputFile
+  public RegularFileProperty getReport() {
+    return report;
+  }
+
+  @TaskAction
+  public void check() {
+    // Every task gets its own worker process, so the checks of several projects run in parallel,
+    // and while they do, Gradle can already run other tasks of this project.
+    WorkQueue queue = workerExecutor.processIsolation(
+        spec -> spec.forkOptions(fork -> fork.jvmArgs(javacJvmArgs())));
+    queue.submit(XplatCheckAction.class, parameters -> {
+      parameters.getSource().from(source);
+      parameters.getClasspath().from(classpath);
+      parameters.getCheckerClasspath().from(checkerClasspath);
+      parameters.getPluginArgs().set(pluginArgs);
+      parameters.getEncoding().set(encoding);
+      parameters.getDiffBase().set(diffBase);
+      parameters.getIgnoreFailures().set(ignoreFailures);
+      parameters.getProjectDirectory().set(getProject().getLayout().getProjectDirectory());
+      parameters.getReport().set(report);
+    });
+  }
+
+  /** Error Prone needs the javac internals, which are encapsulated from JDK 16 on. */
+  private static List<String> javacJvmArgs() {
+    List<String> args = new ArrayList<>();
+    if (Runtime.version().feature() < 16) {
+      return args;
+    }
+    for (String pkg :
+        new String[] {"api", "file", "main", "model", "parser", "processing", "tree", "util"}) {
+      args.add("--add-exports=jdk.compiler/com.sun.tools.javac." + pkg + "=ALL-UNNAMED");
+    }
+    for (String pkg : new String[] {"code", "comp"}) {
+      args.add("--add-opens=jdk.compiler/com.sun.tools.javac." + pkg + "=ALL-UNNAMED");
+    }
+    return args;
+  }
+}
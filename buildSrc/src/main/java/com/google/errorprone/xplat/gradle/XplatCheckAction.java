@@ -0,0 +1,236 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.gradle;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+
+/**
+ * The work of an {@link XplatCheck} task, run in a worker process: analyzes the sources with javac
+ * and the {@code -Xplugin:Xplat} plugin, and writes the findings to the report.
+ */
+public abstract class XplatCheckAction implements WorkAction<XplatCheckAction.Parameters> {
+
+  /** The diagnostic codes javac uses for the findings of the plugin. */
+  private static final String FINDING_CODE_SUFFIX = ".proc.messager";
+
+  /** The parameters of the work, copied from the {@link XplatCheck} task. */
+  public interface Parameters extends WorkParameters {
+
+    ConfigurableFileCollection getSource();
+
+    ConfigurableFileCollection getClasspath();
+
+    ConfigurableFileCollection getCheckerClasspath();
+
+    ListProperty<String> getPluginArgs();
+
+    Property<String> getEncoding();
+
+    Property<String> getDiffBase();
+
+    Property<Boolean> getIgnoreFailures();
+
+    DirectoryProperty getProjectDirectory();
+
+    RegularFileProperty getReport();
+  }
+
+  @Override
+  public void execute() {
+    Parameters parameters = getParameters();
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler == null) {
+      throw new GradleException("xplatCheck needs to run on a JDK, not a JRE");
+    }
+
+    Path projectDir = parameters.getProjectDirectory().get().getAsFile().toPath();
+    List<String> plugin = new ArrayList<>();
+    plugin.add("Xplat");
+    plugin.addAll(parameters.getPluginArgs().get());
+
+    Set<File> sources = parameters.getSource().getFiles();
+    if (parameters.getDiffBase().isPresent()) {
+      // Only the changed sources are compiled, against the classes of all others, and the plugin
+      // skips the unchanged classes and methods in them.
+      String base = parameters.getDiffBase().get();
+      sources = changedSources(sources, base, projectDir);
+      plugin.add("Xplat:DiffBase=" + base);
+      plugin.add("Xplat:DiffDir=" + projectDir);
+    }
+
+    List<String> options = new ArrayList<>();
+    options.add("-classpath");
+    options.add(parameters.getClasspath().getAsPath());
+    options.add("-processorpath");
+    options.add(parameters.getCheckerClasspath().getAsPath());
+    options.add("-Xplugin:" + String.join(" ", plugin));
+    options.add("-proc:none");
+    // Stop once every class has been analyzed, even if some of them have findings, so that nothing
+    // is generated and all findings are reported.
+    options.add("-XDshould-stop.ifError=FLOW");
+    options.add("-XDshould-stop.ifNoError=FLOW");
+    options.add("-Xmaxerrs");
+    options.add(Integer.toString(Integer.MAX_VALUE));
+    options.add("-Xmaxwarns");
+    options.add(Integer.toString(Integer.MAX_VALUE));
+    if (parameters.getEncoding().isPresent()) {
+      options.add("-encoding");
+      options.add(parameters.getEncoding().get());
+    }
+
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    if (!sources.isEmpty()) {
+      try (StandardJavaFileManager fileManager =
+          compiler.getStandardFileManager(diagnostics, Locale.ROOT, null)) {
+        compiler.getTask(null, fileManager, diagnostics, options, null,
+            fileManager.getJavaFileObjectsFromFiles(sources)).call();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    List<String> lines = new ArrayList<>();
+    int errors = 0;
+    for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+      boolean error = diagnostic.getKind() == Diagnostic.Kind.ERROR;
+      // Besides the findings, only report errors, e.g. if the class path is incomplete. Other
+      // warnings of javac are already reported by compileJava.
+      if (!error && !diagnostic.getCode().endsWith(FINDING_CODE_SUFFIX)) {
+        continue;
+      }
+      if (error) {
+        errors++;
+      }
+      lines.add(format(diagnostic, projectDir));
+    }
+
+    File report = parameters.getReport().get().getAsFile();
+    try {
+      Files.createDirectories(report.toPath().getParent());
+      Files.write(report.toPath(), lines, StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    if (errors > 0 && !parameters.getIgnoreFailures().get()) {
+      throw new GradleException(String.format("The xplat checkers found %d error(s), see %s",
+          errors, report.toURI()));
+    }
+  }
+
+  /**
+   * Returns the sources that differ from the git revision {@code base}, including the ones that git
+   * does not track yet.
+   */
+  private static Set<File> changedSources(Set<File> sources, String base, Path projectDir) {
+    Set<Path> changed = new HashSet<>();
+    try {
+      Path root = Paths.get(git(projectDir, "rev-parse", "--show-toplevel").trim()).toRealPath();
+      String diff = git(root, "-c", "core.quotePath=false", "diff", "--name-only",
+          "--no-renames", base, "--");
+      String untracked = git(root, "-c", "core.quotePath=false", "ls-files", "--others",
+          "--exclude-standard", "--full-name");
+      for (String name : (diff + "\n" + untracked).split("\n")) {
+        if (!name.isEmpty()) {
+          changed.add(root.resolve(name).normalize());
+        }
+      }
+    } catch (IOException e) {
+      throw new GradleException(
+          String.format("The files changed since '%s' could not be found", base), e);
+    }
+
+    Set<File> changedSources = new LinkedHashSet<>();
+    for (File source : sources) {
+      try {
+        if (changed.contains(source.toPath().toRealPath())) {
+          changedSources.add(source);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return changedSources;
+  }
+
+  private static String git(Path directory, String... args) throws IOException {
+    List<String> command = new ArrayList<>();
+    command.add("git");
+    command.add("--no-pager");
+    command.addAll(Arrays.asList(args));
+    Process process = new ProcessBuilder(command)
+        .directory(directory.toFile())
+        .redirectError(ProcessBuilder.Redirect.INHERIT)
+        .start();
+
+    String output;
+    try (InputStream in = process.getInputStream()) {
+      output = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+    try {
+      int status = process.waitFor();
+      if (status != 0) {
+        throw new IOException(
+            String.format("%s failed in %s with exit status %d", command, directory, status));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+    return output;
+  }
+
+  /**
+   * Formats a diagnostic like javac does, with the path of the source relative to the project, so
+   * that cached reports are the same on every machine.
+   */
+  private static String format(Diagnostic<? extends JavaFileObject> diagnostic, Path projectDir) {
+    String source = "";
+    if (diagnostic.getSource() != null) {
+      Path path = projectDir.relativize(new File(diagnostic.getSource().toUri()).toPath());
+      source = path + ":" + diagnostic.getLineNumber() + ": ";
+    }
+    return source + diagnostic.getKind().toString().toLowerCase(Locale.ROOT) + ": "
+        + diagnostic.getMessage(Locale.ROOT);
+  }
+}
@@ -0,0 +1,122 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.gradle;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.attributes.Usage;
+import org.gradle.api.plugins.JavaBasePlugin;
+import org.gradle.api.plugins.JavaPluginConvention;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.compile.JavaCompile;
+import org.gradle.language.base.plugins.LifecycleBasePlugin;
+
+/**
+ * Registers an {@link XplatCheck} task per source set, e.g. {@code xplatCheck} for {@code main} and
+ * {@code xplatCheckTest} for {@code test}, which the {@code check} task depends on.
+ *
+ * <p>The checkers are taken from the {@code xplatChecker} configuration, together with Error
+ * Prone, which is inherited from the {@code errorprone} configuration when the {@code
+ * net.ltgt.errorprone} plugin is applied:
+ *
+ * <pre>
+ * apply plugin: 'com.google.errorprone.xplat.check'
+ *
+ * dependencies {
+ *     xplatChecker project(':plugin')
+ * }
+ * </pre>
+ */
+public class XplatCheckPlugin implements Plugin<Project> {
+
+  static final String CONFIGURATION_NAME = "xplatChecker";
+
+  /** The per-directory ban configs that the XplatBans checker looks up next to the sources. */
+  static final String DIRECTORY_CONFIG_NAME = ".xplatbans.json";
+
+  @Override
+  public void apply(Project project) {
+    project.getPluginManager().apply(JavaBasePlugin.class);
+
+    Configuration checker = project.getConfigurations().create(CONFIGURATION_NAME, config -> {
+      config.setVisible(false);
+      config.setCanBeConsumed(false);
+      config.setDescription("The xplat checkers and Error Prone, used by the xplatCheck tasks.");
+      config.attributes(attributes -> attributes.attribute(Usage.USAGE_ATTRIBUTE,
+          project.getObjects().named(Usage.class, Usage.JAVA_RUNTIME)));
+    });
+    project.getPluginManager().withPlugin("net.ltgt.errorprone",
+        plugin -> checker.extendsFrom(project.getConfigurations().getByName("errorprone")));
+
+    project.getConvention().getPlugin(JavaPluginConvention.class).getSourceSets().all(
+        sourceSet -> {
+          TaskProvider<XplatCheck> task = project.getTasks().register(
+              sourceSet.getTaskName("xplatCheck", null), XplatCheck.class,
+              check -> configure(project, check, sourceSet, checker));
+          project.getTasks().named(LifecycleBasePlugin.CHECK_TASK_NAME)
+              .configure(check -> check.dependsOn(task));
+        });
+  }
+
+  private static void configure(Project project, XplatCheck check, SourceSet sourceSet,
+      Configuration checker) {
+    check.setDescription(
+        "Runs the xplat checkers on the " + sourceSet.getName() + " Java sources.");
+    check.setGroup(LifecycleBasePlugin.VERIFICATION_GROUP);
+
+    // The compiled classes of the source set are on the class path, so the analysis depends on
+    // compileJava instead of running inside of it.
+    check.getSource().from(sourceSet.getJava());
+    check.getClasspath().from(sourceSet.getOutput().getClassesDirs(),
+        sourceSet.getCompileClasspath());
+    check.getCheckerClasspath().from(checker);
+    check.getConfigFiles().from(project.provider(() -> directoryConfigs(project, sourceSet)));
+    check.getDiffBase().set(project.provider(() -> (String) project.findProperty("xplatDiffBase")));
+    check.getEncoding().set(
+        project.getTasks().named(sourceSet.getCompileJavaTaskName(), JavaCompile.class)
+            .map(compile -> compile.getOptions().getEncoding()));
+    check.getReport().set(project.getLayout().getBuildDirectory()
+        .file("reports/xplat/" + sourceSet.getName() + ".txt"));
+  }
+
+  /**
+   * Returns the per-directory ban configs that apply to the sources of a source set: the ones in
+   * the source directories, and the ones in the directories above them.
+   */
+  private static List<Object> directoryConfigs(Project project, SourceSet sourceSet) {
+    List<Object> configs = new ArrayList<>();
+    Set<File> parents = new LinkedHashSet<>();
+    for (File srcDir : sourceSet.getJava().getSrcDirs()) {
+      configs.add(project.fileTree(srcDir, tree -> tree.include("**/" + DIRECTORY_CONFIG_NAME)));
+      for (File parent = srcDir.getParentFile(); parent != null; parent = parent.getParentFile()) {
+        parents.add(parent);
+      }
+    }
+    for (File parent : parents) {
+      File config = new File(parent, DIRECTORY_CONFIG_NAME);
+      if (config.isFile()) {
+        configs.add(config);
+      }
+    }
+    return configs;
+  }
+}
@@ -0,0 +1,172 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import com.google.common.collect.ImmutableList;
+import com.sun.tools.javac.util.Context;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Counters for every rule of an {@link XplatBanConfig} during a single compilation, written to a
+ * JSON lines report once the compilation has finished. Used by {@link XplatBans} with {@code
+ * -XepOpt:XplatBans:RuleReport=X}, where X is the path of the report.
+ *
+ * <p>For each rule, the report holds the number of lookups, i.e. how often the rule was tested
+ * against a class, package or method, the number of hits that were reported, and the number of
+ * hits that were suppressed with {@link XplatBanSuppression}. Rules that are never hit can be
+ * removed from the config, and rules with many lookups, such as package prefixes, are the
+ * expensive ones. For each section, the report holds the number of probes: every map lookup by
+ * name and every comparison with a rule counts once, whether or not it reaches a rule. A lookup of
+ * a rule is counted for every probe that reaches it. Probes are only counted when a verdict is not
+ * memoized yet.
+ *
+ * <p>The rules of each config are added the first time it is used, so the counters are created
+ * once and only incremented afterwards. They are {@link LongAdder}s, which stay cheap when checkers
+ * count from several threads at once. Configs merged from {@code .xplatbans.json} files share the
+ * counters of the rules they have in common, see {@link DirectoryBanConfigs}.
+ */
+final class BanRuleStats {
+
+  static final String CLASSES = "classes";
+
+  static final String PACKAGES = "packages";
+
+  static final String METHODS = "methods";
+
+  private static final Context.Key<BanRuleStats> KEY = new Context.Key<>();
+
+  private final Map<String, Map<String, Counters>> sections = new HashMap<>();
+
+  private final Map<String, LongAdder> probes = new HashMap<>();
+
+  /** The configs whose rules have been added. */
+  private final Set<XplatBanConfig> configs = ConcurrentHashMap.newKeySet();
+
+  private BanRuleStats() {
+    sections.put(CLASSES, new ConcurrentSkipListMap<>());
+    sections.put(PACKAGES, new ConcurrentSkipListMap<>());
+    sections.put(METHODS, new ConcurrentSkipListMap<>());
+    for (String section : sections.keySet()) {
+      probes.put(section, new LongAdder());
+    }
+  }
+
+  /**
+   * Returns the counters of the compilation that owns {@code context}, creating them on first
+   * use, with counters for the rules of {@code config}. The report at {@code reportPath} is written
+   * once the compilation has finished.
+   */
+  static BanRuleStats instance(Context context, XplatBanConfig config,
+      Path reportPath) {
+    BanRuleStats stats = context.get(KEY);
+    if (stats == null) {
+      stats = new BanRuleStats();
+      context.put(KEY, stats);
+
+      BanRuleStats finished = stats;
+      JsonLinesReport report = JsonLinesReport.instance(context, reportPath);
+      report.onFinish(() -> finished.report(report));
+    }
+    if (stats.configs.add(config)) {
+      stats.addRules(config);
+    }
+    return stats;
+  }
+
+  private void addRules(XplatBanConfig config) {
+    for (String className : config.classNames.keySet()) {
+      sections.get(CLASSES).putIfAbsent(className, new Counters());
+    }
+    for (String packageName : config.packageNames.keySet()) {
+      sections.get(PACKAGES).putIfAbsent(packageName, new Counters());
+    }
+    for (Map.Entry<String, ImmutableList<XplatBanConfig.MethodRule>> owner :
+        config.methodRules.entrySet()) {
+      for (XplatBanConfig.MethodRule rule : owner.getValue()) {
+        sections.get(METHODS).putIfAbsent(methodRuleName(owner.getKey(), rule.key),
+            new Counters());
+      }
+    }
+  }
+
+  /** Returns the name of a rule from the {@code methods} section in the report. */
+  static String methodRuleName(String owner, String key) {
+    return owner + "#" + key;
+  }
+
+  /**
+   * Counts a probe of the given section, and a lookup of {@code rule} if the probe reached it.
+   *
+   * @param rule the rule that was reached, or null if there is none.
+   */
+  void lookup(String section, String rule) {
+    probes.get(section).increment();
+    Counters counters = rule == null ? null : sections.get(section).get(rule);
+    if (counters != null) {
+      counters.lookups.increment();
+    }
+  }
+
+  /** Counts a hit of a rule from the given section, which may have been suppressed. */
+  void hit(String section, String rule, boolean suppressed) {
+    Counters counters = sections.get(section).get(rule);
+    if (counters != null) {
+      (suppressed ? counters.suppressedHits : counters.hits).increment();
+    }
+  }
+
+  private void report(JsonLinesReport report) {
+    try {
+      for (String section : new String[] {CLASSES, PACKAGES, METHODS}) {
+        for (Map.Entry<String, Counters> rule : sections.get(section).entrySet()) {
+          Counters counters = rule.getValue();
+          report.write(new JSONObject()
+              .put("kind", "banRule")
+              .put("section", section)
+              .put("rule", rule.getKey())
+              .put("lookups", counters.lookups.sum())
+              .put("hits", counters.hits.sum())
+              .put("suppressedHits", counters.suppressedHits.sum()));
+        }
+      }
+      for (String section : new String[] {CLASSES, PACKAGES, METHODS}) {
+        report.write(new JSONObject()
+            .put("kind", "banSection")
+            .put("section", section)
+            .put("probes", probes.get(section).sum()));
+      }
+    } catch (JSONException e) {
+      // Only thrown for non-finite numbers and null keys, which are never used here.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static final class Counters {
+
+    private final LongAdder lookups = new LongAdder();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder suppressedHits = new LongAdder();
+  }
+}
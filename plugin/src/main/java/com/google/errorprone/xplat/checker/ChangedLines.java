@@ -0,0 +1,162 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The lines of a git work tree that differ from a base revision, as computed by {@code git diff}.
+ * Used by {@link XplatPlugin} with {@code Xplat:DiffBase=REV} to only check the classes and methods
+ * that were changed since REV.
+ *
+ * <p>Both committed and uncommitted changes count, and files that git does not track yet, but
+ * does not ignore either, are changed as a whole. Where lines were only removed, the lines
+ * before and after the removal count as changed.
+ */
+final class ChangedLines {
+
+  /** The header of a hunk of a unified diff without context, e.g. {@code @@ -3,2 +4 @@}. */
+  private static final Pattern HUNK =
+      Pattern.compile("^@@ -\\d+(?:,\\d+)? \\+(\\d+)(?:,(\\d+))? @@");
+
+  private static final String NEW_FILE_PREFIX = "+++ ";
+
+  private static final String OLD_PATH_PREFIX = "a/";
+
+  private static final String NEW_PATH_PREFIX = "b/";
+
+  private final Map<Path, RangeSet<Long>> files;
+
+  private ChangedLines(Map<Path, RangeSet<Long>> files) {
+    this.files = files;
+  }
+
+  /**
+   * Runs git in {@code directory} to find the lines of its work tree that differ from the revision
+   * {@code base}.
+   */
+  static ChangedLines fromGit(String base, Path directory) throws IOException {
+    Path root = Paths.get(git(directory, "rev-parse", "--show-toplevel").trim()).toRealPath();
+    // The prefixes are explicit, as diff.noprefix or diff.mnemonicPrefix would change them.
+    String diff = git(root, "-c", "core.quotePath=false", "diff", "--no-color", "--no-ext-diff",
+        "--no-renames", "--unified=0", "--src-prefix=" + OLD_PATH_PREFIX,
+        "--dst-prefix=" + NEW_PATH_PREFIX, base, "--");
+    String untracked = git(root, "-c", "core.quotePath=false", "ls-files", "--others",
+        "--exclude-standard", "--full-name");
+    return parse(root, diff, untracked.isEmpty()
+        ? ImmutableList.of() : ImmutableList.copyOf(untracked.split("\n")));
+  }
+
+  /**
+   * Parses the output of {@code git diff --unified=0 --dst-prefix=b/} in the work tree at {@code
+   * root}, where {@code untracked} are the paths of the files git does not track, relative to
+   * {@code root}.
+   */
+  static ChangedLines parse(Path root, String diff, List<String> untracked) {
+    Map<Path, RangeSet<Long>> files = new HashMap<>();
+    RangeSet<Long> current = null;
+    for (String line : diff.split("\n")) {
+      if (line.startsWith(NEW_FILE_PREFIX)) {
+        String name = line.substring(NEW_FILE_PREFIX.length());
+        // Deleted files have no lines left to check.
+        current = name.startsWith(NEW_PATH_PREFIX)
+            ? files.computeIfAbsent(
+                root.resolve(name.substring(NEW_PATH_PREFIX.length())).normalize(),
+                unused -> TreeRangeSet.create())
+            : null;
+        continue;
+      }
+      Matcher hunk = HUNK.matcher(line);
+      if (current != null && hunk.find()) {
+        long start = Long.parseLong(hunk.group(1));
+        long count = hunk.group(2) == null ? 1 : Long.parseLong(hunk.group(2));
+        current.add(count == 0
+            ? Range.closed(start, start + 1)
+            : Range.closed(start, start + count - 1));
+      }
+    }
+    for (String name : untracked) {
+      RangeSet<Long> all = TreeRangeSet.create();
+      all.add(Range.all());
+      files.put(root.resolve(name).normalize(), all);
+    }
+    return new ChangedLines(files);
+  }
+
+  /** Returns whether any line of {@code file}, as returned by {@link #realPath}, was changed. */
+  boolean contains(Path file) {
+    return files.containsKey(file);
+  }
+
+  /**
+   * Returns whether any of the lines from {@code start} to {@code end} of {@code file}, as returned
+   * by {@link #realPath}, was changed.
+   */
+  boolean overlaps(Path file, long start, long end) {
+    RangeSet<Long> lines = files.get(file);
+    return lines != null && lines.intersects(Range.closed(start, end));
+  }
+
+  /** Resolves symbolic links, so that the path can be compared with the paths git reports. */
+  static Path realPath(Path file) {
+    try {
+      return file.toRealPath();
+    } catch (IOException e) {
+      return file.toAbsolutePath().normalize();
+    }
+  }
+
+  private static String git(Path directory, String... args) throws IOException {
+    List<String> command = new ArrayList<>();
+    command.add("git");
+    command.add("--no-pager");
+    command.addAll(ImmutableList.copyOf(args));
+    Process process = new ProcessBuilder(command)
+        .directory(directory.toFile())
+        .redirectError(ProcessBuilder.Redirect.INHERIT)
+        .start();
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (InputStream in = process.getInputStream()) {
+      in.transferTo(output);
+    }
+    try {
+      int status = process.waitFor();
+      if (status != 0) {
+        throw new IOException(
+            String.format("%s failed in %s with exit status %d", command, directory, status));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+    return output.toString(StandardCharsets.UTF_8);
+  }
+}
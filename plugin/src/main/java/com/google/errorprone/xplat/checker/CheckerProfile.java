@@ -0,0 +1,309 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import com.google.errorprone.ErrorProneFlags;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.matchers.Description;
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+import com.sun.tools.javac.code.Symbol.MethodSymbol;
+import com.sun.tools.javac.util.Context;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Opt-in timing of the matcher callbacks of the xplat checkers. Every checker holds a profile, and
+ * runs each of its matchers through {@link #time}, see {@link XplatChecker}.
+ *
+ * <p>Profiling is enabled with {@code -XepOpt:XplatProfile:Print=true}, which prints a summary to
+ * stderr once the compilation has finished, or with {@code -XepOpt:XplatProfile:Report=X}, where X
+ * is the path of a JSON lines report. The summary holds the number of calls, the total time and the
+ * median and 99th percentile time per call of every checker, as well as the compilation units and
+ * methods that took longest to check. {@code -XepOpt:XplatProfile:TopN=N} sets how many of those
+ * are listed, 10 by default.
+ *
+ * <p>When profiling is off and no JDK Flight Recorder recording is running, see {@link
+ * XplatEvents#isRecording}, a matcher is called right away without reading the clock.
+ */
+final class CheckerProfile {
+
+  private final String checkerName;
+
+  private final boolean enabled;
+
+  private final boolean print;
+
+  private final Optional<Path> reportPath;
+
+  private final int topN;
+
+  private CheckerProfile(String checkerName, boolean print, Optional<Path> reportPath, int topN) {
+    this.checkerName = checkerName;
+    this.enabled = print || reportPath.isPresent();
+    this.print = print;
+    this.reportPath = reportPath;
+    this.topN = topN;
+  }
+
+  /** Returns the profile of a checker, which is disabled if profiling is off. */
+  static CheckerProfile forFlags(ErrorProneFlags flags, String checkerName) {
+    boolean print = flags.getBoolean("XplatProfile:Print").orElse(false);
+    Optional<Path> reportPath = flags.get("XplatProfile:Report").map(Paths::get);
+    return new CheckerProfile(checkerName, print, reportPath,
+        flags.getInteger("XplatProfile:TopN").orElse(10));
+  }
+
+  /** Calls {@code matcher} on {@code tree}, and records how long it took if needed. */
+  <T extends Tree> Description time(T tree, VisitorState state,
+      BiFunction<T, VisitorState, Description> matcher) {
+    if (!enabled && !XplatEvents.isRecording()) {
+      return matcher.apply(tree, state);
+    }
+
+    long start = System.nanoTime();
+    try {
+      return matcher.apply(tree, state);
+    } finally {
+      long elapsed = System.nanoTime() - start;
+      if (enabled) {
+        CompilationProfile.instance(state.context, this).record(checkerName, elapsed, state);
+      }
+      if (XplatEvents.unitAnalysisEnabled()) {
+        XplatEvents.matcherCalled(checkerName, elapsed, state);
+      }
+    }
+  }
+
+  /**
+   * Records a diagnostic of the given rule of the checker that is about to be reported on {@code
+   * tree}.
+   */
+  void diagnostic(Tree tree, String rule) {
+    if (XplatEvents.isRecording()) {
+      XplatEvents.diagnostic(checkerName, rule, tree);
+    }
+  }
+
+  /**
+   * Timings of all the checkers during a single compilation. The summary is printed and written
+   * once the compilation has finished.
+   */
+  private static final class CompilationProfile {
+
+    private static final Context.Key<CompilationProfile> KEY = new Context.Key<>();
+
+    private final CheckerProfile settings;
+
+    private final Map<String, CallStats> checkers = new TreeMap<>();
+
+    private final Map<String, Long> units = new HashMap<>();
+
+    private final Map<MethodSymbol, Long> methods = new HashMap<>();
+
+    private CompilationProfile(CheckerProfile settings) {
+      this.settings = settings;
+    }
+
+    /**
+     * Returns the profile of the compilation that owns {@code context}, creating it on first use
+     * with the settings of the first checker that records a call.
+     */
+    static CompilationProfile instance(Context context, CheckerProfile settings) {
+      CompilationProfile profile = context.get(KEY);
+      if (profile == null) {
+        profile = new CompilationProfile(settings);
+        context.put(KEY, profile);
+
+        CompilationProfile finished = profile;
+        if (settings.reportPath.isPresent()) {
+          JsonLinesReport.instance(context, settings.reportPath.get())
+              .onFinish(() -> finished.report(context));
+        }
+        if (settings.print) {
+          CompilationHooks.onCompilationFinished(context, finished::print);
+        }
+      }
+      return profile;
+    }
+
+    synchronized void record(String checkerName, long nanos, VisitorState state) {
+      checkers.computeIfAbsent(checkerName, unused -> new CallStats()).add(nanos);
+
+      CompilationUnitTree unit = state.getPath().getCompilationUnit();
+      units.merge(unit.getSourceFile().getName(), nanos, Long::sum);
+
+      MethodSymbol method = enclosingMethod(state.getPath());
+      if (method != null) {
+        methods.merge(method, nanos, Long::sum);
+      }
+    }
+
+    private static MethodSymbol enclosingMethod(TreePath path) {
+      for (Tree tree : path) {
+        if (tree instanceof MethodTree) {
+          return ASTHelpers.getSymbol((MethodTree) tree);
+        }
+      }
+      return null;
+    }
+
+    private synchronized List<Map.Entry<String, Long>> slowestUnits() {
+      return slowest(units);
+    }
+
+    private synchronized List<Map.Entry<String, Long>> slowestMethods() {
+      Map<String, Long> byName = new HashMap<>();
+      for (Map.Entry<MethodSymbol, Long> entry : methods.entrySet()) {
+        byName.merge(entry.getKey().owner.getQualifiedName() + "." + entry.getKey(),
+            entry.getValue(), Long::sum);
+      }
+      return slowest(byName);
+    }
+
+    private List<Map.Entry<String, Long>> slowest(Map<String, Long> nanos) {
+      List<Map.Entry<String, Long>> entries = new ArrayList<>(nanos.entrySet());
+      entries.sort(Map.Entry.<String, Long>comparingByValue().reversed()
+          .thenComparing(Map.Entry.comparingByKey()));
+      return entries.subList(0, Math.min(settings.topN, entries.size()));
+    }
+
+    private synchronized void print() {
+      StringBuilder summary = new StringBuilder("Xplat checker timings:\n");
+      summary.append(String.format("  %-28s %10s %12s %10s %10s%n", "checker", "calls",
+          "total (ms)", "p50 (us)", "p99 (us)"));
+
+      for (Map.Entry<String, CallStats> entry : checkers.entrySet()) {
+        CallStats stats = entry.getValue();
+        summary.append(String.format("  %-28s %10d %12.1f %10.1f %10.1f%n", entry.getKey(),
+            stats.calls, stats.totalNanos / 1e6, stats.percentile(0.5) / 1e3,
+            stats.percentile(0.99) / 1e3));
+      }
+
+      summary.append("Slowest compilation units:\n");
+      for (Map.Entry<String, Long> entry : slowestUnits()) {
+        summary.append(String.format("  %10.1f ms  %s%n", entry.getValue() / 1e6, entry.getKey()));
+      }
+
+      summary.append("Slowest methods:\n");
+      for (Map.Entry<String, Long> entry : slowestMethods()) {
+        summary.append(String.format("  %10.1f ms  %s%n", entry.getValue() / 1e6, entry.getKey()));
+      }
+      System.err.print(summary);
+    }
+
+    private synchronized void report(Context context) {
+      JsonLinesReport report = JsonLinesReport.instance(context, settings.reportPath.get());
+
+      try {
+        for (Map.Entry<String, CallStats> entry : checkers.entrySet()) {
+          CallStats stats = entry.getValue();
+          report.write(new JSONObject()
+              .put("kind", "checker")
+              .put("checker", entry.getKey())
+              .put("calls", stats.calls)
+              .put("totalNanos", stats.totalNanos)
+              .put("p50Nanos", stats.percentile(0.5))
+              .put("p99Nanos", stats.percentile(0.99)));
+        }
+
+        report.write(new JSONObject()
+            .put("kind", "slowestUnits")
+            .put("units", toJson(slowestUnits(), "file")));
+        report.write(new JSONObject()
+            .put("kind", "slowestMethods")
+            .put("methods", toJson(slowestMethods(), "method")));
+      } catch (JSONException e) {
+        // Only thrown for non-finite numbers and null keys, which are never used here.
+        throw new IllegalStateException(e);
+      }
+    }
+
+    private static JSONArray toJson(List<Map.Entry<String, Long>> entries, String name)
+        throws JSONException {
+      JSONArray array = new JSONArray();
+      for (Map.Entry<String, Long> entry : entries) {
+        array.put(new JSONObject().put(name, entry.getKey()).put("nanos", entry.getValue()));
+      }
+      return array;
+    }
+  }
+
+  /**
+   * Number and duration of the calls of one checker. Durations are kept in a histogram with
+   * buckets that grow exponentially, each power of two split into 8 buckets, so percentiles are
+   * accurate to about 12%.
+   */
+  private static final class CallStats {
+
+    private static final int SUB_BUCKETS = 8;
+
+    private final long[] buckets = new long[64 * SUB_BUCKETS];
+
+    private long calls;
+
+    private long totalNanos;
+
+    void add(long nanos) {
+      calls++;
+      totalNanos += nanos;
+      buckets[bucket(Math.max(nanos, 0))]++;
+    }
+
+    /** Returns the lower bound of the bucket that holds the given percentile, in nanoseconds. */
+    long percentile(double fraction) {
+      long rank = (long) Math.ceil(fraction * calls);
+      long seen = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        seen += buckets[i];
+        if (seen >= rank && buckets[i] > 0) {
+          return lowerBound(i);
+        }
+      }
+      return 0;
+    }
+
+    private static int bucket(long nanos) {
+      if (nanos < SUB_BUCKETS) {
+        return (int) nanos;
+      }
+      int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+      int subBucket = (int) (nanos >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+      return (exponent - 2) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long lowerBound(int bucket) {
+      if (bucket < SUB_BUCKETS) {
+        return bucket;
+      }
+      int exponent = bucket / SUB_BUCKETS + 2;
+      long subBucket = bucket % SUB_BUCKETS;
+      return (SUB_BUCKETS + subBucket) << (exponent - 3);
+    }
+  }
+}
@@ -0,0 +1,45 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.tools.javac.api.MultiTaskListener;
+import com.sun.tools.javac.util.Context;
+
+/**
+ * Helpers for checkers that need to act once a whole compilation is done, for example to write a
+ * report. Error Prone has no such callback, so this hooks into the javac task listeners of the
+ * compilation.
+ */
+final class CompilationHooks {
+
+  private CompilationHooks() {}
+
+  /**
+   * Runs the given action once the compilation that owns {@code context} has finished. Should only
+   * be called once per action and compilation, e.g. when a per-compilation object is created.
+   */
+  static void onCompilationFinished(Context context, Runnable action) {
+    MultiTaskListener.instance(context).add(new TaskListener() {
+      @Override
+      public void finished(TaskEvent e) {
+        if (e.getKind() == TaskEvent.Kind.COMPILATION) {
+          action.run();
+        }
+      }
+    });
+  }
+}
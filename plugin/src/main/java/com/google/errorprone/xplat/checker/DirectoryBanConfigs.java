@@ -0,0 +1,427 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+import com.sun.tools.javac.code.Attribute;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.util.Context;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The {@code .xplatbans.json} files that apply to a source file: the ones in its directory and in
+ * all of the directories above it, up to the file system root or to a file with {@code "root":
+ * true}. Their bans are added to the ones of the flags, from the outermost file to the innermost
+ * one, and their scopes decide which source files are checked at all, by every checker:
+ *
+ * <pre>
+ * {
+ *   "root": true,
+ *   "include": {
+ *     "paths": ["shared/**"],
+ *     "packages": ["com.example.shared"]
+ *   },
+ *   "exclude": {
+ *     "paths": ["**&#47;test/**", "**&#47;jvm/**"],
+ *     "packages": ["com.example.shared.jvm"],
+ *     "generated": true
+ *   },
+ *   "classes": {...},
+ *   "packages": {...},
+ *   "methods": {...},
+ *   "targets": {"ios": {"classes": {...}}, "web": {...}},
+ *   "enabledTargets": ["ios"]
+ * }
+ * </pre>
+ *
+ * All keys are optional, and the ban sections are formatted as described in {@link XplatBans} and
+ * {@link XplatBanConfig}. The innermost {@code enabledTargets} applies.
+ * Paths are globs, relative to the directory of the file, and packages also cover their
+ * subpackages. A source file is in the scope of a file if it matches any of the includes, or if
+ * there are none, and none of the excludes. It is only checked if it is in the scope of all the
+ * files that apply to it, so a directory can narrow the scope of its parents, but not widen it.
+ * With {@code "generated": true} in any of them, classes annotated with an annotation named {@code
+ * Generated} are skipped as well, along with the classes nested in them. Checkers call {@link
+ * #inScope} before they match anything.
+ *
+ * <p>Both the files that apply to a directory and the merged bans are cached: the former once per
+ * compilation and directory, the latter for the whole process, as long as the files are unchanged.
+ * The scope of each compilation unit is decided once per compilation.
+ */
+final class DirectoryBanConfigs {
+
+  static final String FILE_NAME = ".xplatbans.json";
+
+  private static final Context.Key<DirectoryBanConfigs> KEY = new Context.Key<>();
+
+  /** Parsed files by path, re-read when their size or modification time changes. */
+  private static final Map<Path, DirectoryConfig> FILES = new ConcurrentHashMap<>();
+
+  /**
+   * Merged bans, keyed by the bans of the flags followed by the files that were merged in. Entries
+   * are evicted when any of these is replaced, so edits do not pile up in long-lived daemons.
+   */
+  private static final Map<List<Object>, XplatBanConfig> MERGED = new ConcurrentHashMap<>();
+
+  /** The files that apply to each directory, from the outermost to the innermost one. */
+  private final Map<Path, ImmutableList<DirectoryConfig>> chains = new ConcurrentHashMap<>();
+
+  /** The scope of each compilation unit. */
+  private final Map<CompilationUnitTree, UnitScope> scopes = new ConcurrentHashMap<>();
+
+  /** The bans for each compilation unit. */
+  private final Map<CompilationUnitTree, Map<XplatBanConfig, XplatBanConfig>> units =
+      new ConcurrentHashMap<>();
+
+  private DirectoryBanConfigs() {}
+
+  private static DirectoryBanConfigs instance(Context context) {
+    DirectoryBanConfigs instance = context.get(KEY);
+    if (instance == null) {
+      instance = new DirectoryBanConfigs();
+      context.put(KEY, instance);
+    }
+    return instance;
+  }
+
+  /**
+   * Returns whether the current tree should be checked: whether its compilation unit is in the
+   * scope of the {@code .xplatbans.json} files of its directory and the directories above it, and
+   * not in a generated class if these skip generated classes.
+   */
+  static boolean inScope(VisitorState state) {
+    TreePath path = state.getPath();
+    UnitScope scope = instance(state.context).scope(path.getCompilationUnit());
+    return scope.inScope && !(scope.excludeGenerated && scope.isGenerated(path));
+  }
+
+  private UnitScope scope(CompilationUnitTree unit) {
+    return scopes.computeIfAbsent(unit, UnitScope::new);
+  }
+
+  /**
+   * Returns the bans that apply to the compilation unit of the current tree: {@code base}, merged
+   * with the {@code .xplatbans.json} files of its directory and the directories above it.
+   */
+  static XplatBanConfig forUnit(XplatBanConfig base, VisitorState state) {
+    DirectoryBanConfigs configs = instance(state.context);
+    CompilationUnitTree unit = state.getPath().getCompilationUnit();
+    return configs.units
+        .computeIfAbsent(unit, unused -> new ConcurrentHashMap<>())
+        .computeIfAbsent(base, unused -> configs.resolve(base, unit));
+  }
+
+  /** Returns the path of a compilation unit, or null if it is not a file in a directory. */
+  private static Path sourceFile(CompilationUnitTree unit) {
+    URI uri = unit.getSourceFile().toUri();
+    if (!"file".equals(uri.getScheme())) {
+      return null;
+    }
+    Path file = Paths.get(uri).toAbsolutePath().normalize();
+    return file.getParent() == null ? null : file;
+  }
+
+  private XplatBanConfig resolve(XplatBanConfig base, CompilationUnitTree unit) {
+    Path file = sourceFile(unit);
+    if (file == null) {
+      return base;
+    }
+
+    ImmutableList<DirectoryConfig> chain = chain(file.getParent());
+    if (chain.isEmpty()) {
+      return base;
+    }
+
+    for (DirectoryConfig config : chain) {
+      if (FILES.get(config.file) != config) {
+        // Replaced by another compilation in the meantime, so it would never be evicted.
+        return XplatBanConfig.merge(base, chain);
+      }
+    }
+    List<Object> key = new ArrayList<>();
+    key.add(base);
+    key.addAll(chain);
+    return MERGED.computeIfAbsent(key, unused -> XplatBanConfig.merge(base, chain));
+  }
+
+  /**
+   * Drops the merged bans that were built from {@code replaced}, a {@link DirectoryConfig} or the
+   * {@link XplatBanConfig} of the flags, which is no longer up to date.
+   */
+  static void evict(Object replaced) {
+    MERGED.keySet().removeIf(key -> key.contains(replaced));
+  }
+
+  /** Returns the number of cached merged bans. */
+  static int mergedCount() {
+    return MERGED.size();
+  }
+
+  /** Returns the files that apply to a directory, from the outermost to the innermost one. */
+  private ImmutableList<DirectoryConfig> chain(Path directory) {
+    ImmutableList<DirectoryConfig> chain = chains.get(directory);
+    if (chain != null) {
+      return chain;
+    }
+
+    DirectoryConfig config = DirectoryConfig.read(directory.resolve(FILE_NAME));
+    ImmutableList.Builder<DirectoryConfig> builder = ImmutableList.builder();
+    if ((config == null || !config.root) && directory.getParent() != null) {
+      builder.addAll(chain(directory.getParent()));
+    }
+    if (config != null) {
+      builder.add(config);
+    }
+    chain = builder.build();
+    chains.put(directory, chain);
+    return chain;
+  }
+
+  /** The scope of a compilation unit, as decided by the files that apply to it. */
+  private final class UnitScope {
+
+    final boolean inScope;
+
+    final boolean excludeGenerated;
+
+    /** Whether each class of the unit is generated or nested in a generated class. */
+    private final Map<ClassTree, Boolean> generated = new ConcurrentHashMap<>();
+
+    UnitScope(CompilationUnitTree unit) {
+      Path file = sourceFile(unit);
+      ImmutableList<DirectoryConfig> chain =
+          file == null ? ImmutableList.of() : chain(file.getParent());
+      String packageName = unit.getPackageName() == null ? "" : unit.getPackageName().toString();
+
+      boolean inScope = true;
+      boolean excludeGenerated = false;
+      for (DirectoryConfig config : chain) {
+        inScope &= config.inScope(file, packageName);
+        excludeGenerated |= config.excludeGenerated;
+      }
+      this.inScope = inScope;
+      this.excludeGenerated = excludeGenerated;
+    }
+
+    /**
+     * Returns whether a path is within a generated class. A compilation unit itself is generated if
+     * all of its classes are.
+     */
+    boolean isGenerated(TreePath path) {
+      if (!(path.getLeaf() instanceof CompilationUnitTree)) {
+        TreePath classPath = enclosingClass(path);
+        return classPath != null && isGeneratedClass(classPath);
+      }
+
+      boolean anyClass = false;
+      for (Tree declaration : ((CompilationUnitTree) path.getLeaf()).getTypeDecls()) {
+        if (declaration instanceof ClassTree) {
+          if (!isGeneratedClass(new TreePath(path, declaration))) {
+            return false;
+          }
+          anyClass = true;
+        }
+      }
+      return anyClass;
+    }
+
+    /** Returns whether a class is generated or nested in a generated class. */
+    private boolean isGeneratedClass(TreePath classPath) {
+      ClassTree tree = (ClassTree) classPath.getLeaf();
+      Boolean cached = generated.get(tree);
+      if (cached == null) {
+        TreePath enclosing = enclosingClass(classPath.getParentPath());
+        cached = isAnnotatedGenerated(ASTHelpers.getSymbol(tree))
+            || (enclosing != null && isGeneratedClass(enclosing));
+        generated.put(tree, cached);
+      }
+      return cached;
+    }
+  }
+
+  /** Returns the path of the innermost class that contains a path, including itself. */
+  private static TreePath enclosingClass(TreePath path) {
+    while (path != null && !(path.getLeaf() instanceof ClassTree)) {
+      path = path.getParentPath();
+    }
+    return path;
+  }
+
+  /**
+   * Returns whether a class is annotated with {@code javax.annotation.Generated}, {@code
+   * javax.annotation.processing.Generated} or any other annotation named {@code Generated}.
+   */
+  private static boolean isAnnotatedGenerated(Symbol symbol) {
+    if (symbol == null) {
+      return false;
+    }
+    for (Attribute.Compound annotation : symbol.getAnnotationMirrors()) {
+      if (annotation.type.tsym.getSimpleName().contentEquals("Generated")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** A parsed {@code .xplatbans.json} file. */
+  static final class DirectoryConfig {
+
+    final Path file;
+
+    /** The whole file, whose ban sections are merged by {@link XplatBanConfig#merge}. */
+    final JSONObject json;
+
+    final boolean root;
+
+    final boolean excludeGenerated;
+
+    private final String fingerprint;
+
+    private final ImmutableList<PathMatcher> includePaths;
+
+    private final ImmutableList<String> includePackages;
+
+    private final ImmutableList<PathMatcher> excludePaths;
+
+    private final ImmutableList<String> excludePackages;
+
+    private DirectoryConfig(Path file, String fingerprint, JSONObject json) throws JSONException {
+      this.file = file;
+      this.fingerprint = fingerprint;
+      this.json = json;
+      this.root = json.optBoolean("root", false);
+
+      JSONObject include = json.optJSONObject("include");
+      this.includePaths = pathMatchers(include);
+      this.includePackages = strings(include, "packages");
+
+      JSONObject exclude = json.optJSONObject("exclude");
+      this.excludePaths = pathMatchers(exclude);
+      this.excludePackages = strings(exclude, "packages");
+      this.excludeGenerated = exclude != null && exclude.optBoolean("generated", false);
+    }
+
+    /**
+     * Returns the parsed file at the given path, or null if there is none or it cannot be read.
+     */
+    static DirectoryConfig read(Path file) {
+      if (!Files.isRegularFile(file)) {
+        replace(file, null);
+        return null;
+      }
+
+      String fingerprint;
+      try {
+        fingerprint = Files.size(file) + ":" + Files.getLastModifiedTime(file).toMillis();
+      } catch (IOException e) {
+        fingerprint = "";
+      }
+      DirectoryConfig cached = FILES.get(file);
+      if (cached != null && cached.fingerprint.equals(fingerprint)) {
+        return cached;
+      }
+
+      try {
+        DirectoryConfig config = new DirectoryConfig(file, fingerprint,
+            new JSONObject(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)));
+        replace(file, config);
+        return config;
+      } catch (IOException | JSONException e) {
+        System.err.println(String.format("Ban config '%s' could not be read and will be ignored.",
+            file));
+        e.printStackTrace();
+        replace(file, null);
+        return null;
+      }
+    }
+
+    private static void replace(Path file, DirectoryConfig config) {
+      DirectoryConfig previous = config == null ? FILES.remove(file) : FILES.put(file, config);
+      if (previous != null && previous != config) {
+        evict(previous);
+      }
+    }
+
+    /** Returns whether a source file in the given package is in the scope of this file. */
+    boolean inScope(Path source, String packageName) {
+      Path relative = file.getParent().relativize(source);
+      boolean included = (includePaths.isEmpty() && includePackages.isEmpty())
+          || matchesAny(includePaths, relative)
+          || inAnyPackage(includePackages, packageName);
+      return included
+          && !matchesAny(excludePaths, relative)
+          && !inAnyPackage(excludePackages, packageName);
+    }
+
+    private static boolean matchesAny(List<PathMatcher> matchers, Path path) {
+      for (PathMatcher matcher : matchers) {
+        if (matcher.matches(path)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private static boolean inAnyPackage(List<String> packages, String packageName) {
+      for (String packge : packages) {
+        if (packageName.equals(packge) || packageName.startsWith(packge + ".")) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private static ImmutableList<PathMatcher> pathMatchers(JSONObject scope) throws JSONException {
+      ImmutableList.Builder<PathMatcher> matchers = ImmutableList.builder();
+      for (String glob : strings(scope, "paths")) {
+        matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+      }
+      return matchers.build();
+    }
+
+    private static ImmutableList<String> strings(JSONObject scope, String key)
+        throws JSONException {
+      JSONArray array = scope == null ? null : scope.optJSONArray(key);
+      if (array == null) {
+        return ImmutableList.of();
+      }
+      ImmutableList.Builder<String> strings = ImmutableList.builder();
+      for (int i = 0; i < array.length(); i++) {
+        strings.add(array.getString(i));
+      }
+      return strings.build();
+    }
+  }
+}
@@ -14,6 +14,7 @@
 package com.google.errorprone.xplat.checker;
 
 import static com.google.errorprone.BugPattern.SeverityLevel.WARNING;
+import static java.util.stream.Collectors.joining;
 
 import com.google.auto.service.AutoService;
 import com.google.common.base.Splitter;
@@ -22,7 +23,6 @@ import com.google.errorprone.ErrorProneFlags;
 import com.google.errorprone.VisitorState;
 import com.google.errorprone.bugpatterns.BugChecker;
 import com.google.errorprone.bugpatterns.BugChecker.ClassTreeMatcher;
-import com.google.errorprone.bugpatterns.BugChecker.CompilationUnitTreeMatcher;
 import com.google.errorprone.bugpatterns.BugChecker.MethodTreeMatcher;
 import com.google.errorprone.fixes.SuggestedFix;
 import com.google.errorprone.matchers.Description;
@@ -33,19 +33,27 @@ import com.google.errorprone.util.ASTHelpers;
 import com.google.j2objc.annotations.ObjectiveCName;
 import com.sun.source.tree.AnnotationTree;
 import com.sun.source.tree.ClassTree;
-import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.Tree;
-import com.sun.source.tree.VariableTree;
 import com.sun.tools.javac.code.Symbol;
 import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.code.Symbol.MethodSymbol;
+import com.sun.tools.javac.code.Symbol.PackageSymbol;
+import com.sun.tools.javac.code.Symbol.VarSymbol;
 import com.sun.tools.javac.code.Type;
+import com.sun.tools.javac.code.Type.ArrayType;
+import com.sun.tools.javac.util.Context;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.lang.model.element.NestingKind;
 import javax.lang.model.type.TypeKind;
 
 /**
@@ -56,6 +64,18 @@ import javax.lang.model.type.TypeKind;
  * where X is the minimum number of characters to warn on. For example, {@code
  * -XepOpt:J2ObjCMethodName:MethodNameLength=100} will warn against all methods that would result in
  * 100 or more characters after being translated to an Objective-C function.
+ *
+ * <p>Only public static methods are checked by default. The argument {@code
+ * -XepOpt:J2ObjCMethodName:AllMethods=true} also checks instance methods, constructors and
+ * interface methods. Overriding methods share the Objective-C selector of the method they override,
+ * so they are only checked where that selector is declared. Methods of a class that end up with the
+ * same selector are warned against as well.
+ *
+ * <p>The argument {@code -XepOpt:J2ObjCMethodName:Report=X}, where X is a file path, additionally
+ * writes every translated method and class name of the compilation to X, followed by a summary of
+ * their lengths and estimated binary size. {@code -XepOpt:J2ObjCMethodName:ReportTopOffenders=N}
+ * sets how many of the longest names the summary lists, 20 by default. See {@link
+ * J2objcNameReport} for the format.
  */
 @AutoService(BugChecker.class)
 @BugPattern(
@@ -66,18 +86,16 @@ import javax.lang.model.type.TypeKind;
             + " Objective-C functions when the Java method has many parameters and/or uses long"
             + " types. This checker calls out problematic methods and offers a fix.",
     severity = WARNING)
-public class J2objcMethodName extends BugChecker implements MethodTreeMatcher,
-    ClassTreeMatcher, CompilationUnitTreeMatcher {
+public class J2objcMethodName extends XplatChecker implements MethodTreeMatcher,
+    ClassTreeMatcher {
 
-  private final Map<String, String> foundObjcClassNames = new HashMap<>();
-
-  private final Set<String> visitedClasses = new HashSet<>();
+  private int methodNameLength = 300;
 
-  private final Map<String, Integer> usedMethodNames = new HashMap<>();
+  private final Optional<Path> reportPath;
 
-  private String packageAnnotation;
+  private int reportTopOffenders = 20;
 
-  private int methodNameLength = 300;
+  private boolean allMethods = false;
 
   private static final Matcher<MethodTree> MATCHER =
       Matchers.allOf(
@@ -88,13 +106,66 @@ public class J2objcMethodName extends BugChecker implements MethodTreeMatcher,
   private static final Matcher<Tree> OBJC_NAME_MATCHER =
       Matchers.hasAnnotation("com.google.j2objc.annotations.ObjectiveCName");
 
-  private Description genDescription(String message, MethodTree tree) {
+  /**
+   * Names collected while scanning a single compilation. The state is bound to the javac {@link
+   * Context} of the compilation instead of the checker instance, so that it is released together
+   * with the compilation and never leaks into a later one, even when the compiler runs inside a
+   * long-lived daemon.
+   */
+  private static final class CompilationNames {
+
+    private static final Context.Key<CompilationNames> KEY = new Context.Key<>();
+
+    private final Map<String, PackageNames> packages = new ConcurrentHashMap<>();
+
+    private final Map<ClassSymbol, ClassSelectors> classSelectors = new ConcurrentHashMap<>();
+
+    static CompilationNames instance(Context context) {
+      CompilationNames names = context.get(KEY);
+      if (names == null) {
+        names = new CompilationNames();
+        context.put(KEY, names);
+      }
+      return names;
+    }
+
+    PackageNames forPackage(String packageName) {
+      return packages.computeIfAbsent(packageName, unused -> new PackageNames());
+    }
+  }
+
+  /**
+   * Names found inside of a single package. Classes are keyed by their lookup name, see {@code
+   * localClassLookupName()}.
+   */
+  private static final class PackageNames {
+
+    private final Map<String, String> foundObjcClassNames = new ConcurrentHashMap<>();
+
+    private final Set<String> visitedClasses = ConcurrentHashMap.newKeySet();
+  }
+
+  /** Methods of a single class, indexed by their Objective-C selector. */
+  private static final class ClassSelectors {
+
+    private final Map<String, List<MethodSymbol>> methodsBySelector = new HashMap<>();
+
+    /** Suggested ObjectiveCName values for the methods whose translated names are too long. */
+    private final Map<MethodSymbol, String> suggestedNames = new HashMap<>();
+  }
+
+  /** Returns the names collected for the package of the given symbol in this compilation. */
+  private static PackageNames packageNames(Symbol symbol, VisitorState state) {
+    return CompilationNames.instance(state.context)
+        .forPackage(symbol.packge().getQualifiedName().toString());
+  }
+
+  private Description genDescription(String message, MethodTree tree, String suggestedName) {
     return buildDescription(tree)
         .setMessage(message)
         .addFix(SuggestedFix.builder()
             .addImport("com.google.j2objc.annotations.ObjectiveCName")
-            .prefixWith(tree, String.format("@ObjectiveCName(\"%s\")\n",
-                getMethodName(tree.getName().toString())))
+            .prefixWith(tree, String.format("@ObjectiveCName(\"%s\")\n", suggestedName))
             .build())
         .build();
   }
@@ -130,15 +201,22 @@ public class J2objcMethodName extends BugChecker implements MethodTreeMatcher,
    *                       symbol.enclClass()}.
    * @param outermostClass Outermost class that method is contained in. Retrieved from {@code
    *                       symbol.outermostClass()}.
+   * @param packge         Package of the class, whose ObjectiveCName is read from its
+   *                       package-info, whether that is compiled along or found on the classpath.
+   * @param names          Names found in the package of the method.
    * @return A mangled name (String) that emulates the output that J2ObjC would have if used on the
    * type.
    */
-  private String localClassNameMangle(String enclosingClass, String outermostClass) {
+  private String localClassNameMangle(String enclosingClass, String outermostClass,
+      PackageSymbol packge, PackageNames names) {
     StringBuilder newName = new StringBuilder();
     String outermost = outermostClass.substring(outermostClass.lastIndexOf(".") + 1);
 
-    if (foundObjcClassNames.containsKey(outermost)) {
-      newName.append(foundObjcClassNames.get(outermost));
+    ObjectiveCName packageName = packge.getAnnotation(ObjectiveCName.class);
+    String packageAnnotation = packageName == null ? null : packageName.value();
+
+    if (names.foundObjcClassNames.containsKey(outermost)) {
+      newName.append(names.foundObjcClassNames.get(outermost));
     } else if (packageAnnotation != null) {
       newName.append(packageAnnotation);
       newName.append(outermost);
@@ -162,8 +240,8 @@ public class J2objcMethodName extends BugChecker implements MethodTreeMatcher,
         lookupName.append(".");
         lookupName.append(part);
 
-        if (foundObjcClassNames.containsKey(lookupName.toString())) {
-          newName = new StringBuilder(foundObjcClassNames.get(lookupName.toString()));
+        if (names.foundObjcClassNames.containsKey(lookupName.toString())) {
+          newName = new StringBuilder(names.foundObjcClassNames.get(lookupName.toString()));
         } else {
           newName.append(part);
         }
@@ -219,17 +297,17 @@ public class J2objcMethodName extends BugChecker implements MethodTreeMatcher,
    *
    * @param name      Name of the method being mangled.
    * @param paramList List of method parameters.
+   * @param names     Names found in the package of the method.
    * @return A mangled name (String) that emulates the output that J2ObjC would have for the
    * parameters and method name.
    */
-  private String parameterNameMangle(String name, List<? extends VariableTree> paramList) {
+  private String parameterNameMangle(String name, List<VarSymbol> paramList,
+      PackageNames names) {
     StringBuilder output = new StringBuilder(name);
     boolean firstIter = true;
 
-    for (VariableTree var : paramList) {
-      Type type = ASTHelpers.getType(var);
-      Symbol symbol = ASTHelpers.getSymbol(var);
-      Symbol typeSymbol = ASTHelpers.getSymbol(var.getType());
+    for (VarSymbol var : paramList) {
+      Type type = var.asType();
 
       if (type == null) {
         continue;
@@ -242,195 +320,368 @@ public class J2objcMethodName extends BugChecker implements MethodTreeMatcher,
         output.append("_with");
       }
 
-      if (type.getKind() == TypeKind.TYPEVAR) {
-        output.append("Id");
-      } else {
-        String typeStr = type.toString();
-        ClassSymbol outermost = typeSymbol.outermostClass();
-        ClassSymbol containingClass = symbol.outermostClass();
-
-        // Use localClassLookupName if the parameter type is local to this package
-        if (outermost.packge().equals(containingClass.packge())) {
-          String lookupName = localClassLookupName(typeSymbol.toString(),
-              outermost.toString());
-
-          ObjectiveCName[] objCNames = typeSymbol.enclClass()
-              .getAnnotationsByType(ObjectiveCName.class);
-
-          // If the class has not been visited yet, manually check if it has an ObjectiveCName
-          if (!visitedClasses.contains(lookupName) && objCNames.length != 0) {
-            foundObjcClassNames.put(lookupName, objCNames[0].value());
-            visitedClasses.add(lookupName);
-          }
+      output.append(typeNameMangle(type, var, names));
+    }
+    output.append("_");
+    return output.toString();
+  }
 
-          output.append(localClassNameMangle(typeStr, outermost.toString()));
-        } else {
-          output.append(
-              externalTypeNameMangle(typeSymbol.enclClass().toString(), outermost.toString()));
+  /**
+   * Emulates the name mangling done by J2ObjC on the type of a single parameter.
+   * <p>
+   * A parameter of type {@code java.util.HashMap} would return {@code "JavaUtilHashMap"}, a generic
+   * parameter would return {@code "Id"}, an {@code int} would return {@code "Int"} and an {@code
+   * int[]} would return {@code "IntArray"}.
+   *
+   * @param type   Type of the parameter.
+   * @param symbol Symbol of the parameter.
+   * @param names  Names found in the package of the method.
+   * @return A mangled name (String) that emulates the output that J2ObjC would have for the type.
+   */
+  private String typeNameMangle(Type type, Symbol symbol, PackageNames names) {
+    if (type.getKind() == TypeKind.TYPEVAR) {
+      return "Id";
+    } else if (type.isPrimitive()) {
+      String typeStr = type.toString();
+      return typeStr.substring(0, 1).toUpperCase() + typeStr.substring(1);
+    } else if (type.getKind() == TypeKind.ARRAY) {
+      return typeNameMangle(((ArrayType) type).elemtype, symbol, names) + "Array";
+    }
+
+    Symbol typeSymbol = type.tsym;
+    ClassSymbol outermost = typeSymbol.outermostClass();
+    ClassSymbol containingClass = symbol.outermostClass();
+
+    // Use localClassLookupName if the parameter type is local to this package
+    if (outermost.packge().equals(containingClass.packge())) {
+      // If the type or one of its enclosing classes has not been visited yet, manually check if
+      // it has an ObjectiveCName, so that the result does not depend on the order of the classes
+      for (Symbol encl = typeSymbol; encl instanceof ClassSymbol; encl = encl.owner) {
+        String lookupName = localClassLookupName(encl.toString(), outermost.toString());
+
+        ObjectiveCName[] objCNames = encl.getAnnotationsByType(ObjectiveCName.class);
+
+        if (!names.visitedClasses.contains(lookupName) && objCNames.length != 0) {
+          names.foundObjcClassNames.put(lookupName, objCNames[0].value());
+          names.visitedClasses.add(lookupName);
         }
       }
+
+      return localClassNameMangle(typeSymbol.toString(), outermost.toString(), outermost.packge(),
+          names);
+    } else {
+      return externalTypeNameMangle(typeSymbol.enclClass().toString(), outermost.toString());
     }
-    output.append("_");
-    return output.toString();
   }
 
   /**
-   * Given a MethodTree and VisitorState, returns the fully mangled name that would be outputted by
-   * J2ObjC if it were used on this MethodTree.
+   * Returns the mangled name of the class that declares the given symbol, which prefixes the names
+   * of all of its translated methods.
+   *
+   * @param symbol Method or class whose enclosing class is mangled.
+   * @param names  Names found in the package of the symbol.
+   * @return A mangled name (String) that emulates J2objC output.
+   */
+  private String classNameMangle(Symbol symbol, PackageNames names) {
+    String simpleName = symbol.enclClass().getSimpleName().toString();
+
+    if (names.foundObjcClassNames.containsKey(simpleName)) {
+      return names.foundObjcClassNames.get(simpleName);
+    }
+    return localClassNameMangle(symbol.enclClass().toString(), symbol.outermostClass().toString(),
+        symbol.packge(), names);
+  }
+
+  /**
+   * Given a method, returns the part of its translated name that follows the class name, which is
+   * also its Objective-C selector.
    * <p>
-   * A method called {@code bar} in a class called {@code com.google.foo} with 1 parameter of type
-   * {@code java.util.HashMap} would return {@code "ComGoogleFoo_barWithJavaUtilHashMap_"}. A method
-   * called {@code barGeneric} with 1 generic parameter would return {@code
-   * "ComGoogleFoo_barGenericWithId_"}. If the package {@code com.google} was annotated with{@code
-   * ObjectiveCName("pack")}, then {@code "packFoo_barGenericWithId_"} would be returned.
+   * A method called {@code bar} with 1 parameter of type {@code java.util.HashMap} would return
+   * {@code "barWithJavaUtilHashMap_"} and a constructor with the same parameter would return {@code
+   * "initWithJavaUtilHashMap_"}. If the method is annotated with {@code ObjectiveCName("foo")},
+   * then {@code "foo"} would be returned. Overriding methods share the selector of the method they
+   * override, see {@code selectorDeclaration()}.
    *
-   * @param tree  Method to be name mangled.
-   * @param state VisitorState that contains the method to be name mangled.
+   * @param symbol Method to be name mangled.
+   * @param state  VisitorState that contains the method to be name mangled.
    * @return A mangled name (String) that emulates J2objC output.
    */
-  private String methodNameMangle(MethodTree tree, VisitorState state) {
-    StringBuilder output = new StringBuilder();
+  private String selectorNameMangle(MethodSymbol symbol, VisitorState state) {
+    MethodSymbol declaration = selectorDeclaration(symbol, state);
+    ObjectiveCName[] objCNames = declaration.getAnnotationsByType(ObjectiveCName.class);
 
-    Symbol symbol = ASTHelpers.getSymbol(tree);
+    if (objCNames.length != 0) {
+      return objCNames[0].value();
+    }
 
-    if (foundObjcClassNames.containsKey(symbol.enclClass().getSimpleName().toString())) {
-      output.append(foundObjcClassNames.get(symbol.enclClass().getSimpleName().toString()));
-    } else {
-      output.append(
-          localClassNameMangle(symbol.enclClass().toString(), symbol.outermostClass().toString()));
+    String name = declaration.isConstructor() ? "init" : declaration.name.toString();
+
+    if (declaration.params().isEmpty()) {
+      return name;
     }
+    return parameterNameMangle(name, declaration.params(), packageNames(declaration, state));
+  }
 
-    output.append("_");
+  /**
+   * Returns the method that declares the selector of the given method. All methods of an
+   * overriding chain share one selector, which comes from an {@link ObjectiveCName} annotation in
+   * the chain or else from the topmost overridden method.
+   */
+  private static MethodSymbol selectorDeclaration(MethodSymbol symbol, VisitorState state) {
+    if (symbol.isStatic() || symbol.isConstructor()
+        || symbol.getAnnotationsByType(ObjectiveCName.class).length != 0) {
+      return symbol;
+    }
 
-    if (!tree.getModifiers().getAnnotations().isEmpty()) {
-      for (AnnotationTree annTree : tree.getModifiers().getAnnotations()) {
-        String source = state.getSourceForNode(annTree.getAnnotationType());
+    MethodSymbol declaration = symbol;
 
-        if (source != null && source.equals("ObjectiveCName")) {
-          String value = annTree.getArguments().toString();
-          output.append(value.substring(value.indexOf("\"") + 1, value.lastIndexOf("\"")));
-          break;
-        }
-      }
-    } else {
-      if (tree.getParameters().isEmpty()) {
-        output.append(symbol.name);
-      } else {
-        output.append(parameterNameMangle(symbol.name.toString(), tree.getParameters()));
+    for (MethodSymbol superMethod : ASTHelpers.findSuperMethods(symbol, state.getTypes())) {
+      if (superMethod.getAnnotationsByType(ObjectiveCName.class).length != 0) {
+        return superMethod;
       }
+      declaration = superMethod;
     }
-    return output.toString();
+    return declaration;
+  }
+
+  /**
+   * Returns true if J2ObjC output for the given method is checked. By default only public static
+   * methods are checked, while {@code J2ObjCMethodName:AllMethods} extends this to all methods and
+   * constructors of top level and member classes.
+   */
+  private boolean isChecked(MethodTree tree, MethodSymbol symbol, VisitorState state) {
+    NestingKind nesting = symbol.enclClass().getNestingKind();
+
+    if (nesting != NestingKind.TOP_LEVEL && nesting != NestingKind.MEMBER) {
+      return false;
+    }
+    if (allMethods) {
+      return !ASTHelpers.isGeneratedConstructor(tree);
+    }
+    return MATCHER.matches(tree, state);
+  }
+
+  /** Returns true if the translated name of a method is long enough to be warned against. */
+  private boolean isTooLong(String mangledName, int parameterCount) {
+    return (mangledName.length() >= 100 && parameterCount > 5)
+        || mangledName.length() >= methodNameLength;
+  }
+
+  /**
+   * Returns the selector index of the class that directly encloses the current method, building it
+   * on first use.
+   */
+  private ClassSelectors classSelectors(VisitorState state) {
+    ClassTree classTree = state.findEnclosing(ClassTree.class);
+
+    return CompilationNames.instance(state.context).classSelectors
+        .computeIfAbsent(ASTHelpers.getSymbol(classTree),
+            unused -> buildClassSelectors(classTree, state));
   }
 
   /**
-   * Given a java method name, returns a name to be used inside a suggested {@link ObjectiveCName}
-   * annotation that does not conflict with other suggested method names.
+   * Builds the selector index of a class from all of its methods at once, so that each later
+   * lookup is a single map access no matter how many methods the class has.
+   * <p>
+   * Suggested {@link ObjectiveCName} names are computed in the same pass. Methods that share a Java
+   * name are numbered in declaration order, so overloads of {@code foo} become {@code foo}, {@code
+   * foo2}, {@code foo3} and so on. Names that are already used as the selector of a method that
+   * keeps its name are skipped. The result only depends on the class, so the same source always
+   * results in the same suggestions, no matter in which order or together with which other files it
+   * is compiled.
    *
-   * @param methodName Name of the java method.
-   * @return Name to be used inside suggested {@link ObjectiveCName} annotation.
+   * @param classTree Class whose methods are indexed.
+   * @param state     VisitorState that contains the class.
+   * @return Selector index of the class.
    */
-  private String getMethodName(String methodName) {
-    if (usedMethodNames.containsKey(methodName)) {
-      usedMethodNames.put(methodName, usedMethodNames.get(methodName) + 1);
-      return String.format("%s%d", methodName, usedMethodNames.get(methodName));
-    } else {
-      usedMethodNames.put(methodName, 1);
-      return methodName;
+  private ClassSelectors buildClassSelectors(ClassTree classTree, VisitorState state) {
+    ClassSelectors selectors = new ClassSelectors();
+    Set<String> takenNames = new HashSet<>();
+    List<MethodSymbol> renamedMethods = new ArrayList<>();
+    String className = null;
+
+    for (Tree member : classTree.getMembers()) {
+      if (member.getKind() != Tree.Kind.METHOD) {
+        continue;
+      }
+      MethodSymbol method = ASTHelpers.getSymbol((MethodTree) member);
+
+      if (method == null) {
+        continue;
+      }
+      if (className == null) {
+        className = classNameMangle(method, packageNames(method, state));
+      }
+
+      String selector = selectorNameMangle(method, state);
+      selectors.methodsBySelector.computeIfAbsent(selector, unused -> new ArrayList<>())
+          .add(method);
+
+      boolean keepsName = method.getAnnotationsByType(ObjectiveCName.class).length != 0
+          || selectorDeclaration(method, state) != method
+          || !isChecked((MethodTree) member, method, state)
+          || !isTooLong(className + "_" + selector, method.params().size());
+
+      if (keepsName) {
+        takenNames.add(selector);
+      } else {
+        renamedMethods.add(method);
+      }
+    }
+
+    Map<String, Integer> counters = new HashMap<>();
+
+    for (MethodSymbol method : renamedMethods) {
+      String methodName = method.isConstructor() ? "init" : method.getSimpleName().toString();
+      String candidate;
+
+      do {
+        int count = counters.merge(methodName, 1, Integer::sum);
+        candidate = count == 1 ? methodName : String.format("%s%d", methodName, count);
+      } while (takenNames.contains(candidate));
+
+      takenNames.add(candidate);
+      selectors.suggestedNames.put(method, candidate);
     }
+    return selectors;
   }
 
   public J2objcMethodName(ErrorProneFlags flags) {
+    super(flags);
 
     Optional<Integer> arg = flags.getInteger("J2ObjCMethodName:MethodNameLength");
 
     if (arg.isPresent()) {
       this.methodNameLength = arg.get();
     }
-  }
 
-  public J2objcMethodName() {
-    this(ErrorProneFlags.empty());
+    this.allMethods = flags.getBoolean("J2ObjCMethodName:AllMethods").orElse(false);
+
+    this.reportPath = flags.get("J2ObjCMethodName:Report").map(Paths::get);
+
+    arg = flags.getInteger("J2ObjCMethodName:ReportTopOffenders");
+
+    if (arg.isPresent()) {
+      this.reportTopOffenders = arg.get();
+    }
   }
 
-  @Override
-  public Description matchMethod(MethodTree tree, VisitorState state) {
-    if (MATCHER.matches(tree, state)) {
-      String mangledName = methodNameMangle(tree, state);
-
-      if (mangledName.length() >= 100 && tree.getParameters().size() > 5) {
-        return genDescription(
-            String.format("This method should likely be refactored to have fewer"
-                + " parameters and its name will be %d characters when translated to"
-                + " Objective-C: %s", mangledName.length(), mangledName), tree);
-
-      } else if (mangledName.length() >= methodNameLength) {
-        return genDescription(
-            String.format("This method name will be %d characters when translated to"
-                + " Objective-C: %s", mangledName.length(), mangledName), tree);
-      }
+  /**
+   * Adds a translated name to the report of this compilation, if a report was requested with
+   * {@code J2ObjCMethodName:Report}.
+   */
+  private void report(String kind, String name, VisitorState state) {
+    if (reportPath.isPresent()) {
+      J2objcNameReport.instance(state.context, reportPath.get(), reportTopOffenders)
+          .record(kind, name);
     }
+  }
 
-    return Description.NO_MATCH;
+  public J2objcMethodName() {
+    this(ErrorProneFlags.empty());
   }
 
   /**
-   * Looks for an ObjectiveCName annotation on a class. If one is found, stores the class name as
-   * the key and the annotation value as the value in the map foundObjcClassNames. This method will
-   * never match, and is only used to populate foundObjcClassNames.
+   * Warns against methods whose fully mangled name, as it would be outputted by J2ObjC, is too
+   * long, and against methods that share a selector with another method of the same class.
+   * <p>
+   * A method called {@code bar} in a class called {@code com.google.foo} with 1 parameter of type
+   * {@code java.util.HashMap} would be named {@code "ComGoogleFoo_barWithJavaUtilHashMap_"}. A
+   * method called {@code barGeneric} with 1 generic parameter would be named {@code
+   * "ComGoogleFoo_barGenericWithId_"}. If the package {@code com.google} was annotated with{@code
+   * ObjectiveCName("pack")}, then it would be named {@code "packFoo_barGenericWithId_"}.
    */
   @Override
-  public Description matchClass(ClassTree tree, VisitorState state) {
-    String encl = ASTHelpers.getSymbol(tree).enclClass().toString();
-    String outer = ASTHelpers.getSymbol(tree).outermostClass().toString();
-    String lookupName = localClassLookupName(encl, outer);
+  public Description matchMethod(MethodTree tree, VisitorState state) {
+    return match(tree, state, this::checkMethod);
+  }
 
-    // If class was checked manually already, it can be skipped
-    if (visitedClasses.contains(lookupName)) {
+  private Description checkMethod(MethodTree tree, VisitorState state) {
+    MethodSymbol symbol = ASTHelpers.getSymbol(tree);
+
+    if (symbol == null || !isChecked(tree, symbol, state)) {
       return Description.NO_MATCH;
     }
 
-    if (OBJC_NAME_MATCHER.matches(tree, state)) {
-      for (AnnotationTree annTree : tree.getModifiers().getAnnotations()) {
-        String source = state.getSourceForNode(annTree.getAnnotationType());
+    PackageNames names = packageNames(symbol, state);
+    String selector = selectorNameMangle(symbol, state);
+    String mangledName = classNameMangle(symbol, names) + "_" + selector;
+    report("method", mangledName, state);
 
-        if (source != null && source.equals("ObjectiveCName")) {
-          String value = annTree.getArguments().toString();
-          foundObjcClassNames.put(lookupName,
-              value.substring(value.indexOf("\"") + 1, value.lastIndexOf("\"")));
-          break;
-        }
-      }
+    // The selector of an overriding method can only be changed where it is declared
+    if (selectorDeclaration(symbol, state) != symbol) {
+      return Description.NO_MATCH;
     }
-    visitedClasses.add(lookupName);
+
+    ClassSelectors selectors = classSelectors(state);
+    List<MethodSymbol> sameSelector = selectors.methodsBySelector.get(selector);
+
+    if (sameSelector != null && sameSelector.size() > 1) {
+      return buildDescription(tree)
+          .setMessage(String.format("This method has the same Objective-C selector as %s: %s",
+              sameSelector.stream()
+                  .filter(other -> other != symbol)
+                  .map(Symbol::toString)
+                  .collect(joining(", ")),
+              selector))
+          .build();
+    }
+
+    String suggestedName = selectors.suggestedNames.getOrDefault(symbol,
+        tree.getName().toString());
+
+    if (mangledName.length() >= 100 && tree.getParameters().size() > 5) {
+      return genDescription(
+          String.format("This method should likely be refactored to have fewer"
+              + " parameters and its name will be %d characters when translated to"
+              + " Objective-C: %s", mangledName.length(), mangledName), tree, suggestedName);
+
+    } else if (mangledName.length() >= methodNameLength) {
+      return genDescription(
+          String.format("This method name will be %d characters when translated to"
+              + " Objective-C: %s", mangledName.length(), mangledName), tree, suggestedName);
+    }
+
     return Description.NO_MATCH;
   }
 
   /**
-   * Looks for an ObjectiveCName annotation on a package. If one is found, stores the value in
-   * packageAnnotation. This method will never match, and is only used to populate
-   * packageAnnotation.
+   * Looks for an ObjectiveCName annotation on a class. If one is found, stores the class name as
+   * the key and the annotation value as the value in the map foundObjcClassNames of the class's
+   * package. This method will never match, and is only used to populate foundObjcClassNames.
    */
   @Override
-  public Description matchCompilationUnit(CompilationUnitTree tree, VisitorState state) {
-    if (tree.getSourceFile() == null) {
-      return Description.NO_MATCH;
-    }
-    String name = tree.getSourceFile().getName();
-    int idx = name.lastIndexOf('/');
-    if (idx != -1) {
-      name = name.substring(idx + 1);
-    }
-    if (name.equals("package-info.java")) {
-      for (AnnotationTree annTree : tree.getPackageAnnotations()) {
-        String source = state.getSourceForNode(annTree.getAnnotationType());
-
-        if (source != null && source.equals("ObjectiveCName")) {
-          String value = annTree.getArguments().toString();
-          this.packageAnnotation = value
-              .substring(value.indexOf("\"") + 1, value.lastIndexOf("\""));
-          break;
+  public Description matchClass(ClassTree tree, VisitorState state) {
+    return match(tree, state, this::checkClass);
+  }
+
+  private Description checkClass(ClassTree tree, VisitorState state) {
+    ClassSymbol symbol = ASTHelpers.getSymbol(tree);
+    String encl = symbol.enclClass().toString();
+    String outer = symbol.outermostClass().toString();
+    String lookupName = localClassLookupName(encl, outer);
+    PackageNames names = packageNames(symbol, state);
+
+    // If class was checked manually already, the annotation lookup can be skipped
+    if (!names.visitedClasses.contains(lookupName)) {
+      if (OBJC_NAME_MATCHER.matches(tree, state)) {
+        for (AnnotationTree annTree : tree.getModifiers().getAnnotations()) {
+          String source = state.getSourceForNode(annTree.getAnnotationType());
+
+          if (source != null && source.equals("ObjectiveCName")) {
+            String value = annTree.getArguments().toString();
+            names.foundObjcClassNames.put(lookupName,
+                value.substring(value.indexOf("\"") + 1, value.lastIndexOf("\"")));
+            break;
+          }
         }
       }
+      names.visitedClasses.add(lookupName);
+    }
+
+    NestingKind nesting = symbol.getNestingKind();
+    if (nesting == NestingKind.TOP_LEVEL || nesting == NestingKind.MEMBER) {
+      report("class", localClassNameMangle(encl, outer, symbol.packge(), names), state);
     }
     return Description.NO_MATCH;
   }
@@ -0,0 +1,176 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import com.sun.tools.javac.util.Context;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Streams the Objective-C names computed by {@link J2objcMethodName} into a report file, one JSON
+ * object per line. Each translated name is written as soon as it is computed:
+ *
+ * <pre>
+ * {"kind":"method","name":"ComGoogleFoo_barWithInt_","length":24}
+ * {"kind":"class","name":"ComGoogleFoo","length":12}
+ * </pre>
+ *
+ * When the compilation finishes, a summary line with {@code "kind":"summary"} is appended. It holds
+ * a histogram of the name lengths, the estimated bytes the names add to the string tables of the
+ * binary (each distinct name once, plus its terminating NUL) and the longest names.
+ *
+ * <p>There is one report per compilation, so pointing the flag at a file per module results in a
+ * report per module.
+ */
+final class J2objcNameReport {
+
+  private static final Context.Key<J2objcNameReport> KEY = new Context.Key<>();
+
+  /** Width of a histogram bucket, in characters. */
+  private static final int BUCKET_WIDTH = 20;
+
+  /** Names of this length or longer all fall into the last histogram bucket. */
+  private static final int LAST_BUCKET_START = 300;
+
+  private static final Comparator<JSONObject> BY_LENGTH =
+      Comparator.comparingInt((JSONObject entry) -> entry.optInt("length"))
+          .thenComparing(entry -> entry.optString("name"));
+
+  private final JsonLinesReport report;
+
+  private final int topOffenders;
+
+  private final Map<String, NameStats> stats = new LinkedHashMap<>();
+
+  /** Min-heap of the longest names seen so far, never larger than {@code topOffenders}. */
+  private final PriorityQueue<JSONObject> longest = new PriorityQueue<>(BY_LENGTH);
+
+  private J2objcNameReport(JsonLinesReport report, int topOffenders) {
+    this.report = report;
+    this.topOffenders = topOffenders;
+  }
+
+  /**
+   * Returns the report of the compilation that owns {@code context}, creating it on first use. The
+   * report is finished and closed once the compilation has finished.
+   */
+  static J2objcNameReport instance(Context context, Path path, int topOffenders) {
+    J2objcNameReport nameReport = context.get(KEY);
+    if (nameReport == null) {
+      nameReport = new J2objcNameReport(JsonLinesReport.instance(context, path), topOffenders);
+      context.put(KEY, nameReport);
+      nameReport.report.onFinish(nameReport::finish);
+    }
+    return nameReport;
+  }
+
+  /**
+   * Records a translated name and immediately writes it to the report.
+   *
+   * @param kind Kind of the name, e.g. {@code "method"} or {@code "class"}.
+   * @param name The translated Objective-C name.
+   */
+  synchronized void record(String kind, String name) {
+    stats.computeIfAbsent(kind, unused -> new NameStats()).add(name);
+
+    try {
+      JSONObject entry = new JSONObject()
+          .put("kind", kind)
+          .put("name", name)
+          .put("length", name.length());
+
+      longest.add(entry);
+      if (longest.size() > topOffenders) {
+        longest.poll();
+      }
+      report.write(entry);
+    } catch (JSONException e) {
+      // Only thrown for non-finite numbers and null keys, which are never used here.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Appends the summary line. */
+  private synchronized void finish() {
+    try {
+      JSONObject summary = new JSONObject().put("kind", "summary");
+      long totalBytes = 0;
+
+      for (Map.Entry<String, NameStats> entry : stats.entrySet()) {
+        summary.put(entry.getKey(), entry.getValue().toJson());
+        totalBytes += entry.getValue().bytes;
+      }
+      summary.put("estimatedBytes", totalBytes);
+
+      List<JSONObject> top = new ArrayList<>(longest);
+      top.sort(BY_LENGTH.reversed());
+      summary.put("topOffenders", new JSONArray(top));
+
+      report.write(summary);
+    } catch (JSONException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Counts and length histogram of one kind of name. */
+  private static final class NameStats {
+
+    private final Set<String> distinctNames = new HashSet<>();
+
+    private final int[] histogram = new int[LAST_BUCKET_START / BUCKET_WIDTH + 1];
+
+    private int count;
+
+    private long bytes;
+
+    void add(String name) {
+      count++;
+      histogram[Math.min(name.length(), LAST_BUCKET_START) / BUCKET_WIDTH]++;
+
+      // Identical strings are only stored once in the binary.
+      if (distinctNames.add(name)) {
+        bytes += name.length() + 1;
+      }
+    }
+
+    JSONObject toJson() throws JSONException {
+      JSONObject buckets = new JSONObject();
+
+      for (int i = 0; i < histogram.length; i++) {
+        int start = i * BUCKET_WIDTH;
+        String bucket = start >= LAST_BUCKET_START
+            ? String.format("%d+", start)
+            : String.format("%d-%d", start, start + BUCKET_WIDTH - 1);
+        buckets.put(bucket, histogram[i]);
+      }
+
+      return new JSONObject()
+          .put("count", count)
+          .put("distinct", distinctNames.size())
+          .put("estimatedBytes", bytes)
+          .put("histogram", buckets);
+    }
+  }
+}
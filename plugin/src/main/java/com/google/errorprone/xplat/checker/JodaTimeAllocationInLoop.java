@@ -0,0 +1,567 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.errorprone.BugPattern.SeverityLevel.WARNING;
+
+import com.google.auto.service.AutoService;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.errorprone.BugPattern;
+import com.google.errorprone.ErrorProneFlags;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.bugpatterns.BugChecker;
+import com.google.errorprone.bugpatterns.BugChecker.MethodInvocationTreeMatcher;
+import com.google.errorprone.bugpatterns.BugChecker.NewClassTreeMatcher;
+import com.google.errorprone.fixes.SuggestedFix;
+import com.google.errorprone.fixes.SuggestedFixes;
+import com.google.errorprone.matchers.Description;
+import com.google.errorprone.matchers.Matcher;
+import com.google.errorprone.matchers.Matchers;
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.AssignmentTree;
+import com.sun.source.tree.BinaryTree;
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompoundAssignmentTree;
+import com.sun.source.tree.DoWhileLoopTree;
+import com.sun.source.tree.EnhancedForLoopTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.ForLoopTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.LabeledStatementTree;
+import com.sun.source.tree.LambdaExpressionTree;
+import com.sun.source.tree.LiteralTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.ParenthesizedTree;
+import com.sun.source.tree.StatementTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.TypeCastTree;
+import com.sun.source.tree.UnaryTree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.tree.WhileLoopTree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.MethodSymbol;
+import com.sun.tools.javac.code.Symbol.VarSymbol;
+import com.sun.tools.javac.code.Type;
+import com.sun.tools.javac.tree.JCTree;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+
+/**
+ * Warns against Joda-Time objects that are created inside loops and stream lambdas, where they are
+ * allocated again on every iteration. This covers Joda-Time constructors, time zone lookups with
+ * DateTimeZone.getDefault() and DateTimeZone.forID(), and the DateTime conversions that {@link
+ * JodaTimeLocal} checks for.
+ * <p>
+ * If the expression does not depend on anything that changes inside the loop, a fix is suggested
+ * that computes it once, in a local variable before the outermost loop it does not depend on. As
+ * all iterations then share the value, this is only done for immutable types, see {@code
+ * isImmutable()}, and only if the variable can be declared right before the loop without running
+ * the expression where no loop around it would run. The variable is still computed if the loop
+ * itself does not run, so unless the expression cannot throw, see {@code cannotThrow()}, the
+ * message points this out: DateTimeZone.forID() throws for unknown IDs, for example.
+ */
+@AutoService(BugChecker.class)
+@BugPattern(
+    name = "JodaTimeAllocationInLoop",
+    summary = "Warns against Joda-Time objects that are created on every iteration of a loop.",
+    explanation =
+        "Joda-Time objects and time zone lookups that are created inside loops and stream"
+            + " lambdas allocate on every iteration, which causes GC pressure on mobile"
+            + " platforms. Values that do not change between iterations should be computed once,"
+            + " before the loop.",
+    severity = WARNING)
+public class JodaTimeAllocationInLoop extends XplatChecker implements NewClassTreeMatcher,
+    MethodInvocationTreeMatcher {
+
+  private static final String JODA_PACKAGE = "org.joda.time.";
+
+  /** Supertypes of the immutable Joda-Time values, unless they are ReadWritableInstants. */
+  private static final ImmutableSet<String> IMMUTABLE_SUPERTYPES = ImmutableSet.of(
+      "org.joda.time.ReadableInstant", "org.joda.time.ReadablePartial",
+      "org.joda.time.DateTimeZone");
+
+  /** Conversions that read the current time, so their result changes between iterations. */
+  private static final ImmutableSet<String> CLOCK_CONVERSIONS =
+      ImmutableSet.of("toDateTimeAtCurrentTime", "toDateTimeToday");
+
+  /**
+   * Holds the matchers, so that they are only built once the checker first matches a tree, and not
+   * whenever Error Prone loads the checker.
+   */
+  private static final class MatcherHolder {
+
+    static final Matcher<ExpressionTree> ZONE_LOOKUP_MATCHER =
+        Matchers.staticMethod()
+            .onClass("org.joda.time.DateTimeZone")
+            .namedAnyOf("getDefault", "forID");
+
+    static final Matcher<ExpressionTree> CONVERSION_MATCHER =
+        Matchers.anyOf(
+            JodaTimeLocal.DISALLOWED_CLASS_METHOD_MAP.keySet().stream()
+                .map(JodaTimeLocal::methodMatcher)
+                .collect(toImmutableList()));
+
+    static final Matcher<ExpressionTree> STREAM_MATCHER =
+        Matchers.instanceMethod().onDescendantOf("java.util.stream.BaseStream");
+  }
+
+  /** A loop or stream lambda whose body is run repeatedly. */
+  private static final class Region {
+
+    final TreePath path;
+
+    final String description;
+
+    Region(TreePath path, String description) {
+      this.path = path;
+      this.description = description;
+    }
+  }
+
+  public JodaTimeAllocationInLoop(ErrorProneFlags flags) {
+    super(flags);
+  }
+
+  public JodaTimeAllocationInLoop() {
+    this(ErrorProneFlags.empty());
+  }
+
+  @Override
+  public Description matchNewClass(NewClassTree tree, VisitorState state) {
+    return match(tree, state, this::checkNewClass);
+  }
+
+  private Description checkNewClass(NewClassTree tree, VisitorState state) {
+    if (!isJodaConstruction(tree)) {
+      return Description.NO_MATCH;
+    }
+    return match(tree, "Constructing " + ASTHelpers.getType(tree).tsym.getSimpleName(), state);
+  }
+
+  @Override
+  public Description matchMethodInvocation(MethodInvocationTree tree, VisitorState state) {
+    return match(tree, state, this::checkMethodInvocation);
+  }
+
+  private Description checkMethodInvocation(MethodInvocationTree tree, VisitorState state) {
+    if (!MatcherHolder.ZONE_LOOKUP_MATCHER.matches(tree, state)
+        && !MatcherHolder.CONVERSION_MATCHER.matches(tree, state)) {
+      return Description.NO_MATCH;
+    }
+    MethodSymbol symbol = ASTHelpers.getSymbol(tree);
+    return match(tree, "Calling " + symbol.owner.getSimpleName() + "." + symbol.getSimpleName(),
+        state);
+  }
+
+  private static boolean isJodaConstruction(NewClassTree tree) {
+    MethodSymbol symbol = ASTHelpers.getSymbol(tree);
+    return symbol != null && tree.getClassBody() == null
+        && symbol.owner.getQualifiedName().toString().startsWith(JODA_PACKAGE);
+  }
+
+  private static boolean isFlagged(Tree tree, VisitorState state) {
+    if (tree instanceof NewClassTree) {
+      return isJodaConstruction((NewClassTree) tree);
+    }
+    return tree instanceof MethodInvocationTree
+        && (MatcherHolder.ZONE_LOOKUP_MATCHER.matches((ExpressionTree) tree, state)
+        || MatcherHolder.CONVERSION_MATCHER.matches((ExpressionTree) tree, state));
+  }
+
+  private Description match(ExpressionTree tree, String what, VisitorState state) {
+    Region region = enclosingRegion(state.getPath(), state);
+
+    if (region == null) {
+      return Description.NO_MATCH;
+    }
+
+    // Only the outermost flagged expression is reported, as it includes the others
+    for (Tree ancestor : state.getPath().getParentPath()) {
+      if (ancestor == region.path.getLeaf()) {
+        break;
+      }
+      if (isFlagged(ancestor, state)) {
+        return Description.NO_MATCH;
+      }
+    }
+
+    VariableIndex index = VariableIndex.forCurrentClass(state);
+    Region target = null;
+    for (Region current = region; current != null && isInvariant(tree, current, index, state);
+        current = enclosingRegion(current.path, state)) {
+      target = current;
+    }
+
+    Description.Builder description = buildDescription(tree);
+    String message = String.format("%s inside this %s allocates on every iteration.", what,
+        region.description);
+
+    if (target != null && isImmutable(ASTHelpers.getType(tree), state)) {
+      SuggestedFix fix = hoist(tree, target, state);
+      if (fix != null) {
+        message += " Its value does not change between iterations, so it can be computed once"
+            + " before the " + target.description + ".";
+        if (!cannotThrow(tree, state)) {
+          message += " Note that the fix computes it even if the " + target.description
+              + " does not run, where it may throw.";
+        }
+        description.addFix(fix);
+      }
+    }
+
+    return description.setMessage(message).build();
+  }
+
+  /**
+   * Returns the innermost loop or stream lambda whose body contains the given path, or null if
+   * there is none inside the enclosing method.
+   */
+  private static Region enclosingRegion(TreePath path, VisitorState state) {
+    Tree child = path.getLeaf();
+
+    for (TreePath current = path.getParentPath(); current != null;
+        current = current.getParentPath()) {
+      Tree tree = current.getLeaf();
+
+      if (tree instanceof MethodTree || tree instanceof ClassTree) {
+        return null;
+      }
+
+      if (tree instanceof ForLoopTree) {
+        // The initializer is only run once
+        if (!((ForLoopTree) tree).getInitializer().contains(child)) {
+          return new Region(current, "loop");
+        }
+      } else if (tree instanceof EnhancedForLoopTree) {
+        if (((EnhancedForLoopTree) tree).getStatement() == child) {
+          return new Region(current, "loop");
+        }
+      } else if (tree instanceof WhileLoopTree || tree instanceof DoWhileLoopTree) {
+        return new Region(current, "loop");
+      } else if (tree instanceof LambdaExpressionTree) {
+        Tree parent = current.getParentPath().getLeaf();
+
+        // Other lambdas may run at any time, not necessarily repeatedly
+        if (parent instanceof MethodInvocationTree
+            && MatcherHolder.STREAM_MATCHER.matches((ExpressionTree) parent, state)) {
+          return new Region(current, "stream lambda");
+        }
+        return null;
+      }
+      child = tree;
+    }
+    return null;
+  }
+
+  /** Returns whether an expression evaluates to the same value on every run of a region. */
+  private boolean isInvariant(ExpressionTree tree, Region region, VariableIndex index,
+      VisitorState state) {
+    if (tree == null) {
+      return false;
+    }
+
+    switch (tree.getKind()) {
+      case PARENTHESIZED:
+        return isInvariant(((ParenthesizedTree) tree).getExpression(), region, index, state);
+      case TYPE_CAST:
+        return isInvariant(((TypeCastTree) tree).getExpression(), region, index, state);
+      case IDENTIFIER:
+      case MEMBER_SELECT:
+        return isInvariantVariable(tree, region, index, state);
+      case NEW_CLASS:
+        return isInvariantConstruction((NewClassTree) tree, region, index, state);
+      case METHOD_INVOCATION:
+        return isInvariantCall((MethodInvocationTree) tree, region, index, state);
+      default:
+        if (tree instanceof LiteralTree) {
+          return true;
+        }
+        if (tree instanceof BinaryTree) {
+          return isInvariant(((BinaryTree) tree).getLeftOperand(), region, index, state)
+              && isInvariant(((BinaryTree) tree).getRightOperand(), region, index, state);
+        }
+        return false;
+    }
+  }
+
+  private boolean isInvariantVariable(ExpressionTree tree, Region region, VariableIndex index,
+      VisitorState state) {
+    Symbol symbol = ASTHelpers.getSymbol(tree);
+
+    if (!(symbol instanceof VarSymbol)) {
+      return false;
+    }
+
+    if (tree instanceof MemberSelectTree) {
+      ExpressionTree receiver = ((MemberSelectTree) tree).getExpression();
+      Symbol receiverSymbol = ASTHelpers.getSymbol(receiver);
+
+      // Either a static field or a field of an invariant object
+      if (!(receiverSymbol != null && receiverSymbol.getKind().isClass())
+          && !isInvariant(receiver, region, index, state)) {
+        return false;
+      }
+    }
+
+    if (symbol.getKind().isField()) {
+      // Other fields may be changed by any method called in the loop
+      return symbol.getModifiers().contains(Modifier.FINAL);
+    }
+
+    if (symbol.getKind() != ElementKind.LOCAL_VARIABLE
+        && symbol.getKind() != ElementKind.PARAMETER) {
+      return false;
+    }
+
+    TreePath declaration = index.declaration((VarSymbol) symbol);
+    if (declaration == null || Iterables.contains(declaration, region.path.getLeaf())) {
+      return false;
+    }
+
+    for (TreePath use : index.uses((VarSymbol) symbol)) {
+      if (isWrite(use) && Iterables.contains(use, region.path.getLeaf())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isWrite(TreePath use) {
+    Tree parent = use.getParentPath().getLeaf();
+
+    if (parent instanceof AssignmentTree) {
+      return ((AssignmentTree) parent).getVariable() == use.getLeaf();
+    }
+    if (parent instanceof CompoundAssignmentTree) {
+      return ((CompoundAssignmentTree) parent).getVariable() == use.getLeaf();
+    }
+    switch (parent.getKind()) {
+      case PREFIX_INCREMENT:
+      case PREFIX_DECREMENT:
+      case POSTFIX_INCREMENT:
+      case POSTFIX_DECREMENT:
+        return ((UnaryTree) parent).getExpression() == use.getLeaf();
+      default:
+        return false;
+    }
+  }
+
+  private boolean isInvariantConstruction(NewClassTree tree, Region region, VariableIndex index,
+      VisitorState state) {
+    if (!isJodaConstruction(tree) || !isImmutable(ASTHelpers.getType(tree), state)) {
+      return false;
+    }
+
+    // Constructors that only take a zone or chronology, if any, read the current time
+    boolean readsClock = true;
+    for (VarSymbol parameter : ASTHelpers.getSymbol(tree).getParameters()) {
+      String type = state.getTypes().erasure(parameter.asType()).toString();
+      if (!type.equals("org.joda.time.DateTimeZone") && !type.equals("org.joda.time.Chronology")) {
+        readsClock = false;
+      }
+    }
+
+    return !readsClock && allInvariant(tree.getArguments(), region, index, state);
+  }
+
+  private boolean isInvariantCall(MethodInvocationTree tree, Region region, VariableIndex index,
+      VisitorState state) {
+    if (MatcherHolder.ZONE_LOOKUP_MATCHER.matches(tree, state)) {
+      return allInvariant(tree.getArguments(), region, index, state);
+    }
+
+    if (MatcherHolder.CONVERSION_MATCHER.matches(tree, state)) {
+      return !CLOCK_CONVERSIONS.contains(ASTHelpers.getSymbol(tree).getSimpleName().toString())
+          && isInvariant(ASTHelpers.getReceiver(tree), region, index, state)
+          && allInvariant(tree.getArguments(), region, index, state);
+    }
+    return false;
+  }
+
+  private boolean allInvariant(Iterable<? extends ExpressionTree> trees, Region region,
+      VariableIndex index, VisitorState state) {
+    for (ExpressionTree tree : trees) {
+      if (!isInvariant(tree, region, index, state)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns whether an invariant expression cannot throw, so that computing it before a loop that
+   * does not run changes nothing: the default time zone, static fields, and constructors that
+   * only take primitive milliseconds, time zones and chronologies, as in {@code new
+   * DateTime(millis, zone)}.
+   */
+  private static boolean cannotThrow(ExpressionTree tree, VisitorState state) {
+    switch (tree.getKind()) {
+      case PARENTHESIZED:
+        return cannotThrow(((ParenthesizedTree) tree).getExpression(), state);
+      case IDENTIFIER:
+        return true;
+      case MEMBER_SELECT:
+        // Fields of other objects throw if the object is null
+        Symbol receiver = ASTHelpers.getSymbol(((MemberSelectTree) tree).getExpression());
+        return receiver != null && receiver.getKind().isClass();
+      case NEW_CLASS:
+        NewClassTree newClass = (NewClassTree) tree;
+        List<VarSymbol> parameters = ASTHelpers.getSymbol(newClass).getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+          String type = state.getTypes().erasure(parameters.get(i).asType()).toString();
+          ExpressionTree argument = newClass.getArguments().get(i);
+          // Fields such as months throw if they are out of range, and unboxing throws for null
+          boolean safe = type.equals("long")
+              ? ASTHelpers.getType(argument).isPrimitive()
+              : type.equals("org.joda.time.DateTimeZone")
+                  || type.equals("org.joda.time.Chronology");
+          if (!safe || !cannotThrow(argument, state)) {
+            return false;
+          }
+        }
+        return true;
+      case METHOD_INVOCATION:
+        return MatcherHolder.ZONE_LOOKUP_MATCHER.matches(tree, state)
+            && ASTHelpers.getSymbol(tree).getSimpleName().contentEquals("getDefault");
+      default:
+        return tree instanceof LiteralTree;
+    }
+  }
+
+  /**
+   * Returns whether values of a type can be shared by all iterations: the instants and partials
+   * that are not ReadWritableInstants, such as DateTime and LocalDate but not MutableDateTime, and
+   * time zones.
+   */
+  private static boolean isImmutable(Type type, VisitorState state) {
+    if (type == null) {
+      return false;
+    }
+    Type readWritable = state.getTypeFromString("org.joda.time.ReadWritableInstant");
+    if (readWritable != null && ASTHelpers.isSubtype(type, readWritable, state)) {
+      return false;
+    }
+    for (String name : IMMUTABLE_SUPERTYPES) {
+      Type supertype = state.getTypeFromString(name);
+      if (supertype != null && ASTHelpers.isSubtype(type, supertype, state)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns a fix that moves an expression into a new local variable right before a region, or
+   * null if the variable cannot be declared there: if the region is not a statement of a block,
+   * or is nested in a statement that may not run it, such as the branch of an if.
+   */
+  private static SuggestedFix hoist(ExpressionTree tree, Region region, VisitorState state) {
+    // Labeled loops keep their label, and stream lambdas are hoisted out of the statement that
+    // contains the stream. Loops in between are only passed through where they run the region
+    // once, as in the expression of an enhanced for loop, since the region would be nested in
+    // their body otherwise.
+    Region outer = enclosingRegion(region.path, state);
+    boolean lambda = region.path.getLeaf() instanceof LambdaExpressionTree;
+    TreePath statement = region.path;
+    while (!(statement.getParentPath().getLeaf() instanceof BlockTree)) {
+      statement = statement.getParentPath();
+      Tree leaf = statement.getLeaf();
+      if (leaf instanceof MethodTree || leaf instanceof ClassTree
+          || leaf instanceof LambdaExpressionTree) {
+        return null;
+      }
+      if (leaf instanceof StatementTree && !(leaf instanceof LabeledStatementTree)
+          && !(isLoop(leaf) && (outer == null || outer.path.getLeaf() != leaf))
+          && !(lambda && statement.getParentPath().getLeaf() instanceof BlockTree)) {
+        return null;
+      }
+    }
+
+    Type type = ASTHelpers.getType(tree);
+    if (type == null) {
+      return null;
+    }
+
+    SuggestedFix.Builder fix = SuggestedFix.builder();
+    String typeName = SuggestedFixes.qualifyType(state, fix, type);
+    String name = unusedName(variableName(type), state);
+
+    CharSequence source = state.getSourceCode();
+    int start = ((JCTree) statement.getLeaf()).getStartPosition();
+    int lineStart = start;
+    while (lineStart > 0 && (source.charAt(lineStart - 1) == ' '
+        || source.charAt(lineStart - 1) == '\t')) {
+      lineStart--;
+    }
+    String indent = source.subSequence(lineStart, start).toString();
+
+    return fix
+        .prefixWith(statement.getLeaf(), String.format("%s %s = %s;\n%s", typeName, name,
+            state.getSourceForNode(tree), indent))
+        .replace(tree, name)
+        .build();
+  }
+
+  private static boolean isLoop(Tree tree) {
+    return tree instanceof ForLoopTree || tree instanceof EnhancedForLoopTree
+        || tree instanceof WhileLoopTree || tree instanceof DoWhileLoopTree;
+  }
+
+  private static String variableName(Type type) {
+    String simpleName = type.tsym.getSimpleName().toString();
+
+    if (simpleName.equals("DateTimeZone")) {
+      return "zone";
+    }
+    return Character.toLowerCase(simpleName.charAt(0)) + simpleName.substring(1);
+  }
+
+  /** Returns a name that is not used yet inside the enclosing class. */
+  private static String unusedName(String name, VisitorState state) {
+    Set<String> names = new HashSet<>();
+    ClassTree enclosingClass = ASTHelpers.findEnclosingNode(state.getPath(), ClassTree.class);
+
+    new TreeScanner<Void, Void>() {
+      @Override
+      public Void visitIdentifier(IdentifierTree tree, Void unused) {
+        names.add(tree.getName().toString());
+        return null;
+      }
+
+      @Override
+      public Void visitVariable(VariableTree tree, Void unused) {
+        names.add(tree.getName().toString());
+        return super.visitVariable(tree, unused);
+      }
+    }.scan(enclosingClass, null);
+
+    String candidate = name;
+    for (int i = 2; names.contains(candidate); i++) {
+      candidate = name + i;
+    }
+    return candidate;
+  }
+}
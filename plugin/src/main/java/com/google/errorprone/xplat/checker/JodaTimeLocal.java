@@ -21,6 +21,7 @@ import com.google.auto.service.AutoService;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.errorprone.BugPattern;
+import com.google.errorprone.ErrorProneFlags;
 import com.google.errorprone.VisitorState;
 import com.google.errorprone.bugpatterns.BugChecker;
 import com.google.errorprone.bugpatterns.BugChecker.MethodInvocationTreeMatcher;
@@ -51,10 +52,14 @@ import java.util.List;
             + " and toDateTime methods are banned from cross platform development"
             + " due to incompatibilities. A fix using a new DateTime is suggested.",
     severity = ERROR)
-public class JodaTimeLocal extends BugChecker implements MethodInvocationTreeMatcher,
+public class JodaTimeLocal extends XplatChecker implements MethodInvocationTreeMatcher,
     NewClassTreeMatcher {
 
-  private static final ImmutableMap<String, ImmutableList<String>> DISALLOWED_CLASS_METHOD_MAP =
+  /**
+   * The Joda-Time classes and their methods that convert to a DateTime. Also used by {@link
+   * JodaTimeAllocationInLoop}.
+   */
+  static final ImmutableMap<String, ImmutableList<String>> DISALLOWED_CLASS_METHOD_MAP =
       ImmutableMap.of("org.joda.time.LocalDateTime", ImmutableList.of("toDateTime"),
 
           "org.joda.time.LocalDate",
@@ -63,24 +68,7 @@ public class JodaTimeLocal extends BugChecker implements MethodInvocationTreeMat
           "org.joda.time.LocalTime", ImmutableList.of("toDateTimeToday"));
 
 
-  private static final Matcher<ExpressionTree> CONSTRUCTOR_MATCHER =
-      Matchers.anyOf(
-          Matchers.anyOf(
-              DISALLOWED_CLASS_METHOD_MAP.keySet().stream()
-                  .map(
-                      typeName ->
-                          Matchers.constructor()
-                              .forClass(typeName)
-                              .withParameters("org.joda.time.DateTimeZone"))
-                  .collect(toImmutableList())),
-          Matchers.constructor()
-              .forClass("org.joda.time.LocalDateTime")
-              .withParameters("long", "org.joda.time.DateTimeZone"),
-          Matchers.constructor()
-              .forClass("org.joda.time.LocalDateTime")
-              .withParameters("java.lang.Object", "org.joda.time.DateTimeZone"));
-
-  private static Matcher<ExpressionTree> methodMatcher(String key) {
+  static Matcher<ExpressionTree> methodMatcher(String key) {
     return Matchers.anyOf(
         DISALLOWED_CLASS_METHOD_MAP.get(key).stream()
             .map(
@@ -89,14 +77,38 @@ public class JodaTimeLocal extends BugChecker implements MethodInvocationTreeMat
             .collect(toImmutableList()));
   }
 
-  private static final Matcher<ExpressionTree> LOCAL_DATE_TIME_METHOD_MATCHER =
-      methodMatcher("org.joda.time.LocalDateTime");
-
-  private static final Matcher<ExpressionTree> LOCAL_TIME_METHOD_MATCHER =
-      methodMatcher("org.joda.time.LocalTime");
-
-  private static final Matcher<ExpressionTree> LOCAL_DATE_METHOD_MATCHER =
-      methodMatcher("org.joda.time.LocalDate");
+  /**
+   * Holds the matchers, so that they are only built once the checker first matches a tree, and not
+   * whenever Error Prone loads the checker.
+   */
+  private static final class MatcherHolder {
+
+    static final Matcher<ExpressionTree> CONSTRUCTOR_MATCHER =
+        Matchers.anyOf(
+            Matchers.anyOf(
+                DISALLOWED_CLASS_METHOD_MAP.keySet().stream()
+                    .map(
+                        typeName ->
+                            Matchers.constructor()
+                                .forClass(typeName)
+                                .withParameters("org.joda.time.DateTimeZone"))
+                    .collect(toImmutableList())),
+            Matchers.constructor()
+                .forClass("org.joda.time.LocalDateTime")
+                .withParameters("long", "org.joda.time.DateTimeZone"),
+            Matchers.constructor()
+                .forClass("org.joda.time.LocalDateTime")
+                .withParameters("java.lang.Object", "org.joda.time.DateTimeZone"));
+
+    static final Matcher<ExpressionTree> LOCAL_DATE_TIME_METHOD_MATCHER =
+        methodMatcher("org.joda.time.LocalDateTime");
+
+    static final Matcher<ExpressionTree> LOCAL_TIME_METHOD_MATCHER =
+        methodMatcher("org.joda.time.LocalTime");
+
+    static final Matcher<ExpressionTree> LOCAL_DATE_METHOD_MATCHER =
+        methodMatcher("org.joda.time.LocalDate");
+  }
 
   private Description.Builder message(Tree tree, String arg) {
     return buildDescription(tree)
@@ -119,9 +131,20 @@ public class JodaTimeLocal extends BugChecker implements MethodInvocationTreeMat
         .build();
   }
 
+  public JodaTimeLocal(ErrorProneFlags flags) {
+    super(flags);
+  }
+
+  public JodaTimeLocal() {
+    this(ErrorProneFlags.empty());
+  }
 
   @Override
   public Description matchMethodInvocation(MethodInvocationTree tree, VisitorState state) {
+    return match(tree, state, this::checkMethodInvocation);
+  }
+
+  private Description checkMethodInvocation(MethodInvocationTree tree, VisitorState state) {
     ExpressionTree recv = ASTHelpers.getReceiver(tree);
     if (recv == null) {
       return Description.NO_MATCH;
@@ -142,7 +165,7 @@ public class JodaTimeLocal extends BugChecker implements MethodInvocationTreeMat
       argument = state.getSourceForNode(arguments.get(0));
     }
 
-    if (LOCAL_DATE_TIME_METHOD_MATCHER.matches(tree, state)) {
+    if (MatcherHolder.LOCAL_DATE_TIME_METHOD_MATCHER.matches(tree, state)) {
 
       return messageFix(tree, symbol.toString(), ((JCTree) recv).getStartPosition(),
           state.getEndPosition(tree),
@@ -152,13 +175,13 @@ public class JodaTimeLocal extends BugChecker implements MethodInvocationTreeMat
                   + " %<s.getMillisOfSecond(), %s)",
               recvSrc, argument));
 
-    } else if (LOCAL_TIME_METHOD_MATCHER.matches(tree, state)) {
+    } else if (MatcherHolder.LOCAL_TIME_METHOD_MATCHER.matches(tree, state)) {
 
       return messageFix(tree, symbol.toString(), ((JCTree) recv).getStartPosition(),
           state.getEndPosition(tree), String.format("new DateTime().toDateTime(%s).withTime(%s)",
               argument, recvSrc));
 
-    } else if (LOCAL_DATE_METHOD_MATCHER.matches(tree, state)) {
+    } else if (MatcherHolder.LOCAL_DATE_METHOD_MATCHER.matches(tree, state)) {
 
       if (symbol.name.toString().equals("toDateTime")) {
         String zone;
@@ -196,9 +219,13 @@ public class JodaTimeLocal extends BugChecker implements MethodInvocationTreeMat
 
   @Override
   public Description matchNewClass(NewClassTree tree, VisitorState state) {
+    return match(tree, state, this::checkNewClass);
+  }
+
+  private Description checkNewClass(NewClassTree tree, VisitorState state) {
     Symbol symbol = ASTHelpers.getSymbol(tree);
 
-    if (CONSTRUCTOR_MATCHER.matches(tree, state) && symbol != null) {
+    if (MatcherHolder.CONSTRUCTOR_MATCHER.matches(tree, state) && symbol != null) {
       return message(tree, symbol.toString()).build();
     }
     return Description.NO_MATCH;
@@ -0,0 +1,800 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import static com.google.errorprone.BugPattern.SeverityLevel.SUGGESTION;
+
+import com.google.auto.service.AutoService;
+import com.google.common.collect.ImmutableMap;
+import com.google.errorprone.BugPattern;
+import com.google.errorprone.ErrorProneFlags;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.bugpatterns.BugChecker;
+import com.google.errorprone.bugpatterns.BugChecker.CompilationUnitTreeMatcher;
+import com.google.errorprone.fixes.SuggestedFix;
+import com.google.errorprone.matchers.Description;
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.ImportTree;
+import com.sun.source.tree.LiteralTree;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.code.Symbol.MethodSymbol;
+import com.sun.tools.javac.code.Symbol.PackageSymbol;
+import com.sun.tools.javac.code.Symbol.VarSymbol;
+import com.sun.tools.javac.code.Type;
+import com.sun.tools.javac.code.Type.ArrayType;
+import com.sun.tools.javac.code.Type.WildcardType;
+import com.sun.tools.javac.tree.JCTree;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+
+/**
+ * Migrates files from the Joda-Time classes that {@link JodaTimeLocal} targets, as well as
+ * DateTime, Duration, Instant and DateTimeZone, to their java.time equivalents.
+ * <p>
+ * The migration is done for a whole file at once, since replacing a type in one place but not in
+ * another would not compile. If every use of Joda-Time in a file has a known java.time equivalent,
+ * a single fix is suggested that rewrites all of them. Otherwise, each use that cannot be migrated
+ * is reported and the file is left alone.
+ * <p>
+ * Only what is private to a file is migrated: members that other files can use must not use
+ * Joda-Time in their signature, and neither must the members of other files that the file uses,
+ * since these would keep using Joda-Time after the migration.
+ * <p>
+ * The fixes can be applied to a whole module with Error Prone's patching mode, for example with
+ * {@code -XepPatchChecks:JodaTimeMigration -XepPatchLocation:IN_PLACE}.
+ */
+@AutoService(BugChecker.class)
+@BugPattern(
+    name = "JodaTimeMigration",
+    summary = "Suggests migrating files from Joda-Time to java.time.",
+    explanation =
+        "Joda-Time allocates heavily and carries its own time zone database on every platform,"
+            + " while java.time is available on all of them. Files whose use of Joda-Time has a"
+            + " known java.time equivalent are migrated as a whole. DateTime becomes"
+            + " ZonedDateTime and DateTimeZone becomes ZoneId. Files whose non-private members, or"
+            + " whose uses of other files, have Joda-Time in their signature are not migrated,"
+            + " since the other files would have to be migrated at the same time. The string"
+            + " representations of these classes differ slightly, so code that parses or compares"
+            + " their toString() output should be reviewed after the migration.",
+    severity = SUGGESTION)
+public class JodaTimeMigration extends XplatChecker implements CompilationUnitTreeMatcher {
+
+  private static final String JODA_PACKAGE = "org.joda.time.";
+
+  private static final String LOCAL_DATE = "org.joda.time.LocalDate";
+  private static final String LOCAL_DATE_TIME = "org.joda.time.LocalDateTime";
+  private static final String LOCAL_TIME = "org.joda.time.LocalTime";
+  private static final String DATE_TIME = "org.joda.time.DateTime";
+  private static final String DURATION = "org.joda.time.Duration";
+  private static final String INSTANT = "org.joda.time.Instant";
+  private static final String ZONE = "org.joda.time.DateTimeZone";
+
+  /** The java.time type each migrated Joda-Time type is replaced with. */
+  private static final ImmutableMap<String, String> TYPES =
+      ImmutableMap.<String, String>builder()
+          .put(LOCAL_DATE, "java.time.LocalDate")
+          .put(LOCAL_DATE_TIME, "java.time.LocalDateTime")
+          .put(LOCAL_TIME, "java.time.LocalTime")
+          .put(DATE_TIME, "java.time.ZonedDateTime")
+          .put(DURATION, "java.time.Duration")
+          .put(INSTANT, "java.time.Instant")
+          .put(ZONE, "java.time.ZoneId")
+          .build();
+
+  /** The classes that the rewrites refer to by their simple name, keyed by that name. */
+  private static final ImmutableMap<String, String> IMPORTS =
+      ImmutableMap.<String, String>builder()
+          .put("LocalDate", "java.time.LocalDate")
+          .put("LocalDateTime", "java.time.LocalDateTime")
+          .put("LocalTime", "java.time.LocalTime")
+          .put("ZonedDateTime", "java.time.ZonedDateTime")
+          .put("Duration", "java.time.Duration")
+          .put("Instant", "java.time.Instant")
+          .put("ZoneId", "java.time.ZoneId")
+          .put("ZoneOffset", "java.time.ZoneOffset")
+          .put("ChronoField", "java.time.temporal.ChronoField")
+          .put("ChronoUnit", "java.time.temporal.ChronoUnit")
+          .build();
+
+  private static final Pattern SIMPLE_NAME = Pattern.compile("\\b[A-Z][A-Za-z]*\\b");
+
+  private static final Pattern PLACEHOLDER = Pattern.compile("\\{(r|\\d)}");
+
+  /**
+   * Holds the rewrites, so that they are only built once the checker first matches a tree, and not
+   * whenever Error Prone loads the checker.
+   */
+  private static final class Rewrites {
+
+    /**
+     * The java.time replacement of each supported constructor, method and field, keyed by {@code
+     * Class#member(parameters)}. In the replacements, {@code {r}} stands for the receiver and
+     * {@code {0}}, {@code {1}}, ... for the arguments. Parameters of a Joda-Time type are keyed by
+     * the type of the argument instead, so that for example {@code
+     * DateTime.isBefore(ReadableInstant)} is only migrated when it is passed another DateTime.
+     */
+    static final ImmutableMap<String, String> REWRITES = buildRewrites();
+  }
+
+  private static ImmutableMap<String, String> buildRewrites() {
+    Map<String, String> rewrites = new LinkedHashMap<>();
+
+    for (String type : new String[] {LOCAL_DATE, LOCAL_DATE_TIME, LOCAL_TIME}) {
+      String simpleName = TYPES.get(type).substring("java.time.".length());
+      put(rewrites, type, "<init>()", simpleName + ".now()");
+      put(rewrites, type, "<init>(" + ZONE + ")", simpleName + ".now({0})");
+      put(rewrites, type, "now()", simpleName + ".now()");
+      put(rewrites, type, "now(" + ZONE + ")", simpleName + ".now({0})");
+      put(rewrites, type, "parse(java.lang.String)", simpleName + ".parse({0})");
+      same(rewrites, type, "compareTo", type);
+      same(rewrites, type, "isBefore", type);
+      same(rewrites, type, "isAfter", type);
+      common(rewrites, type);
+    }
+
+    // LocalDate and LocalDateTime
+    for (String type : new String[] {LOCAL_DATE, LOCAL_DATE_TIME}) {
+      dateFields(rewrites, type);
+      same(rewrites, type, "isEqual", type);
+    }
+    put(rewrites, LOCAL_DATE, "<init>(int,int,int)", "LocalDate.of({0}, {1}, {2})");
+    put(rewrites, LOCAL_DATE, "toDateTimeAtStartOfDay()",
+        "{r}.atStartOfDay(ZoneId.systemDefault())");
+    put(rewrites, LOCAL_DATE, "toDateTimeAtStartOfDay(" + ZONE + ")", "{r}.atStartOfDay({0})");
+    put(rewrites, LOCAL_DATE, "toDateTimeAtCurrentTime()",
+        "{r}.atTime(LocalTime.now()).atZone(ZoneId.systemDefault())");
+    put(rewrites, LOCAL_DATE, "toDateTimeAtCurrentTime(" + ZONE + ")",
+        "ZonedDateTime.now({0}).with({r})");
+    put(rewrites, LOCAL_DATE, "toDateTime(" + LOCAL_TIME + ")",
+        "{r}.atTime({0}).atZone(ZoneId.systemDefault())");
+    put(rewrites, LOCAL_DATE, "toDateTime(" + LOCAL_TIME + "," + ZONE + ")",
+        "{r}.atTime({0}).atZone({1})");
+    put(rewrites, LOCAL_DATE, "toLocalDateTime(" + LOCAL_TIME + ")", "{r}.atTime({0})");
+
+    // LocalDateTime and LocalTime
+    for (String type : new String[] {LOCAL_DATE_TIME, LOCAL_TIME}) {
+      timeFields(rewrites, type);
+    }
+    put(rewrites, LOCAL_DATE_TIME, "<init>(int,int,int,int,int)",
+        "LocalDateTime.of({0}, {1}, {2}, {3}, {4})");
+    put(rewrites, LOCAL_DATE_TIME, "<init>(int,int,int,int,int,int)",
+        "LocalDateTime.of({0}, {1}, {2}, {3}, {4}, {5})");
+    put(rewrites, LOCAL_DATE_TIME, "<init>(int,int,int,int,int,int,int)",
+        "LocalDateTime.of({0}, {1}, {2}, {3}, {4}, {5}).plus({6}, ChronoUnit.MILLIS)");
+    put(rewrites, LOCAL_DATE_TIME, "toDateTime()", "{r}.atZone(ZoneId.systemDefault())");
+    put(rewrites, LOCAL_DATE_TIME, "toDateTime(" + ZONE + ")", "{r}.atZone({0})");
+    same(rewrites, LOCAL_DATE_TIME, "toLocalDate");
+    same(rewrites, LOCAL_DATE_TIME, "toLocalTime");
+
+    put(rewrites, LOCAL_TIME, "<init>(int,int)", "LocalTime.of({0}, {1})");
+    put(rewrites, LOCAL_TIME, "<init>(int,int,int)", "LocalTime.of({0}, {1}, {2})");
+    put(rewrites, LOCAL_TIME, "<init>(int,int,int,int)",
+        "LocalTime.of({0}, {1}, {2}).plus({3}, ChronoUnit.MILLIS)");
+    put(rewrites, LOCAL_TIME, "toDateTimeToday()",
+        "{r}.atDate(LocalDate.now()).atZone(ZoneId.systemDefault())");
+    put(rewrites, LOCAL_TIME, "toDateTimeToday(" + ZONE + ")",
+        "{r}.atDate(LocalDate.now({0})).atZone({0})");
+
+    // DateTime
+    put(rewrites, DATE_TIME, "<init>()", "ZonedDateTime.now()");
+    put(rewrites, DATE_TIME, "<init>(" + ZONE + ")", "ZonedDateTime.now({0})");
+    put(rewrites, DATE_TIME, "<init>(long)",
+        "Instant.ofEpochMilli({0}).atZone(ZoneId.systemDefault())");
+    put(rewrites, DATE_TIME, "<init>(long," + ZONE + ")", "Instant.ofEpochMilli({0}).atZone({1})");
+    put(rewrites, DATE_TIME, "<init>(int,int,int,int,int)",
+        "ZonedDateTime.of({0}, {1}, {2}, {3}, {4}, 0, 0, ZoneId.systemDefault())");
+    put(rewrites, DATE_TIME, "<init>(int,int,int,int,int," + ZONE + ")",
+        "ZonedDateTime.of({0}, {1}, {2}, {3}, {4}, 0, 0, {5})");
+    put(rewrites, DATE_TIME, "<init>(int,int,int,int,int,int)",
+        "ZonedDateTime.of({0}, {1}, {2}, {3}, {4}, {5}, 0, ZoneId.systemDefault())");
+    put(rewrites, DATE_TIME, "<init>(int,int,int,int,int,int," + ZONE + ")",
+        "ZonedDateTime.of({0}, {1}, {2}, {3}, {4}, {5}, 0, {6})");
+    put(rewrites, DATE_TIME, "<init>(int,int,int,int,int,int,int)",
+        "ZonedDateTime.of(LocalDateTime.of({0}, {1}, {2}, {3}, {4}, {5})"
+            + ".plus({6}, ChronoUnit.MILLIS), ZoneId.systemDefault())");
+    put(rewrites, DATE_TIME, "<init>(int,int,int,int,int,int,int," + ZONE + ")",
+        "ZonedDateTime.of(LocalDateTime.of({0}, {1}, {2}, {3}, {4}, {5})"
+            + ".plus({6}, ChronoUnit.MILLIS), {7})");
+    put(rewrites, DATE_TIME, "now()", "ZonedDateTime.now()");
+    put(rewrites, DATE_TIME, "now(" + ZONE + ")", "ZonedDateTime.now({0})");
+    put(rewrites, DATE_TIME, "parse(java.lang.String)", "ZonedDateTime.parse({0})");
+    dateFields(rewrites, DATE_TIME);
+    timeFields(rewrites, DATE_TIME);
+    put(rewrites, DATE_TIME, "getMillis()", "{r}.toInstant().toEpochMilli()");
+    same(rewrites, DATE_TIME, "getZone");
+    put(rewrites, DATE_TIME, "withZone(" + ZONE + ")", "{r}.withZoneSameInstant({0})");
+    same(rewrites, DATE_TIME, "plus", DURATION);
+    same(rewrites, DATE_TIME, "minus", DURATION);
+    put(rewrites, DATE_TIME, "plus(long)", "{r}.plus({0}, ChronoUnit.MILLIS)");
+    put(rewrites, DATE_TIME, "minus(long)", "{r}.minus({0}, ChronoUnit.MILLIS)");
+    same(rewrites, DATE_TIME, "toLocalDate");
+    same(rewrites, DATE_TIME, "toLocalDateTime");
+    same(rewrites, DATE_TIME, "toLocalTime");
+    same(rewrites, DATE_TIME, "toInstant");
+    same(rewrites, DATE_TIME, "compareTo", DATE_TIME);
+    same(rewrites, DATE_TIME, "isBefore", DATE_TIME);
+    same(rewrites, DATE_TIME, "isAfter", DATE_TIME);
+    same(rewrites, DATE_TIME, "isEqual", DATE_TIME);
+    put(rewrites, DATE_TIME, "isBeforeNow()", "{r}.isBefore(ZonedDateTime.now())");
+    put(rewrites, DATE_TIME, "isAfterNow()", "{r}.isAfter(ZonedDateTime.now())");
+    common(rewrites, DATE_TIME);
+
+    // Instant
+    put(rewrites, INSTANT, "<init>()", "Instant.now()");
+    put(rewrites, INSTANT, "<init>(long)", "Instant.ofEpochMilli({0})");
+    put(rewrites, INSTANT, "now()", "Instant.now()");
+    put(rewrites, INSTANT, "ofEpochMilli(long)", "Instant.ofEpochMilli({0})");
+    put(rewrites, INSTANT, "ofEpochSecond(long)", "Instant.ofEpochSecond({0})");
+    put(rewrites, INSTANT, "parse(java.lang.String)", "Instant.parse({0})");
+    put(rewrites, INSTANT, "getMillis()", "{r}.toEpochMilli()");
+    put(rewrites, INSTANT, "plus(long)", "{r}.plusMillis({0})");
+    put(rewrites, INSTANT, "minus(long)", "{r}.minusMillis({0})");
+    same(rewrites, INSTANT, "plus", DURATION);
+    same(rewrites, INSTANT, "minus", DURATION);
+    same(rewrites, INSTANT, "compareTo", INSTANT);
+    same(rewrites, INSTANT, "isBefore", INSTANT);
+    same(rewrites, INSTANT, "isAfter", INSTANT);
+    put(rewrites, INSTANT, "isEqual(" + INSTANT + ")", "{r}.equals({0})");
+    put(rewrites, INSTANT, "isBeforeNow()", "{r}.isBefore(Instant.now())");
+    put(rewrites, INSTANT, "isAfterNow()", "{r}.isAfter(Instant.now())");
+    put(rewrites, INSTANT, "toDateTime()", "{r}.atZone(ZoneId.systemDefault())");
+    put(rewrites, INSTANT, "toDateTime(" + ZONE + ")", "{r}.atZone({0})");
+    common(rewrites, INSTANT);
+
+    // Duration
+    put(rewrites, DURATION, "<init>(long)", "Duration.ofMillis({0})");
+    put(rewrites, DURATION, "millis(long)", "Duration.ofMillis({0})");
+    put(rewrites, DURATION, "standardSeconds(long)", "Duration.ofSeconds({0})");
+    put(rewrites, DURATION, "standardMinutes(long)", "Duration.ofMinutes({0})");
+    put(rewrites, DURATION, "standardHours(long)", "Duration.ofHours({0})");
+    put(rewrites, DURATION, "standardDays(long)", "Duration.ofDays({0})");
+    put(rewrites, DURATION, "getMillis()", "{r}.toMillis()");
+    put(rewrites, DURATION, "getStandardSeconds()", "{r}.getSeconds()");
+    put(rewrites, DURATION, "getStandardMinutes()", "{r}.toMinutes()");
+    put(rewrites, DURATION, "getStandardHours()", "{r}.toHours()");
+    put(rewrites, DURATION, "getStandardDays()", "{r}.toDays()");
+    put(rewrites, DURATION, "plus(long)", "{r}.plusMillis({0})");
+    put(rewrites, DURATION, "minus(long)", "{r}.minusMillis({0})");
+    same(rewrites, DURATION, "plus", DURATION);
+    same(rewrites, DURATION, "minus", DURATION);
+    same(rewrites, DURATION, "multipliedBy", "long");
+    same(rewrites, DURATION, "dividedBy", "long");
+    same(rewrites, DURATION, "negated");
+    same(rewrites, DURATION, "abs");
+    same(rewrites, DURATION, "compareTo", DURATION);
+    common(rewrites, DURATION);
+
+    // DateTimeZone
+    put(rewrites, ZONE, "UTC", "ZoneOffset.UTC");
+    put(rewrites, ZONE, "getDefault()", "ZoneId.systemDefault()");
+    put(rewrites, ZONE, "forID(java.lang.String)", "ZoneId.of({0})");
+    put(rewrites, ZONE, "forOffsetHours(int)", "ZoneOffset.ofHours({0})");
+    put(rewrites, ZONE, "forOffsetHoursMinutes(int,int)",
+        "ZoneOffset.ofHoursMinutes({0}, {1})");
+    put(rewrites, ZONE, "getID()", "{r}.getId()");
+    common(rewrites, ZONE);
+
+    return ImmutableMap.copyOf(rewrites);
+  }
+
+  private static void put(Map<String, String> rewrites, String type, String member,
+      String replacement) {
+    rewrites.put(type + "#" + member, replacement);
+  }
+
+  /** Adds an instance method that keeps its name and arguments. */
+  private static void same(Map<String, String> rewrites, String type, String method,
+      String... parameters) {
+    rename(rewrites, type, method, method, parameters);
+  }
+
+  /** Adds an instance method that keeps its arguments but has a different name. */
+  private static void rename(Map<String, String> rewrites, String type, String method,
+      String newMethod, String... parameters) {
+    List<String> arguments = new ArrayList<>();
+    for (int i = 0; i < parameters.length; i++) {
+      arguments.add("{" + i + "}");
+    }
+    put(rewrites, type, String.format("%s(%s)", method, String.join(",", parameters)),
+        String.format("{r}.%s(%s)", newMethod, String.join(", ", arguments)));
+  }
+
+  private static void common(Map<String, String> rewrites, String type) {
+    same(rewrites, type, "equals", "java.lang.Object");
+    same(rewrites, type, "hashCode");
+    same(rewrites, type, "toString");
+  }
+
+  private static void dateFields(Map<String, String> rewrites, String type) {
+    same(rewrites, type, "getYear");
+    rename(rewrites, type, "getMonthOfYear", "getMonthValue");
+    same(rewrites, type, "getDayOfMonth");
+    same(rewrites, type, "getDayOfYear");
+    put(rewrites, type, "getDayOfWeek()", "{r}.get(ChronoField.DAY_OF_WEEK)");
+    same(rewrites, type, "withYear", "int");
+    rename(rewrites, type, "withMonthOfYear", "withMonth", "int");
+    same(rewrites, type, "withDayOfMonth", "int");
+    same(rewrites, type, "withDayOfYear", "int");
+    for (String unit : new String[] {"Years", "Months", "Weeks", "Days"}) {
+      same(rewrites, type, "plus" + unit, "int");
+      same(rewrites, type, "minus" + unit, "int");
+    }
+  }
+
+  private static void timeFields(Map<String, String> rewrites, String type) {
+    rename(rewrites, type, "getHourOfDay", "getHour");
+    rename(rewrites, type, "getMinuteOfHour", "getMinute");
+    rename(rewrites, type, "getSecondOfMinute", "getSecond");
+    put(rewrites, type, "getMillisOfSecond()", "{r}.get(ChronoField.MILLI_OF_SECOND)");
+    rename(rewrites, type, "withHourOfDay", "withHour", "int");
+    rename(rewrites, type, "withMinuteOfHour", "withMinute", "int");
+    rename(rewrites, type, "withSecondOfMinute", "withSecond", "int");
+    for (String unit : new String[] {"Hours", "Minutes", "Seconds"}) {
+      same(rewrites, type, "plus" + unit, "int");
+      same(rewrites, type, "minus" + unit, "int");
+    }
+    put(rewrites, type, "plusMillis(int)", "{r}.plus({0}, ChronoUnit.MILLIS)");
+    put(rewrites, type, "minusMillis(int)", "{r}.minus({0}, ChronoUnit.MILLIS)");
+  }
+
+  public JodaTimeMigration(ErrorProneFlags flags) {
+    super(flags);
+  }
+
+  public JodaTimeMigration() {
+    this(ErrorProneFlags.empty());
+  }
+
+  @Override
+  public Description matchCompilationUnit(CompilationUnitTree tree, VisitorState state) {
+    return match(tree, state, this::checkCompilationUnit);
+  }
+
+  private Description checkCompilationUnit(CompilationUnitTree tree, VisitorState state) {
+    Migration migration = new Migration(state);
+    Tree firstImport = null;
+
+    for (ImportTree importTree : tree.getImports()) {
+      String name = importTree.getQualifiedIdentifier().toString();
+
+      if (name.startsWith(JODA_PACKAGE)) {
+        if (importTree.isStatic()) {
+          migration.unsupported(importTree, "The static import of " + name);
+        } else {
+          migration.fix.removeImport(name);
+        }
+        firstImport = firstImport == null ? importTree : firstImport;
+
+      } else if (!importTree.isStatic() && !name.startsWith("java.time.")) {
+        migration.checkNameClash(importTree, name.substring(name.lastIndexOf('.') + 1));
+      }
+    }
+
+    for (Tree typeDecl : tree.getTypeDecls()) {
+      migration.scan(typeDecl, null);
+    }
+
+    if (firstImport == null && migration.firstEdit == null && migration.unsupported.isEmpty()) {
+      return Description.NO_MATCH;
+    }
+
+    if (!migration.unsupported.isEmpty() || !migration.clashes.isEmpty()) {
+      migration.unsupported.forEach(state::reportMatch);
+      migration.clashes.forEach(state::reportMatch);
+      return Description.NO_MATCH;
+    }
+
+    return buildDescription(firstImport != null ? firstImport : migration.firstEdit)
+        .setMessage("This file can be migrated from Joda-Time to java.time.")
+        .addFix(migration.fix.build())
+        .build();
+  }
+
+  /** Collects the fix for a file, and the uses of Joda-Time that have no known replacement. */
+  private final class Migration extends TreeScanner<Void, Void> {
+
+    private final VisitorState state;
+
+    private final SuggestedFix.Builder fix = SuggestedFix.builder();
+
+    private final List<Description> unsupported = new ArrayList<>();
+
+    /** Types that clash with the java.time imports, only relevant if the file uses Joda-Time. */
+    private final List<Description> clashes = new ArrayList<>();
+
+    private Tree firstEdit;
+
+    Migration(VisitorState state) {
+      this.state = state;
+    }
+
+    void unsupported(Tree tree, String usage) {
+      unsupported.add(buildDescription(tree)
+          .setMessage(String.format("%s cannot be migrated to java.time automatically, so the"
+              + " rest of this file is not migrated either.", usage))
+          .build());
+    }
+
+    /** Reports types whose simple name would be shadowed by the java.time imports. */
+    void checkNameClash(Tree tree, String simpleName) {
+      if (IMPORTS.containsKey(simpleName)) {
+        clashes.add(buildDescription(tree)
+            .setMessage(String.format("Joda-Time cannot be migrated to java.time automatically,"
+                + " since %s is already used in this file.", simpleName))
+            .build());
+      }
+    }
+
+    private boolean isJoda(Symbol symbol) {
+      return symbol != null && symbol.getQualifiedName().toString().startsWith(JODA_PACKAGE);
+    }
+
+    /** Returns whether a type is a Joda-Time class, or has one as a type argument or component. */
+    private boolean mentionsJoda(Type type) {
+      if (type instanceof ArrayType) {
+        return mentionsJoda(((ArrayType) type).elemtype);
+      }
+      if (type instanceof WildcardType) {
+        return mentionsJoda(((WildcardType) type).type);
+      }
+      if (type == null) {
+        return false;
+      }
+      if (isJoda(type.tsym)) {
+        return true;
+      }
+      for (Type argument : type.getTypeArguments()) {
+        if (mentionsJoda(argument)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /** Returns whether the type of a field, or the signature of a method, uses Joda-Time. */
+    private boolean signatureMentionsJoda(Symbol symbol) {
+      if (!(symbol instanceof MethodSymbol)) {
+        return mentionsJoda(symbol.type);
+      }
+      MethodSymbol method = (MethodSymbol) symbol;
+      if (mentionsJoda(method.getReturnType())) {
+        return true;
+      }
+      for (VarSymbol parameter : method.getParameters()) {
+        if (mentionsJoda(parameter.type)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /** Returns whether a member of this file can be used by other files. */
+    private boolean isExposed(Symbol symbol) {
+      for (Symbol member = symbol; !(member instanceof PackageSymbol); member = member.owner) {
+        if (!(member.owner instanceof ClassSymbol || member.owner instanceof PackageSymbol)
+            || member.isAnonymous()
+            || member.getModifiers().contains(Modifier.PRIVATE)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Reports the use of a member of another file whose signature uses Joda-Time, since it would
+     * keep using Joda-Time after this file is migrated. Returns whether it was reported.
+     */
+    private boolean checkOtherFile(Tree tree, Symbol symbol) {
+      if (symbol == null
+          || !(symbol.owner instanceof ClassSymbol)
+          || isJoda(symbol.owner)
+          || symbol.outermostClass().sourcefile
+              == state.getPath().getCompilationUnit().getSourceFile()
+          || !signatureMentionsJoda(symbol)) {
+        return false;
+      }
+      String name = symbol.isConstructor()
+          ? "new " + symbol
+          : symbol.owner.getSimpleName() + "." + symbol;
+      unsupported(tree, String.format("%s, which has Joda-Time in its signature and is declared in"
+          + " another file,", name));
+      return true;
+    }
+
+    private String typeName(Type type) {
+      return type == null ? "" : state.getTypes().erasure(type).toString();
+    }
+
+    /**
+     * Returns the key of a constructor or method in {@link Rewrites#REWRITES}. Parameters of a
+     * Joda-Time type are keyed by the type of the argument that is passed.
+     */
+    private String key(String type, MethodSymbol symbol, List<? extends ExpressionTree> arguments) {
+      List<VarSymbol> parameters = symbol.getParameters();
+      List<String> types = new ArrayList<>();
+
+      for (int i = 0; i < parameters.size() && i < arguments.size(); i++) {
+        String parameterType = typeName(parameters.get(i).asType());
+        types.add(parameterType.startsWith(JODA_PACKAGE)
+            ? typeName(ASTHelpers.getType(arguments.get(i)))
+            : parameterType);
+      }
+
+      String name = symbol.isConstructor() ? "<init>" : symbol.getSimpleName().toString();
+      return String.format("%s#%s(%s)", type, name, String.join(",", types));
+    }
+
+    private void edit(Tree tree, int start, int end, String replacement) {
+      String original = state.getSourceCode().subSequence(start, end).toString();
+
+      // Keep the original formatting if only whitespace would change
+      if (!original.replaceAll("\\s", "").equals(replacement.replaceAll("\\s", ""))) {
+        fix.replace(start, end, replacement);
+        firstEdit = firstEdit == null ? tree : firstEdit;
+      }
+    }
+
+    private void addImports(String replacement) {
+      Matcher matcher = SIMPLE_NAME.matcher(replacement);
+      while (matcher.find()) {
+        String name = IMPORTS.get(matcher.group());
+        if (name != null) {
+          fix.addImport(name);
+        }
+      }
+    }
+
+    /**
+     * Rewrites a tree according to a replacement from {@link Rewrites#REWRITES}.
+     *
+     * <p>If the receiver and arguments are used once each and in their original order, only the
+     * text between them is replaced, so that they can be migrated as well. Otherwise the whole
+     * tree is replaced, which is only possible if they do not use Joda-Time themselves.
+     */
+    private void rewrite(Tree tree, ExpressionTree receiver,
+        List<? extends ExpressionTree> arguments, String replacement) {
+      List<ExpressionTree> children = new ArrayList<>();
+      if (receiver != null) {
+        children.add(receiver);
+      }
+      children.addAll(arguments);
+
+      List<String> text = new ArrayList<>();
+      List<Integer> order = new ArrayList<>();
+      Matcher matcher = PLACEHOLDER.matcher(replacement);
+      int last = 0;
+
+      while (matcher.find()) {
+        text.add(replacement.substring(last, matcher.start()));
+        order.add(matcher.group(1).equals("r")
+            ? 0
+            : Integer.parseInt(matcher.group(1)) + (receiver != null ? 1 : 0));
+        last = matcher.end();
+      }
+      text.add(replacement.substring(last));
+      addImports(replacement);
+
+      boolean inOrder = order.size() == children.size();
+      for (int i = 0; inOrder && i < order.size(); i++) {
+        inOrder = order.get(i) == i;
+      }
+
+      if (inOrder) {
+        int start = ((JCTree) tree).getStartPosition();
+        for (int i = 0; i < children.size(); i++) {
+          edit(tree, start, ((JCTree) children.get(i)).getStartPosition(), text.get(i));
+          scan(children.get(i), null);
+          start = state.getEndPosition(children.get(i));
+        }
+        edit(tree, start, state.getEndPosition(tree), text.get(children.size()));
+        return;
+      }
+
+      StringBuilder result = new StringBuilder(text.get(0));
+      for (int i = 0; i < order.size(); i++) {
+        ExpressionTree child = children.get(order.get(i));
+
+        Migration childMigration = new Migration(state);
+        childMigration.scan(child, null);
+        boolean repeated = order.indexOf(order.get(i)) != order.lastIndexOf(order.get(i));
+
+        if (childMigration.firstEdit != null || !childMigration.unsupported.isEmpty()
+            || (repeated && !(child instanceof IdentifierTree || child instanceof LiteralTree))) {
+          unsupported(child, String.format("%s, which would have to be moved or repeated in %s,",
+              state.getSourceForNode(child), replacement));
+          return;
+        }
+        result.append(state.getSourceForNode(child)).append(text.get(i + 1));
+      }
+      edit(tree, ((JCTree) tree).getStartPosition(), state.getEndPosition(tree),
+          result.toString());
+    }
+
+    /** Replaces a reference to a Joda-Time class with the java.time class. */
+    private void replaceType(Tree tree, ClassSymbol symbol) {
+      String replacement = TYPES.get(symbol.getQualifiedName().toString());
+
+      if (replacement == null) {
+        unsupported(tree, symbol.getQualifiedName().toString());
+        return;
+      }
+
+      String simpleName = replacement.substring(replacement.lastIndexOf('.') + 1);
+      fix.addImport(replacement);
+      edit(tree, ((JCTree) tree).getStartPosition(), state.getEndPosition(tree), simpleName);
+    }
+
+    @Override
+    public Void visitClass(ClassTree tree, Void unused) {
+      checkNameClash(tree, tree.getSimpleName().toString());
+      return super.visitClass(tree, unused);
+    }
+
+    @Override
+    public Void visitMethod(MethodTree tree, Void unused) {
+      MethodSymbol symbol = ASTHelpers.getSymbol(tree);
+      if (symbol != null && isExposed(symbol) && signatureMentionsJoda(symbol)) {
+        unsupported(tree, String.format("The signature of %s, which can be used by other files,",
+            symbol));
+      }
+      return super.visitMethod(tree, unused);
+    }
+
+    @Override
+    public Void visitVariable(VariableTree tree, Void unused) {
+      VarSymbol symbol = ASTHelpers.getSymbol(tree);
+      if (symbol != null && symbol.owner instanceof ClassSymbol && isExposed(symbol)
+          && mentionsJoda(symbol.type)) {
+        unsupported(tree, String.format("The type of %s, which can be used by other files,",
+            symbol));
+      }
+      return super.visitVariable(tree, unused);
+    }
+
+    @Override
+    public Void visitIdentifier(IdentifierTree tree, Void unused) {
+      Symbol symbol = ASTHelpers.getSymbol(tree);
+
+      if (symbol instanceof ClassSymbol) {
+        if (isJoda(symbol)) {
+          replaceType(tree, (ClassSymbol) symbol);
+        } else if (!symbol.getQualifiedName().toString().startsWith("java.time.")) {
+          checkNameClash(tree, symbol.getSimpleName().toString());
+        }
+      } else if (symbol != null && isJoda(symbol.owner)) {
+        // Statically imported members, which are reported with their import
+        unsupported(tree, symbol.owner + "." + symbol);
+      } else if (symbol instanceof VarSymbol) {
+        checkOtherFile(tree, symbol);
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitMemberSelect(MemberSelectTree tree, Void unused) {
+      Symbol symbol = ASTHelpers.getSymbol(tree);
+
+      if (symbol instanceof ClassSymbol && isJoda(symbol)) {
+        replaceType(tree, (ClassSymbol) symbol);
+        return null;
+      }
+
+      if (symbol instanceof VarSymbol && isJoda(symbol.owner)) {
+        String key = symbol.owner.getQualifiedName() + "#" + symbol.getSimpleName();
+        String replacement = Rewrites.REWRITES.get(key);
+
+        if (replacement == null) {
+          unsupported(tree, key);
+        } else {
+          addImports(replacement);
+          edit(tree, ((JCTree) tree).getStartPosition(), state.getEndPosition(tree),
+              replacement);
+        }
+        return null;
+      }
+
+      if ((symbol != null && symbol.getKind() == ElementKind.PACKAGE)
+          || (symbol instanceof VarSymbol && checkOtherFile(tree, symbol))) {
+        return null;
+      }
+      return super.visitMemberSelect(tree, unused);
+    }
+
+    @Override
+    public Void visitNewClass(NewClassTree tree, Void unused) {
+      MethodSymbol symbol = ASTHelpers.getSymbol(tree);
+
+      if (symbol == null || !isJoda(symbol.owner)) {
+        return checkOtherFile(tree, symbol) ? null : super.visitNewClass(tree, unused);
+      }
+
+      String key = key(symbol.owner.getQualifiedName().toString(), symbol, tree.getArguments());
+      String replacement = Rewrites.REWRITES.get(key);
+
+      if (replacement == null || tree.getClassBody() != null) {
+        unsupported(tree, key);
+        return null;
+      }
+
+      rewrite(tree, null, tree.getArguments(), replacement);
+      return null;
+    }
+
+    @Override
+    public Void visitMethodInvocation(MethodInvocationTree tree, Void unused) {
+      MethodSymbol symbol = ASTHelpers.getSymbol(tree);
+      ExpressionTree receiver = ASTHelpers.getReceiver(tree);
+
+      if (symbol == null) {
+        return super.visitMethodInvocation(tree, unused);
+      }
+
+      // Instance methods are looked up on the type of the receiver, since many of them are
+      // declared in abstract Joda-Time base classes
+      boolean isStatic = symbol.isStatic();
+      String type = isStatic || receiver == null
+          ? symbol.owner.getQualifiedName().toString()
+          : typeName(ASTHelpers.getType(receiver));
+
+      if (!type.startsWith(JODA_PACKAGE)) {
+        return checkOtherFile(tree, symbol) ? null : super.visitMethodInvocation(tree, unused);
+      }
+
+      String key = key(type, symbol, tree.getArguments());
+      String replacement = Rewrites.REWRITES.get(key);
+
+      if (replacement == null || (!isStatic && receiver == null)) {
+        unsupported(tree, key);
+        return null;
+      }
+
+      rewrite(tree, isStatic ? null : receiver, tree.getArguments(), replacement);
+      return null;
+    }
+
+    @Override
+    public Void visitMemberReference(MemberReferenceTree tree, Void unused) {
+      Symbol symbol = ASTHelpers.getSymbol(tree);
+
+      if (symbol != null && isJoda(symbol.owner)) {
+        unsupported(tree, "The method reference " + state.getSourceForNode(tree));
+        return null;
+      }
+      if (checkOtherFile(tree, symbol)) {
+        return null;
+      }
+      return super.visitMemberReference(tree, unused);
+    }
+  }
+}
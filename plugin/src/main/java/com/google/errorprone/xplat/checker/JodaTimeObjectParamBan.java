@@ -17,68 +17,214 @@ package com.google.errorprone.xplat.checker;
 import static com.google.errorprone.BugPattern.SeverityLevel.ERROR;
 
 import com.google.auto.service.AutoService;
+import com.google.common.collect.ImmutableList;
 import com.google.errorprone.BugPattern;
+import com.google.errorprone.ErrorProneFlags;
 import com.google.errorprone.VisitorState;
 import com.google.errorprone.bugpatterns.BugChecker;
 import com.google.errorprone.bugpatterns.BugChecker.MethodInvocationTreeMatcher;
 import com.google.errorprone.bugpatterns.BugChecker.NewClassTreeMatcher;
 import com.google.errorprone.matchers.Description;
 import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.ExpressionStatementTree;
 import com.sun.source.tree.ExpressionTree;
 import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.StatementTree;
 import com.sun.source.tree.Tree;
-import com.sun.tools.javac.code.Symbol;
 import com.sun.tools.javac.code.Symbol.MethodSymbol;
+import com.sun.tools.javac.code.Symbol.PackageSymbol;
 import com.sun.tools.javac.code.Symbol.VarSymbol;
 import com.sun.tools.javac.code.Type;
+import com.sun.tools.javac.code.TypeTag;
+import com.sun.tools.javac.code.Types;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Name;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Bans the usage of Joda-Time methods and constructors that have an Object parameter. If the
- * parameter that is passed in is a boxed long, it is permitted.
+ * parameter that is passed in is a boxed long, it is permitted. Overrides of the methods of
+ * java.lang.Object, such as equals(), are not banned.
  */
 @AutoService(BugChecker.class)
 @BugPattern(
     name = "JodaTimeObjectParamBan",
-    summary = "Bans the usage of Joda-Time constructors that have an Object parameter.",
+    summary = "Bans the usage of Joda-Time methods and constructors that have an Object parameter.",
     explanation =
-        "The usage of Joda-Time constructors that have an Object parameter are"
+        "The usage of Joda-Time methods and constructors that have an Object parameter are"
             + " banned from cross platform development due to the dangers of passing null as the"
             + " parameter. If the parameter is a boxed long, it is allowed to be used.",
     severity = ERROR)
-public class JodaTimeObjectParamBan extends BugChecker implements NewClassTreeMatcher {
+public class JodaTimeObjectParamBan extends XplatChecker implements NewClassTreeMatcher,
+    MethodInvocationTreeMatcher {
+
+  private static final String JODA_PACKAGE = "org.joda.time";
+
+  /**
+   * The indices of the Object parameters of every Joda-Time method and constructor seen during a
+   * compilation, so that each signature is only inspected once. The cache is bound to the javac
+   * {@link Context} of the compilation, like {@code J2objcMethodName}'s names.
+   */
+  private static final class ObjectParams {
+
+    private static final Context.Key<ObjectParams> KEY = new Context.Key<>();
+
+    private final Map<MethodSymbol, ImmutableList<Integer>> indices = new ConcurrentHashMap<>();
+
+    private final Name jodaPackage;
+
+    private final Name jodaSubpackagePrefix;
+
+    private ObjectParams(VisitorState state) {
+      jodaPackage = state.getName(JODA_PACKAGE);
+      jodaSubpackagePrefix = state.getName(JODA_PACKAGE + ".");
+    }
+
+    static ObjectParams instance(VisitorState state) {
+      ObjectParams params = state.context.get(KEY);
+      if (params == null) {
+        params = new ObjectParams(state);
+        state.context.put(KEY, params);
+      }
+      return params;
+    }
+
+    /** Returns the indices of the banned Object parameters of a method, which may be empty. */
+    ImmutableList<Integer> of(MethodSymbol symbol, VisitorState state) {
+      PackageSymbol owner = symbol.packge();
+      if (owner.fullname != jodaPackage && !owner.fullname.startsWith(jodaSubpackagePrefix)) {
+        return ImmutableList.of();
+      }
+      return indices.computeIfAbsent(symbol, unused -> compute(symbol, state));
+    }
+
+    private static ImmutableList<Integer> compute(MethodSymbol symbol, VisitorState state) {
+      Types types = state.getTypes();
+      Type objectType = state.getSymtab().objectType;
+
+      if (ASTHelpers.findSuperMethods(symbol, types).stream()
+          .anyMatch(method -> method.owner == objectType.tsym)) {
+        return ImmutableList.of();
+      }
+
+      ImmutableList.Builder<Integer> builder = ImmutableList.builder();
+      List<VarSymbol> params = symbol.params();
+      for (int i = 0; i < params.size(); i++) {
+        if (types.isSameType(params.get(i).asType(), objectType)) {
+          builder.add(i);
+        }
+      }
+      return builder.build();
+    }
+  }
+
+  public JodaTimeObjectParamBan(ErrorProneFlags flags) {
+    super(flags);
+  }
+
+  public JodaTimeObjectParamBan() {
+    this(ErrorProneFlags.empty());
+  }
 
   @Override
   public Description matchNewClass(NewClassTree tree, VisitorState state) {
-    Type constructorType = ASTHelpers.getType(tree);
+    return match(tree, state, this::checkNewClass);
+  }
+
+  private Description checkNewClass(NewClassTree tree, VisitorState state) {
+    MethodSymbol symbol = constructor(tree);
+
+    if (symbol == null || !hasBannedArgument(symbol, tree.getArguments(), state)) {
+      return Description.NO_MATCH;
+    }
 
-    if (constructorType != null && constructorType.toString().startsWith("org.joda.time")) {
+    return buildDescription(tree)
+        .setMessage(
+            String.format(
+                "%s is a banned constructor, as Joda-Time constructors that have"
+                    + " java.lang.Object as a parameter are banned unless the parameter"
+                    + " is a boxed long.", symbol.toString()))
+        .build();
+  }
 
-      MethodSymbol symbol = ASTHelpers.getSymbol(tree);
+  @Override
+  public Description matchMethodInvocation(MethodInvocationTree tree, VisitorState state) {
+    return match(tree, state, this::checkMethodInvocation);
+  }
 
-      if (symbol != null) {
-        List<VarSymbol> argTypes = symbol.params();
+  private Description checkMethodInvocation(MethodInvocationTree tree, VisitorState state) {
+    MethodSymbol symbol = ASTHelpers.getSymbol(tree);
 
-        for (int i = 0; i < argTypes.size(); i++) {
-          if (argTypes.get(i).asType().toString().equals("java.lang.Object")) {
-            Type argType = ASTHelpers.getType(tree.getArguments().get(i));
+    if (symbol == null || !hasBannedArgument(symbol, tree.getArguments(), state)) {
+      return Description.NO_MATCH;
+    }
 
-            if (!state.getTypes().unboxedType(argType).toString().equals("long")) {
-              return buildDescription(tree)
-                  .setMessage(
-                      String.format(
-                          "%s is a banned constructor, as Joda-Time constructors that have"
-                              + " java.lang.Object as a parameter are banned unless the parameter"
-                              + " is a boxed long.", symbol.toString()))
-                  .build();
+    // The super() call of the constructor that javac generates for an anonymous class is found by
+    // matchNewClass, with the arguments of the new class expression
+    if (symbol.isConstructor()) {
+      ClassTree enclosingClass = state.findEnclosing(ClassTree.class);
+      if (enclosingClass != null && ASTHelpers.getSymbol(enclosingClass).isAnonymous()) {
+        return Description.NO_MATCH;
+      }
+    }
+
+    return buildDescription(tree)
+        .setMessage(
+            String.format(
+                "%s.%s is a banned method, as Joda-Time methods that have"
+                    + " java.lang.Object as a parameter are banned unless the parameter"
+                    + " is a boxed long.", symbol.owner.getSimpleName(), symbol.toString()))
+        .build();
+  }
+
+  /**
+   * Returns the constructor that a new class expression calls. For an anonymous class, that is the
+   * constructor of its superclass that the constructor javac generates for it calls, as in {@code
+   * new DateTime(object) {}}.
+   */
+  private static MethodSymbol constructor(NewClassTree tree) {
+    MethodSymbol symbol = ASTHelpers.getSymbol(tree);
+    if (symbol == null || tree.getClassBody() == null) {
+      return symbol;
+    }
+    for (Tree member : tree.getClassBody().getMembers()) {
+      if (!(member instanceof MethodTree)
+          || !ASTHelpers.getSymbol((MethodTree) member).isConstructor()) {
+        continue;
+      }
+      for (StatementTree statement : ((MethodTree) member).getBody().getStatements()) {
+        if (statement instanceof ExpressionStatementTree) {
+          ExpressionTree expression = ((ExpressionStatementTree) statement).getExpression();
+          if (expression instanceof MethodInvocationTree) {
+            MethodSymbol called = ASTHelpers.getSymbol((MethodInvocationTree) expression);
+            if (called != null && called.isConstructor()) {
+              return called;
             }
           }
         }
-
       }
     }
+    return symbol;
+  }
+
+  private static boolean hasBannedArgument(MethodSymbol symbol,
+      List<? extends ExpressionTree> arguments, VisitorState state) {
+    for (int index : ObjectParams.instance(state).of(symbol, state)) {
+      if (index >= arguments.size()) {
+        continue;
+      }
+      Type argType = ASTHelpers.getType(arguments.get(index));
 
-    return Description.NO_MATCH;
+      if (argType == null
+          || state.getTypes().unboxedType(argType).getTag() != TypeTag.LONG) {
+        return true;
+      }
+    }
+    return false;
   }
 }
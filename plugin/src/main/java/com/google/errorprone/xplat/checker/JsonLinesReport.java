@@ -0,0 +1,126 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import com.sun.tools.javac.util.Context;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A report file that is written while a compilation runs, one JSON object per line. Lines are
+ * flushed as soon as they are added, so a report is useful even if the compilation fails halfway.
+ *
+ * <p>There is one report per compilation and path. Once the compilation has finished, the actions
+ * registered with {@link #onFinish} run, for example to append a summary line, and the file is
+ * closed.
+ *
+ * <p>Compilations append to the file instead of replacing it, since an incremental build only
+ * recompiles the changed sources, and would otherwise leave a report of just those. The lines of
+ * each compilation follow a {@code {"kind": "compilation", "started": "<ISO-8601 instant>"}}
+ * line, so that readers can tell the compilations apart and keep the latest lines about every
+ * source. Delete the file before a full build to start a new report.
+ */
+final class JsonLinesReport {
+
+  private static final Context.Key<Map<Path, JsonLinesReport>> KEY = new Context.Key<>();
+
+  private final Path path;
+
+  private final List<Runnable> finishActions = new ArrayList<>();
+
+  private BufferedWriter writer;
+
+  private JsonLinesReport(Path path) {
+    this.path = path;
+  }
+
+  /**
+   * Returns the report at {@code path} of the compilation that owns {@code context}, creating it
+   * on first use.
+   */
+  static JsonLinesReport instance(Context context, Path path) {
+    Map<Path, JsonLinesReport> reports = context.get(KEY);
+    if (reports == null) {
+      reports = new HashMap<>();
+      context.put(KEY, reports);
+    }
+
+    JsonLinesReport report = reports.get(path);
+    if (report == null) {
+      report = new JsonLinesReport(path);
+      reports.put(path, report);
+      CompilationHooks.onCompilationFinished(context, report::finish);
+    }
+    return report;
+  }
+
+  /** Registers an action that runs right before the report is closed. */
+  synchronized void onFinish(Runnable action) {
+    finishActions.add(action);
+  }
+
+  /** Appends a line to the report. */
+  synchronized void write(JSONObject line) {
+    try {
+      if (writer == null) {
+        writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        writeLine(new JSONObject()
+            .put("kind", "compilation")
+            .put("started", Instant.now().toString()));
+      }
+      writeLine(line);
+    } catch (JSONException e) {
+      // Only thrown for null keys, which are never used here.
+      throw new IllegalStateException(e);
+    } catch (IOException e) {
+      System.err.println(String.format("Report '%s' could not be written.", path));
+      e.printStackTrace();
+    }
+  }
+
+  private void writeLine(JSONObject line) throws IOException {
+    writer.write(line.toString());
+    writer.newLine();
+    writer.flush();
+  }
+
+  private synchronized void finish() {
+    for (Runnable action : finishActions) {
+      action.run();
+    }
+
+    if (writer != null) {
+      try {
+        writer.close();
+      } catch (IOException e) {
+        System.err.println(String.format("Report '%s' could not be closed.", path));
+        e.printStackTrace();
+      }
+      writer = null;
+    }
+  }
+}
@@ -18,6 +18,7 @@ import static com.google.errorprone.BugPattern.SeverityLevel.ERROR;
 
 import com.google.auto.service.AutoService;
 import com.google.errorprone.BugPattern;
+import com.google.errorprone.ErrorProneFlags;
 import com.google.errorprone.VisitorState;
 import com.google.errorprone.annotations.concurrent.LazyInit;
 import com.google.errorprone.bugpatterns.BugChecker;
@@ -56,7 +57,7 @@ import javax.lang.model.element.Name;
     explanation =
         "TBD",
     severity = ERROR)
-public class LazyInitBan extends BugChecker implements MethodTreeMatcher {
+public class LazyInitBan extends XplatChecker implements MethodTreeMatcher {
 
   private static final Matcher<MethodTree> METHODS_EXCEPT_CONSTURCTOR_MATCHER =
       Matchers.allOf(
@@ -463,9 +464,20 @@ public class LazyInitBan extends BugChecker implements MethodTreeMatcher {
     return Description.NO_MATCH;
   }
 
+  public LazyInitBan(ErrorProneFlags flags) {
+    super(flags);
+  }
+
+  public LazyInitBan() {
+    this(ErrorProneFlags.empty());
+  }
+
   @Override
   public Description matchMethod(MethodTree tree, VisitorState state) {
+    return match(tree, state, this::checkMethod);
+  }
 
+  private Description checkMethod(MethodTree tree, VisitorState state) {
     if (METHODS_EXCEPT_CONSTURCTOR_MATCHER.matches(tree, state)) {
 
       Set<Name> foundIdents = new HashSet<>();
@@ -14,28 +14,39 @@
 
 package com.google.errorprone.xplat.checker;
 
-import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.google.errorprone.BugPattern.SeverityLevel.ERROR;
 
 import com.google.auto.service.AutoService;
 import com.google.common.collect.ImmutableSet;
 import com.google.errorprone.BugPattern;
+import com.google.errorprone.ErrorProneFlags;
 import com.google.errorprone.VisitorState;
 import com.google.errorprone.bugpatterns.BugChecker;
+import com.google.errorprone.bugpatterns.BugChecker.MemberReferenceTreeMatcher;
+import com.google.errorprone.bugpatterns.BugChecker.MethodInvocationTreeMatcher;
 import com.google.errorprone.bugpatterns.BugChecker.MethodTreeMatcher;
+import com.google.errorprone.bugpatterns.BugChecker.NewClassTreeMatcher;
 import com.google.errorprone.bugpatterns.BugChecker.VariableTreeMatcher;
 import com.google.errorprone.matchers.Description;
-import com.google.errorprone.matchers.Matcher;
-import com.google.errorprone.matchers.Matchers;
 import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MethodInvocationTree;
 import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.NewClassTree;
 import com.sun.source.tree.Tree;
 import com.sun.source.tree.VariableTree;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.code.Symbol.MethodSymbol;
 import com.sun.tools.javac.code.Type;
+import com.sun.tools.javac.util.Context;
+import java.util.Objects;
 
 /**
- * Checks for usage of legacy time classes in Variables, Methods and Parameters. Can be overridden
- * with the @AllowLegacyTime annotation.
+ * Checks for usage of legacy time classes in Variables, Methods and Parameters, including their
+ * type arguments, as well as constructor calls, method calls and method references on them. Can be
+ * overridden with the @AllowLegacyTime annotation.
  */
 @AutoService(BugChecker.class)
 @BugPattern(
@@ -47,53 +58,131 @@ import com.sun.tools.javac.code.Type;
             + " @AllowLegacyTime annotation will override the error.",
     severity = ERROR,
     suppressionAnnotations = AllowLegacyTime.class)
-public class LegacyTimeBan extends BugChecker implements MethodTreeMatcher, VariableTreeMatcher {
+public class LegacyTimeBan extends XplatChecker implements MethodTreeMatcher, VariableTreeMatcher,
+    NewClassTreeMatcher, MethodInvocationTreeMatcher, MemberReferenceTreeMatcher {
 
   private static final ImmutableSet<String> BANNED_CLASSES =
       ImmutableSet.of("java.util.Calendar", "java.util.Calendar.Builder", "java.util.Date",
           "java.util.GregorianCalendar", "java.util.TimeZone", "java.util.SimpleTimeZone");
 
-  private static final Matcher<MethodTree> METHOD_MATCHER =
-      Matchers.anyOf(
-          BANNED_CLASSES.stream()
-              .map(
-                  className ->
-                      Matchers.methodReturns(Matchers.isSameType(className)))
-              .collect(toImmutableList()));
-
-  private static final Matcher<VariableTree> VAR_MATCHER =
-      Matchers.anyOf(
-          BANNED_CLASSES.stream()
-              .map(Matchers::isSameType)
-              .collect(toImmutableList()));
-
-  private Description message(Tree tree, String className) {
+  /**
+   * The symbols of {@link #BANNED_CLASSES}, resolved once per compilation, so that every tree is
+   * checked with identity lookups instead of type comparisons.
+   */
+  private static final class BannedSymbols {
+
+    private static final Context.Key<BannedSymbols> KEY = new Context.Key<>();
+
+    private final ImmutableSet<ClassSymbol> classes;
+
+    private final TypeInspector<ClassSymbol> types;
+
+    private BannedSymbols(VisitorState state) {
+      classes = BANNED_CLASSES.stream()
+          .map(state::getSymbolFromString)
+          .filter(Objects::nonNull)
+          .map(ClassSymbol.class::cast)
+          .collect(toImmutableSet());
+      types = new TypeInspector<>(
+          symbol -> classes.contains(symbol) ? (ClassSymbol) symbol : null);
+    }
+
+    static BannedSymbols instance(VisitorState state) {
+      BannedSymbols symbols = state.context.get(KEY);
+      if (symbols == null) {
+        symbols = new BannedSymbols(state);
+        state.context.put(KEY, symbols);
+      }
+      return symbols;
+    }
+
+    /**
+     * Returns the banned class that a type refers to, either directly or through its type
+     * arguments, array components and bounds, or null if there is none.
+     */
+    ClassSymbol find(Type type) {
+      return types.find(type);
+    }
+
+    /** Returns the banned class that declares a method or constructor, or null if there is none. */
+    ClassSymbol owner(Symbol symbol) {
+      if (symbol instanceof MethodSymbol && classes.contains(symbol.owner)) {
+        return (ClassSymbol) symbol.owner;
+      }
+      return null;
+    }
+  }
+
+  private Description message(Tree tree, ClassSymbol bannedClass) {
+    if (bannedClass == null) {
+      return Description.NO_MATCH;
+    }
     return buildDescription(tree)
         .setMessage(
             String.format("%s is banned for cross platform development due to incompatibilities."
                     + " If you must use it, please use the @AllowLegacyTime annotation.",
-                className))
+                bannedClass.getQualifiedName()))
         .build();
   }
-  
+
+  public LegacyTimeBan(ErrorProneFlags flags) {
+    super(flags);
+  }
+
+  public LegacyTimeBan() {
+    this(ErrorProneFlags.empty());
+  }
 
   @Override
   public Description matchMethod(MethodTree tree, VisitorState state) {
-    if (METHOD_MATCHER.matches(tree, state)) {
-      return message(tree, ASTHelpers.getSymbol(tree).getReturnType().toString());
+    return match(tree, state, this::checkMethod);
+  }
+
+  private Description checkMethod(MethodTree tree, VisitorState state) {
+    MethodSymbol symbol = ASTHelpers.getSymbol(tree);
+
+    if (symbol == null) {
+      return Description.NO_MATCH;
     }
-    return Description.NO_MATCH;
+    return message(tree, BannedSymbols.instance(state).find(symbol.getReturnType()));
   }
 
   @Override
   public Description matchVariable(VariableTree tree, VisitorState state) {
-    Type varType = ASTHelpers.getType(tree);
+    return match(tree, state, this::checkVariable);
+  }
 
-    if (VAR_MATCHER.matches(tree, state)) {
-      if (varType != null) {
-        return message(tree, varType.toString());
-      }
-    }
-    return Description.NO_MATCH;
+  private Description checkVariable(VariableTree tree, VisitorState state) {
+    return message(tree, BannedSymbols.instance(state).find(ASTHelpers.getType(tree)));
+  }
+
+  @Override
+  public Description matchNewClass(NewClassTree tree, VisitorState state) {
+    return match(tree, state, this::checkNewClass);
+  }
+
+  private Description checkNewClass(NewClassTree tree, VisitorState state) {
+    BannedSymbols banned = BannedSymbols.instance(state);
+    ClassSymbol bannedClass = banned.owner(ASTHelpers.getSymbol(tree));
+
+    return message(tree, bannedClass != null ? bannedClass : banned.find(ASTHelpers.getType(tree)));
+  }
+
+  @Override
+  public Description matchMethodInvocation(MethodInvocationTree tree, VisitorState state) {
+    return match(tree, state, this::checkMethodInvocation);
+  }
+
+  private Description checkMethodInvocation(MethodInvocationTree tree, VisitorState state) {
+    return message(tree, BannedSymbols.instance(state).owner(ASTHelpers.getSymbol(tree)));
+  }
+
+  @Override
+  public Description matchMemberReference(MemberReferenceTree tree, VisitorState state) {
+    return match(tree, state, this::checkMemberReference);
+  }
+
+  private Description checkMemberReference(MemberReferenceTree tree, VisitorState state) {
+    return message(tree, BannedSymbols.instance(state).owner(ASTHelpers.getSymbol(tree)));
   }
 }
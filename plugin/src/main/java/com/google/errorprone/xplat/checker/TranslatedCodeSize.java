@@ -0,0 +1,369 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import static com.google.errorprone.BugPattern.SeverityLevel.WARNING;
+
+import com.google.auto.service.AutoService;
+import com.google.common.base.Splitter;
+import com.google.errorprone.BugPattern;
+import com.google.errorprone.ErrorProneFlags;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.bugpatterns.BugChecker;
+import com.google.errorprone.bugpatterns.BugChecker.ClassTreeMatcher;
+import com.google.errorprone.matchers.Description;
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.CaseTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.LambdaExpressionTree;
+import com.sun.source.tree.LiteralTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.NewArrayTree;
+import com.sun.source.tree.StatementTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.code.Symbol.VarSymbol;
+import com.sun.tools.javac.tree.JCTree;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.NestingKind;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Estimates the size of the J2CL (JavaScript) output of each top level and member class from a few
+ * tree metrics, and warns against classes whose estimate exceeds a budget.
+ * Nested member classes are estimated on their own, while anonymous and local classes and lambdas
+ * are counted as part of the class that contains them.
+ *
+ * <p>Each counted construct has a weight in bytes, see {@link Construct}. The budget defaults to
+ * 200000 bytes and can be changed with {@code -XepOpt:TranslatedCodeSize:MaxBytes=X}. Weights can
+ * be tuned for a code base with {@code -XepOpt:TranslatedCodeSize:JsWeights=X}, where X is a comma
+ * separated list such as {@code METHOD=300,STATEMENT=70}.
+ *
+ * <p>J2ObjC output is not estimated, as there are no weights measured against it yet.
+ *
+ * <p>The argument {@code -XepOpt:TranslatedCodeSize:Report=X}, where X is a file path, writes the
+ * metrics and estimates of every class to X, one JSON object per line:
+ *
+ * <pre>
+ * {"class":"com.google.Foo","jsBytes":2410,"metrics":{"METHOD":4,...}}
+ * </pre>
+ */
+@AutoService(BugChecker.class)
+@BugPattern(
+    name = "TranslatedCodeSize",
+    summary = "Warns against classes with a large estimated J2CL output.",
+    explanation =
+        "Huge methods, large switch statements, many anonymous classes and big array literals"
+            + " translate to much more JavaScript than their Java source suggests, which increases"
+            + " the download size of the web app. This checker estimates the J2CL output of each"
+            + " class and calls out classes above a configurable budget.",
+    severity = WARNING)
+public class TranslatedCodeSize extends XplatChecker implements ClassTreeMatcher {
+
+  /**
+   * Constructs that are counted, with their default weight in bytes of JavaScript output, which
+   * can be tuned through a flag.
+   *
+   * <p>The JavaScript weights were calibrated against J2CL v20230718-1 (the Vertispan build on
+   * Maven Central), measuring the readable {@code .java.js} and {@code .impl.java.js} files before
+   * Closure Compiler optimizes them. The weights of switch cases, anonymous classes, lambdas, array
+   * elements and string characters are the growth of the output per construct in generated
+   * classes. The weights of classes, methods and statements were then fitted to 39 classes of
+   * Guava's {@code com.google.common.base} (Ascii, CaseFormat, Converter, Functions, Joiner,
+   * MoreObjects, Optional, Preconditions, Strings, Suppliers, Utf8 and Verify, with their member
+   * classes), whose estimates then add up to 88% of their 352 KB of output, with 26 of them within
+   * 25% of their own output.
+   */
+  enum Construct {
+    /** Each class, including its header, metadata, initialization code and default constructor. */
+    CLASS(2300),
+    /** Each method and constructor. */
+    METHOD(300),
+    /** Each field. */
+    FIELD(100),
+    /** Each statement, except for the super() calls that javac adds to constructors. */
+    STATEMENT(70),
+    /** Each case of a switch statement. */
+    SWITCH_CASE(15),
+    /** Each anonymous or local class, which becomes a class of its own. */
+    INNER_CLASS(1400),
+    /** Each lambda, which becomes a class or a closure. */
+    LAMBDA(30),
+    /** Each element of an array literal. */
+    ARRAY_ELEMENT(6),
+    /** Each character of a string literal. */
+    STRING_CHAR(1);
+
+    private final int jsBytes;
+
+    Construct(int jsBytes) {
+      this.jsBytes = jsBytes;
+    }
+  }
+
+  private int maxBytes = 200_000;
+
+  private final Map<Construct, Integer> jsWeights = new EnumMap<>(Construct.class);
+
+  private final Optional<Path> reportPath;
+
+  public TranslatedCodeSize(ErrorProneFlags flags) {
+    super(flags);
+    Optional<Integer> arg = flags.getInteger("TranslatedCodeSize:MaxBytes");
+
+    if (arg.isPresent()) {
+      this.maxBytes = arg.get();
+    }
+
+    for (Construct construct : Construct.values()) {
+      jsWeights.put(construct, construct.jsBytes);
+    }
+    parseWeights(flags.getList("TranslatedCodeSize:JsWeights"), jsWeights);
+
+    this.reportPath = flags.get("TranslatedCodeSize:Report").map(Paths::get);
+  }
+
+  public TranslatedCodeSize() {
+    this(ErrorProneFlags.empty());
+  }
+
+  /**
+   * Overrides weights with the {@code CONSTRUCT=bytes} entries of a flag.
+   *
+   * @param entries The entries of the flag, if it is set.
+   * @param weights The weights to be overridden.
+   */
+  private static void parseWeights(Optional<List<String>> entries,
+      Map<Construct, Integer> weights) {
+    if (!entries.isPresent()) {
+      return;
+    }
+
+    for (String entry : entries.get()) {
+      List<String> parts = Splitter.on('=').trimResults().splitToList(entry);
+
+      try {
+        weights.put(Construct.valueOf(parts.get(0)), Integer.parseInt(parts.get(1)));
+      } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+        System.err.println(String.format(
+            "Invalid TranslatedCodeSize weight '%s', expected CONSTRUCT=bytes. It is ignored.",
+            entry));
+      }
+    }
+  }
+
+  /** Counts the constructs of a single class, see {@link Construct}. */
+  private static final class Metrics extends TreeScanner<Void, Void> {
+
+    private final ClassTree root;
+
+    private final Map<Construct, Integer> counts = new EnumMap<>(Construct.class);
+
+    /** The super() call that javac added to the constructor being scanned, if any. */
+    private Tree implicitSuperCall;
+
+    private Metrics(ClassTree root) {
+      this.root = root;
+      for (Construct construct : Construct.values()) {
+        counts.put(construct, 0);
+      }
+    }
+
+    static Metrics of(ClassTree tree) {
+      Metrics metrics = new Metrics(tree);
+      metrics.count(Construct.CLASS, 1);
+      metrics.scan(tree.getMembers(), null);
+      return metrics;
+    }
+
+    private void count(Construct construct, int amount) {
+      counts.merge(construct, amount, Integer::sum);
+    }
+
+    long estimate(Map<Construct, Integer> weights) {
+      long total = 0;
+      for (Map.Entry<Construct, Integer> entry : counts.entrySet()) {
+        total += (long) entry.getValue() * weights.get(entry.getKey());
+      }
+      return total;
+    }
+
+    @Override
+    public Void scan(Tree tree, Void unused) {
+      // Classes and blocks only group statements, and of the variables only locals are statements
+      if (tree instanceof StatementTree
+          && tree.getKind() != Tree.Kind.CLASS
+          && tree.getKind() != Tree.Kind.BLOCK
+          && tree != implicitSuperCall
+          && (tree.getKind() != Tree.Kind.VARIABLE || isLocalVariable((VariableTree) tree))) {
+        count(Construct.STATEMENT, 1);
+      }
+      return super.scan(tree, unused);
+    }
+
+    private static boolean isField(VariableTree tree) {
+      VarSymbol symbol = ASTHelpers.getSymbol(tree);
+      return symbol != null && symbol.getKind().isField();
+    }
+
+    private static boolean isLocalVariable(VariableTree tree) {
+      VarSymbol symbol = ASTHelpers.getSymbol(tree);
+      return symbol != null && symbol.getKind() == ElementKind.LOCAL_VARIABLE;
+    }
+
+    @Override
+    public Void visitClass(ClassTree tree, Void unused) {
+      ClassSymbol symbol = ASTHelpers.getSymbol(tree);
+
+      // Nested member classes are estimated on their own
+      if (tree != root && symbol != null && symbol.getNestingKind() == NestingKind.MEMBER) {
+        return null;
+      }
+      count(Construct.INNER_CLASS, 1);
+      return super.visitClass(tree, unused);
+    }
+
+    @Override
+    public Void visitMethod(MethodTree tree, Void unused) {
+      // The default constructor is part of the class
+      if (ASTHelpers.isGeneratedConstructor(tree)) {
+        return null;
+      }
+      count(Construct.METHOD, 1);
+
+      // So is the super() call that javac adds to other constructors, at the position of the body
+      BlockTree body = tree.getBody();
+      if (body != null && !body.getStatements().isEmpty()
+          && ((JCTree) body.getStatements().get(0)).getStartPosition()
+              == ((JCTree) body).getStartPosition()) {
+        implicitSuperCall = body.getStatements().get(0);
+      }
+      return super.visitMethod(tree, unused);
+    }
+
+    @Override
+    public Void visitVariable(VariableTree tree, Void unused) {
+      if (isField(tree)) {
+        count(Construct.FIELD, 1);
+      }
+      return super.visitVariable(tree, unused);
+    }
+
+    @Override
+    public Void visitCase(CaseTree tree, Void unused) {
+      count(Construct.SWITCH_CASE, 1);
+      return super.visitCase(tree, unused);
+    }
+
+    @Override
+    public Void visitLambdaExpression(LambdaExpressionTree tree, Void unused) {
+      count(Construct.LAMBDA, 1);
+      return super.visitLambdaExpression(tree, unused);
+    }
+
+    @Override
+    public Void visitNewArray(NewArrayTree tree, Void unused) {
+      if (tree.getInitializers() != null) {
+        count(Construct.ARRAY_ELEMENT, tree.getInitializers().size());
+      }
+      return super.visitNewArray(tree, unused);
+    }
+
+    @Override
+    public Void visitLiteral(LiteralTree tree, Void unused) {
+      if (tree.getValue() instanceof String) {
+        count(Construct.STRING_CHAR, ((String) tree.getValue()).length());
+      }
+      return super.visitLiteral(tree, unused);
+    }
+  }
+
+  @Override
+  public Description matchClass(ClassTree tree, VisitorState state) {
+    return match(tree, state, this::checkClass);
+  }
+
+  private Description checkClass(ClassTree tree, VisitorState state) {
+    ClassSymbol symbol = ASTHelpers.getSymbol(tree);
+
+    // Anonymous and local classes are counted as part of their enclosing class
+    if (symbol == null || (symbol.getNestingKind() != NestingKind.TOP_LEVEL
+        && symbol.getNestingKind() != NestingKind.MEMBER)) {
+      return Description.NO_MATCH;
+    }
+
+    Metrics metrics = Metrics.of(tree);
+    long jsBytes = metrics.estimate(jsWeights);
+
+    if (reportPath.isPresent()) {
+      report(symbol, metrics, jsBytes, state);
+    }
+
+    if (jsBytes <= maxBytes) {
+      return Description.NO_MATCH;
+    }
+
+    return buildDescription(tree)
+        .setMessage(String.format("This class is estimated to translate to %d bytes of"
+                + " JavaScript, which is above the budget of %d bytes. Most of it comes from: %s."
+                + " Consider splitting it up or moving large data out of the code.",
+            jsBytes, maxBytes, largestConstructs(metrics)))
+        .build();
+  }
+
+  /** Returns the three constructs that contribute most to the estimate. */
+  private String largestConstructs(Metrics metrics) {
+    List<Construct> constructs = new ArrayList<>(metrics.counts.keySet());
+    constructs.sort(Comparator.comparingLong(
+        (Construct construct) -> (long) metrics.counts.get(construct) * jsWeights.get(construct))
+        .reversed());
+
+    List<String> largest = new ArrayList<>();
+    for (Construct construct : constructs.subList(0, 3)) {
+      largest.add(String.format("%d x %s", metrics.counts.get(construct), construct));
+    }
+    return String.join(", ", largest);
+  }
+
+  private void report(ClassSymbol symbol, Metrics metrics, long jsBytes, VisitorState state) {
+    try {
+      JSONObject counts = new JSONObject();
+      for (Map.Entry<Construct, Integer> entry : metrics.counts.entrySet()) {
+        counts.put(entry.getKey().name(), entry.getValue());
+      }
+
+      JsonLinesReport.instance(state.context, reportPath.get())
+          .write(new JSONObject()
+              .put("class", symbol.flatName().toString())
+              .put("jsBytes", jsBytes)
+              .put("metrics", counts));
+    } catch (JSONException e) {
+      // Only thrown for non-finite numbers and null keys, which are never used here.
+      throw new IllegalStateException(e);
+    }
+  }
+}
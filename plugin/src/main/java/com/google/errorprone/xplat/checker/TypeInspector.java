@@ -0,0 +1,214 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import com.google.errorprone.VisitorState;
+import com.sun.tools.javac.code.Symbol.TypeSymbol;
+import com.sun.tools.javac.code.Type;
+import com.sun.tools.javac.code.Type.ArrayType;
+import com.sun.tools.javac.code.Type.IntersectionClassType;
+import com.sun.tools.javac.code.Type.TypeVar;
+import com.sun.tools.javac.code.Type.WildcardType;
+import com.sun.tools.javac.code.TypeTag;
+import com.sun.tools.javac.util.Context;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Looks for banned classes anywhere inside of a type: the type itself, its type arguments, array
+ * components, wildcard and type variable bounds, and enclosing types. This way {@code
+ * Map<String, List<Foo>>} and {@code Foo[]} are found as well as {@code Foo}.
+ *
+ * <p>The verdicts are memoized, so that large generic signatures that come up again and again are
+ * only walked once. Javac creates a new Type for every declaration that spells out a type, and
+ * Types are only equal to themselves, so the verdicts are keyed by a canonical form instead: the
+ * symbol of the type and the canonical forms of its type arguments, components, bounds and
+ * enclosing type, see {@link #canonicalKey}. Like the other per-compilation state of the checkers,
+ * the inspectors are bound to the javac {@link Context} of the compilation.
+ *
+ * @param <T> the verdict for a banned class, such as the reason why it is banned.
+ */
+final class TypeInspector<T> {
+
+  private static final Context.Key<Inspectors> KEY = new Context.Key<>();
+
+  private final Function<TypeSymbol, T> lookup;
+
+  private final Map<Object, Optional<T>> verdicts = new ConcurrentHashMap<>();
+
+  /**
+   * @param lookup returns the verdict for a class or type variable symbol, without looking at any
+   * other types, or null if it is not banned.
+   */
+  TypeInspector(Function<TypeSymbol, T> lookup) {
+    this.lookup = lookup;
+  }
+
+  /**
+   * Returns the inspector that is registered for the given owner in the current compilation,
+   * creating it with the given lookup the first time. The owner should be an object that
+   * identifies the lookup, such as the bans that it is based on.
+   */
+  @SuppressWarnings("unchecked")
+  static <T> TypeInspector<T> forCompilation(VisitorState state, Object owner,
+      Function<TypeSymbol, T> lookup) {
+    Inspectors inspectors = state.context.get(KEY);
+    if (inspectors == null) {
+      inspectors = new Inspectors();
+      state.context.put(KEY, inspectors);
+    }
+    return (TypeInspector<T>) inspectors.byOwner
+        .computeIfAbsent(owner, unused -> new TypeInspector<>(lookup));
+  }
+
+  /** Returns the verdict for the first banned class found inside a type, or null if none is. */
+  T find(Type type) {
+    return type == null ? null : find(type, new Walk()).orElse(null);
+  }
+
+  private Optional<T> find(Type type, Walk walk) {
+    Object key = canonicalKey(type);
+    Optional<T> verdict = verdicts.get(key);
+    if (verdict != null) {
+      return verdict;
+    }
+
+    // Type variables can refer to themselves in their bounds, as in T extends Comparable<T>
+    Integer visitingDepth = walk.visiting.get(key);
+    if (visitingDepth != null) {
+      walk.cycleDepth = Math.min(walk.cycleDepth, visitingDepth);
+      return Optional.empty();
+    }
+
+    int depth = walk.visiting.size();
+    walk.visiting.put(key, depth);
+    int outerCycleDepth = walk.cycleDepth;
+    walk.cycleDepth = Integer.MAX_VALUE;
+
+    verdict = Optional.ofNullable(type.tsym == null ? null : lookup.apply(type.tsym));
+    if (!verdict.isPresent()) {
+      verdict = inspectComponents(type, walk);
+    }
+
+    walk.visiting.remove(key);
+    // A clean verdict that ran into a type further up is not final: with T extends
+    // Comparable<T> & Banned, Comparable<T> looks clean while T is still being inspected
+    if (verdict.isPresent() || walk.cycleDepth >= depth) {
+      verdicts.put(key, verdict);
+    }
+    walk.cycleDepth = Math.min(outerCycleDepth, walk.cycleDepth);
+    return verdict;
+  }
+
+  /**
+   * Returns a key that is equal for types that are spelled out the same, such as the types of two
+   * fields declared as {@code Map<String, Foo>}. Type variables are identified by their symbol
+   * alone, which stands for their bounds, so the key of a recursive type is finite. Type
+   * annotations are left out, as they do not change the verdict.
+   */
+  static Object canonicalKey(Type type) {
+    if (type instanceof ArrayType) {
+      return Arrays.asList(TypeTag.ARRAY, canonicalKey(((ArrayType) type).getComponentType()));
+    }
+
+    if (type instanceof WildcardType) {
+      WildcardType wildcard = (WildcardType) type;
+      return Arrays.asList(wildcard.kind,
+          wildcard.type == null ? null : canonicalKey(wildcard.type));
+    }
+
+    if (type instanceof TypeVar || type.tsym == null) {
+      return type.tsym == null ? type.getTag() : type.tsym;
+    }
+
+    List<Object> key = new ArrayList<>();
+    key.add(type.tsym);
+    if (type instanceof IntersectionClassType) {
+      for (Type component : ((IntersectionClassType) type).getComponents()) {
+        key.add(canonicalKey(component));
+      }
+      return key;
+    }
+    for (Type argument : type.getTypeArguments()) {
+      key.add(canonicalKey(argument));
+    }
+    Type enclosing = type.getEnclosingType();
+    if (enclosing != null && enclosing.hasTag(TypeTag.CLASS)) {
+      key.add(canonicalKey(enclosing));
+    }
+    return key;
+  }
+
+  private Optional<T> inspectComponents(Type type, Walk walk) {
+    if (type instanceof ArrayType) {
+      return find(((ArrayType) type).getComponentType(), walk);
+    }
+
+    if (type instanceof WildcardType) {
+      Type bound = ((WildcardType) type).type;
+      return bound == null ? Optional.empty() : find(bound, walk);
+    }
+
+    if (type instanceof TypeVar) {
+      Type upperBound = type.getUpperBound();
+      return upperBound == null ? Optional.empty() : find(upperBound, walk);
+    }
+
+    if (type instanceof IntersectionClassType) {
+      for (Type component : ((IntersectionClassType) type).getComponents()) {
+        Optional<T> verdict = find(component, walk);
+        if (verdict.isPresent()) {
+          return verdict;
+        }
+      }
+      return Optional.empty();
+    }
+
+    for (Type argument : type.getTypeArguments()) {
+      Optional<T> verdict = find(argument, walk);
+      if (verdict.isPresent()) {
+        return verdict;
+      }
+    }
+
+    Type enclosing = type.getEnclosingType();
+    if (enclosing != null && enclosing.hasTag(TypeTag.CLASS)) {
+      return find(enclosing, walk);
+    }
+    return Optional.empty();
+  }
+
+  /** The state of a single call of {@link #find(Type)}. */
+  private static final class Walk {
+
+    /** The types that are being inspected, along with their depth in the walk. */
+    private final Map<Object, Integer> visiting = new HashMap<>();
+
+    /** The lowest depth of a type being inspected that was run into again, if any. */
+    private int cycleDepth = Integer.MAX_VALUE;
+  }
+
+  /** The inspectors of a single compilation, keyed by their owner. */
+  private static final class Inspectors {
+
+    private final Map<Object, TypeInspector<?>> byOwner = new ConcurrentHashMap<>();
+  }
+}
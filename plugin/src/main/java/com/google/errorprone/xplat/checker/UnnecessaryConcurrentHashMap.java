@@ -18,7 +18,11 @@ package com.google.errorprone.xplat.checker;
 import static com.google.errorprone.BugPattern.SeverityLevel.WARNING;
 
 import com.google.auto.service.AutoService;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.errorprone.BugPattern;
+import com.google.errorprone.ErrorProneFlags;
 import com.google.errorprone.VisitorState;
 import com.google.errorprone.bugpatterns.BugChecker;
 import com.google.errorprone.bugpatterns.BugChecker.NewClassTreeMatcher;
@@ -28,18 +32,36 @@ import com.google.errorprone.matchers.Description;
 import com.google.errorprone.matchers.Matcher;
 import com.google.errorprone.matchers.Matchers;
 import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.AssignmentTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.LambdaExpressionTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
 import com.sun.source.tree.NewClassTree;
 import com.sun.source.tree.Tree;
 import com.sun.source.tree.Tree.Kind;
 import com.sun.source.tree.VariableTree;
-import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.TreePath;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.code.Symbol.VarSymbol;
 import com.sun.tools.javac.code.Type;
 import com.sun.tools.javac.tree.JCTree;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Optional;
+import java.util.Set;
+import javax.lang.model.element.Modifier;
 
 /**
  * Checks for usage of ConcurrentHashMap and suggests the use of Collections.synchronizedMap.
  * ConcurrentHashMap is not well supported on iOS.
+ * <p>
+ * Maps that never leave a single thread are not synchronized at all, a plain HashMap is suggested
+ * for them instead. These are maps in local variables that do not escape their method, and maps in
+ * private fields of classes annotated with {@code @NotThreadSafe}. Other annotations can be used
+ * to mark thread confined classes with the flag {@code
+ * UnnecessaryConcurrentHashMap:ThreadConfinedAnnotations}.
  */
 @AutoService(BugChecker.class)
 @BugPattern(
@@ -48,13 +70,17 @@ import java.util.Optional;
     explanation =
         "ConcurrentHashMap is not well supported on iOS."
             + " For this reason, Collections.synchronizedMap is suggested to be used"
-            + " in its place for better cross-platform compatibility.",
+            + " in its place for better cross-platform compatibility. Maps that are confined"
+            + " to a single thread do not need to be synchronized, so a HashMap is suggested"
+            + " for them.",
     severity = WARNING)
-public class UnnecessaryConcurrentHashMap extends BugChecker implements NewClassTreeMatcher,
+public class UnnecessaryConcurrentHashMap extends XplatChecker implements NewClassTreeMatcher,
     VariableTreeMatcher {
 
+  private static final String CONCURRENT_HASH_MAP = "java.util.concurrent.ConcurrentHashMap";
+
   private static final Matcher<Tree> CONCURRENT_HASH_MAP_MATCHER =
-      Matchers.isSameType("java.util.concurrent.ConcurrentHashMap");
+      Matchers.isSameType(CONCURRENT_HASH_MAP);
 
   private static final Matcher<Tree> MAP_MATCHER =
       Matchers.isSameType("java.util.Map");
@@ -69,6 +95,27 @@ public class UnnecessaryConcurrentHashMap extends BugChecker implements NewClass
       "ConcurrentHashMap is not well supported on iOS. Use"
           + " Collections.synchronizedMap instead.";
 
+  private static final String CONFINED_MESSAGE =
+      "ConcurrentHashMap is not well supported on iOS. This map is confined to a single thread,"
+          + " so use a HashMap instead.";
+
+  private static final ImmutableSet<String> MAP_VIEWS =
+      ImmutableSet.of("keySet", "values", "entrySet");
+
+  private final ImmutableList<String> threadConfinedAnnotations;
+
+  public UnnecessaryConcurrentHashMap(ErrorProneFlags flags) {
+    super(flags);
+    this.threadConfinedAnnotations = flags
+        .getList("UnnecessaryConcurrentHashMap:ThreadConfinedAnnotations")
+        .map(ImmutableList::copyOf)
+        .orElse(ImmutableList.of("javax.annotation.concurrent.NotThreadSafe"));
+  }
+
+  public UnnecessaryConcurrentHashMap() {
+    this(ErrorProneFlags.empty());
+  }
+
   private Description standardDescription(Tree tree, SuggestedFix fix, String message) {
     return buildDescription(tree)
         .setMessage(message)
@@ -79,100 +126,217 @@ public class UnnecessaryConcurrentHashMap extends BugChecker implements NewClass
 
   @Override
   public Description matchNewClass(NewClassTree tree, VisitorState state) {
-    if (CONCURRENT_HASH_MAP_MATCHER.matches(tree, state)) {
+    return match(tree, state, this::checkNewClass);
+  }
 
-      SuggestedFix.Builder fix = SuggestedFix.builder()
-          .addImport("java.util.Collections")
-          .addImport("java.util.HashMap")
-          .replace(
-              ((JCTree) tree).getStartPosition(),
-              state.getEndPosition(tree),
-              "Collections.synchronizedMap(new HashMap<>())");
+  private Description checkNewClass(NewClassTree tree, VisitorState state) {
+    if (CONCURRENT_HASH_MAP_MATCHER.matches(tree, state)) {
 
       Tree variable = state.getPath().getParentPath().getLeaf();
 
       if (variable == null) {
         return Description.NO_MATCH;
-      } else if (variable.getKind() == Kind.VARIABLE) {
-        String source = state.getSourceForNode(variable);
+      }
+
+      boolean confined = isConfined(variable, state);
+      String message = confined ? CONFINED_MESSAGE : STANDARD_MESSAGE;
+
+      SuggestedFix.Builder fix = SuggestedFix.builder().addImport("java.util.HashMap");
+      if (confined) {
+        fix.replace(
+            ((JCTree) tree).getStartPosition(),
+            state.getEndPosition(tree),
+            "new HashMap<>()");
+      } else {
+        fix.addImport("java.util.Collections")
+            .replace(
+                ((JCTree) tree).getStartPosition(),
+                state.getEndPosition(tree),
+                "Collections.synchronizedMap(new HashMap<>())");
+      }
+
+      if (variable.getKind() == Kind.VARIABLE) {
+        // Only the type is replaced, so that modifiers of fields are kept
+        Tree type = ((VariableTree) variable).getType();
+        String source = state.getSourceForNode(type);
 
         if (source != null && source.contains("<") && !MAP_MATCHER.matches(variable, state)) {
           fix.addImport("java.util.Map");
           fix.replace(
-              ((JCTree) variable).getStartPosition(),
-              ((JCTree) variable).getStartPosition() + source.indexOf("<"),
+              ((JCTree) type).getStartPosition(),
+              ((JCTree) type).getStartPosition() + source.indexOf("<"),
               "Map");
         }
 
       } else if (variable.getKind() == Kind.ASSIGNMENT) {
-        Optional<Description> desc = incompatibleInterfaceDesc(variable, state,
-            state.getSourceForNode(variable));
+        Optional<Description> desc = incompatibleInterfaceDesc((AssignmentTree) variable,
+            confined ? "HashMap" : "Collections.synchronizedMap", state);
 
         if (desc.isPresent()) {
-          state.reportMatch(standardDescription(tree, fix.build(), STANDARD_MESSAGE));
+          state.reportMatch(standardDescription(tree, fix.build(), message));
 
           return desc.get();
         } else {
-          return standardDescription(tree, fix.build(), STANDARD_MESSAGE +
+          return standardDescription(tree, fix.build(), message +
               " Make sure that this variable is declared with the Map interface.");
         }
       }
-      return standardDescription(tree, fix.build(), STANDARD_MESSAGE);
+      return standardDescription(tree, fix.build(), message);
     }
 
     return Description.NO_MATCH;
   }
 
+  /**
+   * Returns whether the map created by a {@code new ConcurrentHashMap} expression is confined to
+   * a single thread, in which case it does not need to be synchronized at all.
+   *
+   * <p>The map has to be stored in a local variable, or in a private field of a class annotated
+   * with one of the thread confined annotations, and every use of that variable has to keep the map
+   * to itself. Method calls on the map and assignments to the variable are fine. Anything else,
+   * such as returning the map, passing it to a method, storing it elsewhere or using it inside a
+   * lambda or inner class, lets it escape.
+   *
+   * @param parent The tree that the new map is assigned in.
+   */
+  private boolean isConfined(Tree parent, VisitorState state) {
+    Symbol symbol;
+    if (parent.getKind() == Kind.VARIABLE) {
+      symbol = ASTHelpers.getSymbol((VariableTree) parent);
+    } else if (parent.getKind() == Kind.ASSIGNMENT) {
+      symbol = ASTHelpers.getSymbol(((AssignmentTree) parent).getVariable());
+    } else {
+      return false;
+    }
+
+    if (!(symbol instanceof VarSymbol)) {
+      return false;
+    }
+
+    switch (symbol.getKind()) {
+      case LOCAL_VARIABLE:
+      case PARAMETER:
+        break;
+      case FIELD:
+        if (!symbol.getModifiers().contains(Modifier.PRIVATE)
+            || !isThreadConfined(symbol.enclClass(), state)) {
+          return false;
+        }
+        break;
+      default:
+        return false;
+    }
+
+    VarSymbol variable = (VarSymbol) symbol;
+    VariableIndex index = VariableIndex.forCurrentClass(state);
+    TreePath declaration = index.declaration(variable);
+
+    // Without a declaration there is nothing to tell where the variable is confined to
+    if (declaration == null) {
+      return false;
+    }
+
+    Set<Tree> declarationScopes = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (Tree scope : declaration) {
+      declarationScopes.add(scope);
+    }
+
+    for (TreePath use : index.uses(variable)) {
+      if (!isConfinedUse(use) || isCaptured(use, declarationScopes)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean isThreadConfined(ClassSymbol symbol, VisitorState state) {
+    for (String annotation : threadConfinedAnnotations) {
+      if (ASTHelpers.hasAnnotation(symbol, annotation, state)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Method calls on the map and assignments to the variable keep the map confined. */
+  private static boolean isConfinedUse(TreePath use) {
+    Tree tree = use.getLeaf();
+    Tree parent = use.getParentPath().getLeaf();
+
+    if (parent instanceof AssignmentTree) {
+      return ((AssignmentTree) parent).getVariable() == tree;
+    }
+
+    if (parent instanceof MemberSelectTree
+        && ((MemberSelectTree) parent).getExpression() == tree) {
+      Tree invocation = use.getParentPath().getParentPath().getLeaf();
+
+      // The views of a map are backed by it, so handing them out publishes the map
+      return invocation instanceof MethodInvocationTree
+          && ((MethodInvocationTree) invocation).getMethodSelect() == parent
+          && !MAP_VIEWS.contains(((MemberSelectTree) parent).getIdentifier().toString());
+    }
+    return false;
+  }
+
+  /**
+   * Returns whether a use is inside a lambda or class that does not also contain the
+   * declaration, given as the set of trees enclosing it, in which case the map may be used from
+   * another thread.
+   */
+  private static boolean isCaptured(TreePath use, Set<Tree> declarationScopes) {
+    for (Tree tree : use) {
+      if (declarationScopes.contains(tree)) {
+        return false;
+      }
+      if (tree instanceof LambdaExpressionTree || tree instanceof ClassTree) {
+        return true;
+      }
+    }
+    return true;
+  }
+
   /**
    * Handles the edge case where the ConcurrentHashMap is declared with an interface that is
-   * incompatible with Collections.synchronizedMap on a different line than it is instantiated. This
-   * only handles the case where both are in the same scope. Otherwise, it is on the user to verify
-   * that the variable is declared with a valid interface.
+   * incompatible with the suggested map on a different line than it is instantiated. This only
+   * handles the case where both are in the same scope. Otherwise, it is on the user to verify that
+   * the variable is declared with a valid interface.
+   *
+   * @param replacement The map that is suggested in place of the ConcurrentHashMap.
    */
-  private Optional<Description> incompatibleInterfaceDesc(Tree tree, VisitorState state,
-      String source) {
+  private Optional<Description> incompatibleInterfaceDesc(AssignmentTree tree,
+      String replacement, VisitorState state) {
 
-    String treeSource = state.getSourceForNode(tree);
+    Symbol symbol = ASTHelpers.getSymbol(tree.getVariable());
 
-    if (treeSource == null || source == null || !source.contains("=")) {
+    if (!(symbol instanceof VarSymbol)) {
       return Optional.empty();
     }
 
-    String originName = source.substring(0, treeSource.indexOf("=")).trim();
-
-    VariableTree origin =
-        new TreePathScanner<VariableTree, Void>() {
-          @Override
-          public VariableTree reduce(VariableTree a, VariableTree b) {
-            return a == null ? b : a;
-          }
+    TreePath declaration = VariableIndex.forCurrentClass(state).declaration((VarSymbol) symbol);
 
-          @Override
-          public VariableTree visitVariable(VariableTree node, Void unused) {
-            if (node.getName().toString().equals(originName)) {
-              return node;
-            }
-            return super.visitVariable(node, unused);
-          }
-        }.scan(state.getPath().getParentPath().getParentPath().getParentPath(), null);
+    // The new class is inside an assignment, which is inside a statement of this block
+    Tree block = state.getPath().getParentPath().getParentPath().getParentPath().getLeaf();
 
-    if (origin == null) {
+    if (declaration == null || !Iterables.contains(declaration, block)) {
       return Optional.empty();
     }
 
-    String originSource = state.getSourceForNode(origin);
+    VariableTree origin = (VariableTree) declaration.getLeaf();
+    Tree originType = origin.getType();
+    String originSource = state.getSourceForNode(originType);
 
     if (originSource != null && OTHER_MAP_INTERFACE_MATCHER.matches(origin, state)) {
 
       return Optional.of(buildDescription(origin)
-          .setMessage("This variable is declared with an interface that is not compatible"
-              + " with Collections.synchronizedMap, which is suggested to be used"
-              + " in the previous warning.")
+          .setMessage(String.format("This variable is declared with an interface that is not"
+              + " compatible with %s, which is suggested in place of the ConcurrentHashMap that"
+              + " is assigned to it.", replacement))
           .addFix(SuggestedFix.builder()
               .addImport("java.util.Map")
               .replace(
-                  ((JCTree) origin).getStartPosition(),
-                  ((JCTree) origin).getStartPosition() + originSource.indexOf("<"),
+                  ((JCTree) originType).getStartPosition(),
+                  ((JCTree) originType).getStartPosition() + originSource.indexOf("<"),
                   "Map")
               .build())
           .build());
@@ -188,7 +352,10 @@ public class UnnecessaryConcurrentHashMap extends BugChecker implements NewClass
    */
   @Override
   public Description matchVariable(VariableTree tree, VisitorState state) {
+    return match(tree, state, this::checkVariable);
+  }
 
+  private Description checkVariable(VariableTree tree, VisitorState state) {
     String source = state.getSourceForNode(tree);
 
     if (source != null && !source.contains("=") &&
@@ -207,7 +374,20 @@ public class UnnecessaryConcurrentHashMap extends BugChecker implements NewClass
           .build();
     }
 
+    // Maps nested in type arguments or arrays, such as List<ConcurrentHashMap<K, V>>, have no
+    // simple fix, but are reported all the same
+    if (!CONCURRENT_HASH_MAP_MATCHER.matches(tree, state)
+        && containsConcurrentHashMap(ASTHelpers.getType(tree), state)) {
+      return buildDescription(tree).setMessage(STANDARD_MESSAGE).build();
+    }
+
     return Description.NO_MATCH;
   }
 
+  private static boolean containsConcurrentHashMap(Type type, VisitorState state) {
+    return TypeInspector.forCompilation(state, UnnecessaryConcurrentHashMap.class,
+        symbol -> symbol.getQualifiedName().contentEquals(CONCURRENT_HASH_MAP) ? symbol : null)
+        .find(type) != null;
+  }
+
 }
@@ -0,0 +1,129 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.Tree.Kind;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.VarSymbol;
+import com.sun.tools.javac.util.Context;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the variables declared and used in a top-level class, keyed by their symbol. It is built
+ * with a single scan the first time a checker asks for it, after which both the declaration and
+ * the uses of a variable are looked up in constant time. Since lookups are by symbol, shadowed
+ * variables of the same name are never mixed up.
+ *
+ * <p>Error Prone checks one top-level class after the other, so only the index of the class that
+ * is currently being checked is kept.
+ */
+final class VariableIndex {
+
+  private static final Context.Key<CurrentIndex> KEY = new Context.Key<>();
+
+  private final Tree topLevelClass;
+
+  private final Map<VarSymbol, TreePath> declarations = new HashMap<>();
+
+  private final Map<VarSymbol, List<TreePath>> uses = new HashMap<>();
+
+  private VariableIndex(Tree topLevelClass) {
+    this.topLevelClass = topLevelClass;
+  }
+
+  /**
+   * Returns the index of the top-level class that encloses the tree currently being matched,
+   * building it if needed.
+   */
+  static VariableIndex forCurrentClass(VisitorState state) {
+    TreePath topLevelClass = state.getPath();
+    while (topLevelClass.getParentPath() != null
+        && topLevelClass.getParentPath().getLeaf().getKind() != Kind.COMPILATION_UNIT) {
+      topLevelClass = topLevelClass.getParentPath();
+    }
+
+    CurrentIndex current = state.context.get(KEY);
+    if (current == null) {
+      current = new CurrentIndex();
+      state.context.put(KEY, current);
+    }
+
+    if (current.index == null || current.index.topLevelClass != topLevelClass.getLeaf()) {
+      VariableIndex index = new VariableIndex(topLevelClass.getLeaf());
+      index.new Scanner().scan(topLevelClass, null);
+      current.index = index;
+    }
+    return current.index;
+  }
+
+  /** Returns the path to the declaration of a variable, or null if it is declared elsewhere. */
+  TreePath declaration(VarSymbol symbol) {
+    return declarations.get(symbol);
+  }
+
+  /** Returns the paths to all the identifiers and member selects that refer to a variable. */
+  ImmutableList<TreePath> uses(VarSymbol symbol) {
+    List<TreePath> paths = uses.get(symbol);
+    return paths == null ? ImmutableList.of() : ImmutableList.copyOf(paths);
+  }
+
+  private void addUse(Symbol symbol, TreePath path) {
+    if (symbol instanceof VarSymbol) {
+      uses.computeIfAbsent((VarSymbol) symbol, unused -> new ArrayList<>()).add(path);
+    }
+  }
+
+  private final class Scanner extends TreePathScanner<Void, Void> {
+
+    @Override
+    public Void visitVariable(VariableTree tree, Void unused) {
+      VarSymbol symbol = ASTHelpers.getSymbol(tree);
+      if (symbol != null) {
+        declarations.put(symbol, getCurrentPath());
+      }
+      return super.visitVariable(tree, unused);
+    }
+
+    @Override
+    public Void visitIdentifier(IdentifierTree tree, Void unused) {
+      addUse(ASTHelpers.getSymbol(tree), getCurrentPath());
+      return super.visitIdentifier(tree, unused);
+    }
+
+    @Override
+    public Void visitMemberSelect(MemberSelectTree tree, Void unused) {
+      addUse(ASTHelpers.getSymbol(tree), getCurrentPath());
+      return super.visitMemberSelect(tree, unused);
+    }
+  }
+
+  /** The index of the top-level class that is currently being checked. */
+  private static final class CurrentIndex {
+
+    private VariableIndex index;
+  }
+}
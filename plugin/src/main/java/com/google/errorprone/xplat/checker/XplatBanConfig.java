@@ -0,0 +1,569 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Resources;
+import com.google.errorprone.ErrorProneFlags;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Immutable ban tables used by {@link XplatBans}, built from {@code Xplatbans.json} and the
+ * optional {@code XplatBans:JSONResource} and {@code XplatBans:JSON} flags.
+ *
+ * <p>Parsed configs are shared between checker instances through a process wide cache, so that
+ * long-lived compiler daemons running several compilations at once parse each config only once. A
+ * custom JSON file is re-read when its size or modification time changes.
+ *
+ * <p>Bans from the sections of a named target, such as {@code "targets": {"ios": {"classes":
+ * ...}}}, only break that target. Each target is a bit of a long, so a ban that several targets
+ * share is kept once, with the bits of all of them, and a single lookup tells which targets a
+ * symbol breaks. {@code "enabledTargets": ["ios", "web"]} keeps only the bans of these targets,
+ * besides the ones from the top level sections.
+ */
+final class XplatBanConfig {
+
+  /** Cached configs, keyed by the flag values they were built from. */
+  private static final Map<String, CachedConfig> CACHE = new ConcurrentHashMap<>();
+
+  /** The targets of a ban from the top level sections, which breaks every target. */
+  static final long ALL_TARGETS = -1L;
+
+  /** Targets are bits of a long, so there can be at most this many. */
+  private static final int MAX_TARGETS = Long.SIZE;
+
+  final ImmutableMap<String, String> packageNames;
+
+  final ImmutableMap<String, String> classNames;
+
+  final ImmutableMap<String, ImmutableMap<String, String>> methodNames;
+
+  /** The same bans as {@link #methodNames}, compiled into rules that match method signatures. */
+  final ImmutableMap<String, ImmutableList<MethodRule>> methodRules;
+
+  /** The names of the targets declared in the {@code targets} section, by their bit. */
+  final ImmutableList<String> targets;
+
+  /** The targets whose bans are in effect, by default all of them. */
+  final long enabledTargets;
+
+  /**
+   * The targets that each ban from a {@code targets} section breaks, keyed by {@link #ruleKey}.
+   * Bans from the top level sections break all targets, and are left out.
+   */
+  private final ImmutableMap<String, Long> ruleTargets;
+
+  /** The unfiltered bans, which the bans of {@code .xplatbans.json} files are merged into. */
+  private final Builder source;
+
+  private XplatBanConfig(Builder builder) {
+    this.source = builder;
+    this.targets = ImmutableList.copyOf(builder.targets);
+    this.enabledTargets = builder.enabledTargets();
+
+    // Bans of the targets that are not enabled are dropped here, so they are never looked up.
+    ImmutableMap.Builder<String, Long> ruleTargets = ImmutableMap.builder();
+    this.packageNames = enabledRules(builder.packageNames, BanRuleStats.PACKAGES, null,
+        builder.ruleTargets, ruleTargets);
+    this.classNames = enabledRules(builder.classNames, BanRuleStats.CLASSES, null,
+        builder.ruleTargets, ruleTargets);
+
+    ImmutableMap.Builder<String, ImmutableMap<String, String>> methods = ImmutableMap.builder();
+    for (Map.Entry<String, Map<String, String>> entry : builder.methodNames.entrySet()) {
+      ImmutableMap<String, String> ownerMethods = enabledRules(entry.getValue(),
+          BanRuleStats.METHODS, entry.getKey(), builder.ruleTargets, ruleTargets);
+      if (!ownerMethods.isEmpty()) {
+        methods.put(entry.getKey(), ownerMethods);
+      }
+    }
+    this.methodNames = methods.build();
+    this.ruleTargets = ruleTargets.build();
+
+    ImmutableMap.Builder<String, ImmutableList<MethodRule>> rules = ImmutableMap.builder();
+    for (Map.Entry<String, ImmutableMap<String, String>> entry : methodNames.entrySet()) {
+      ImmutableList.Builder<MethodRule> ownerRules = ImmutableList.builder();
+      for (Map.Entry<String, String> method : entry.getValue().entrySet()) {
+        ownerRules.add(new MethodRule(method.getKey(), method.getValue()));
+      }
+      rules.put(entry.getKey(), ownerRules.build());
+    }
+    this.methodRules = rules.build();
+  }
+
+  private ImmutableMap<String, String> enabledRules(Map<String, String> rules, String section,
+      String owner, Map<String, Long> allTargets, ImmutableMap.Builder<String, Long> targets) {
+    ImmutableMap.Builder<String, String> enabled = ImmutableMap.builder();
+    for (Map.Entry<String, String> rule : rules.entrySet()) {
+      String key = ruleKey(section,
+          owner == null ? rule.getKey() : BanRuleStats.methodRuleName(owner, rule.getKey()));
+      long ruleTargets = allTargets.getOrDefault(key, ALL_TARGETS);
+      if (ruleTargets == ALL_TARGETS) {
+        enabled.put(rule);
+      } else if ((ruleTargets & enabledTargets) != 0) {
+        enabled.put(rule);
+        targets.put(key, ruleTargets & enabledTargets);
+      }
+    }
+    return enabled.build();
+  }
+
+  /**
+   * Returns the enabled targets that a ban breaks, as a bit set with a bit per target, or {@link
+   * #ALL_TARGETS} if the ban is from the top level sections.
+   *
+   * @param section the section of the ban, as in {@link BanRuleStats}.
+   * @param rule    the name of the ban in {@link BanRuleStats}.
+   */
+  long targets(String section, String rule) {
+    return ruleTargets.isEmpty()
+        ? ALL_TARGETS : ruleTargets.getOrDefault(ruleKey(section, rule), ALL_TARGETS);
+  }
+
+  /** Returns the sorted names of the enabled targets in a bit set, separated by commas. */
+  String targetNames(long targetBits) {
+    Set<String> names = new TreeSet<>();
+    for (int i = 0; i < targets.size(); i++) {
+      if ((targetBits & enabledTargets & (1L << i)) != 0) {
+        names.add(targets.get(i));
+      }
+    }
+    return String.join(", ", names);
+  }
+
+  private static String ruleKey(String section, String rule) {
+    return section + ':' + rule;
+  }
+
+  /**
+   * A ban from the {@code methods} section. The key is either a method name, which bans every
+   * overload, or a name followed by the erased parameter types, such as {@code
+   * remove(java.lang.Object)}, which bans a single overload. Both forms may contain {@code *}
+   * wildcards, as in {@code ints(*)} or {@code *}.
+   */
+  static final class MethodRule {
+
+    final String key;
+
+    final String reason;
+
+    private final boolean hasParameters;
+
+    private final Pattern pattern;
+
+    MethodRule(String key, String reason) {
+      this.key = key;
+      this.reason = reason;
+      this.hasParameters = key.contains("(");
+
+      StringBuilder regex = new StringBuilder();
+      for (String part : key.replace(" ", "").split("\\*", -1)) {
+        if (regex.length() > 0) {
+          regex.append(".*");
+        }
+        regex.append(Pattern.quote(part));
+      }
+      this.pattern = Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Returns whether a method matches this rule.
+     *
+     * @param name       the simple name of the method.
+     * @param parameters the erased parameter types, separated by commas without spaces.
+     */
+    boolean matches(String name, String parameters) {
+      return pattern.matcher(hasParameters ? name + "(" + parameters + ")" : name).matches();
+    }
+  }
+
+  /**
+   * Returns the ban config for the given flags, parsing the JSON files only if no up to date config
+   * is cached.
+   */
+  static XplatBanConfig forFlags(ErrorProneFlags flags) {
+    Optional<String> resource = flags.get("XplatBans:JSONResource");
+    Optional<String> file = flags.get("XplatBans:JSON");
+
+    String key = resource.orElse("") + '\0' + file.orElse("");
+    String fingerprint = file.map(XplatBanConfig::fileFingerprint).orElse("");
+
+    return CACHE.compute(key, (k, cached) -> {
+      if (cached != null && cached.fingerprint.equals(fingerprint)) {
+        return cached;
+      }
+      if (cached != null) {
+        DirectoryBanConfigs.evict(cached.config);
+      }
+      return new CachedConfig(fingerprint, load(resource, file));
+    }).config;
+  }
+
+  /**
+   * Adds bans based on the {@code Xplatbans.json} file. If the flag {@code XplatBans:JSONResource}
+   * or {@code XplatBans:JSON} is used, tries to add bans from the given resource or file.
+   */
+  private static XplatBanConfig load(Optional<String> resource, Optional<String> file) {
+    XplatEvents.ConfigLoaded event = new XplatEvents.ConfigLoaded();
+    event.begin();
+    Builder builder = new Builder();
+
+    try {
+      // Obtain the URL of the top-level JSON file.
+      URL defaultResource = XplatBanConfig.class.getResource("/Xplatbans.json");
+      builder.getJsonData(readResourceAsString(defaultResource), "Xplatbans.json");
+    } catch (IOException e) {
+      System.err.println("Xplatbans.json resource file for XplatBan checker could not"
+          + " be converted to a String.");
+      throw new UncheckedIOException(e);
+    } catch (IllegalArgumentException e) {
+      System.err.println("Xplatbans.json resource file for XplatBan checker could not"
+          + " be found.");
+      throw new IllegalArgumentException(e);
+    }
+
+    if (resource.isPresent()) {
+      try {
+        String jsonDataString = readResourceAsString(resource.get());
+        builder.getJsonData(jsonDataString, resource.get());
+      } catch (IOException e) {
+        System.err.println(
+            "JSON resource argument for XplatBan checker could not"
+                + " be found/read. Custom bans will not be in effect.");
+        e.printStackTrace();
+      }
+    }
+
+    if (file.isPresent()) {
+      try {
+        String jsonDataString = readFileAsString(Paths.get(file.get()));
+        builder.getJsonData(jsonDataString, file.get());
+      } catch (IOException e) {
+        System.err.println("JSON file argument for XplatBan checker could not"
+            + " be found/read. Custom bans will not be in effect.");
+        e.printStackTrace();
+      }
+    }
+
+    XplatBanConfig config = new XplatBanConfig(builder);
+
+    if (event.shouldCommit()) {
+      event.sources = Stream.of(Optional.of("Xplatbans.json"), resource, file)
+          .flatMap(Optional::stream)
+          .collect(Collectors.joining(", "));
+      event.classBans = config.classNames.size();
+      event.packageBans = config.packageNames.size();
+      event.methodBans = config.methodRules.values().stream().mapToInt(ImmutableList::size).sum();
+      event.commit();
+    }
+    return config;
+  }
+
+  /**
+   * Returns {@code base} with the bans of the given {@code .xplatbans.json} files added, from the
+   * first file to the last one, so that later files override the reasons of earlier ones.
+   */
+  static XplatBanConfig merge(XplatBanConfig base,
+      List<DirectoryBanConfigs.DirectoryConfig> configs) {
+    Builder builder = new Builder(base.source);
+    for (DirectoryBanConfigs.DirectoryConfig config : configs) {
+      builder.addBans(config.json, config.file.toString(), false);
+    }
+    return new XplatBanConfig(builder);
+  }
+
+  /**
+   * Returns a string that changes whenever the file at the given path is modified, or an empty
+   * string if the file cannot be read.
+   */
+  private static String fileFingerprint(String path) {
+    try {
+      Path file = Paths.get(path);
+      return Files.size(file) + ":" + Files.getLastModifiedTime(file).toMillis();
+    } catch (IOException e) {
+      return "";
+    }
+  }
+
+  private static final class CachedConfig {
+
+    final String fingerprint;
+
+    final XplatBanConfig config;
+
+    CachedConfig(String fingerprint, XplatBanConfig config) {
+      this.fingerprint = fingerprint;
+      this.config = config;
+    }
+  }
+
+  /**
+   * Mutable maps that the JSON files are parsed into before being frozen. A frozen config keeps its
+   * builder, which is copied and no longer changed, to merge {@code .xplatbans.json} files into.
+   */
+  private static final class Builder {
+
+    private final Map<String, String> packageNames = new HashMap<>();
+
+    private final Map<String, String> classNames = new HashMap<>();
+
+    private final Map<String, Map<String, String>> methodNames = new HashMap<>();
+
+    /** The targets of the bans from {@code targets} sections, keyed by {@link #ruleKey}. */
+    private final Map<String, Long> ruleTargets = new HashMap<>();
+
+    private final List<String> targets = new ArrayList<>();
+
+    /** The names of the enabled targets, or null if all of them are. */
+    private List<String> enabledTargetNames;
+
+    Builder() {}
+
+    Builder(Builder other) {
+      packageNames.putAll(other.packageNames);
+      classNames.putAll(other.classNames);
+      for (Map.Entry<String, Map<String, String>> owner : other.methodNames.entrySet()) {
+        methodNames.put(owner.getKey(), new HashMap<>(owner.getValue()));
+      }
+      ruleTargets.putAll(other.ruleTargets);
+      targets.addAll(other.targets);
+      enabledTargetNames = other.enabledTargetNames;
+    }
+
+    /**
+     * A helper function that iterates though the JSON keys and puts them inside a map.
+     *
+     * @param json       The JSONObject to be iterated through.
+     * @param map        The map to be added to.
+     * @param section    The section of the bans, as in {@link BanRuleStats}.
+     * @param owner      The class that declares the methods of a {@code methods} section, or null.
+     * @param targetBits The targets that the bans break, or {@link #ALL_TARGETS}.
+     * @throws JSONException This function should never throw a JSONException, as the only time
+     *                       getString() is used, it is being used with keys returned from keys().
+     */
+    private void addJsonToMap(JSONObject json, Map<String, String> map, String section,
+        String owner, long targetBits) throws JSONException {
+      for (Iterator<?> it = json.keys(); it.hasNext(); ) {
+        String key = it.next().toString();
+        String ruleKey =
+            ruleKey(section, owner == null ? key : BanRuleStats.methodRuleName(owner, key));
+
+        Long previous =
+            map.containsKey(key) ? ruleTargets.getOrDefault(ruleKey, ALL_TARGETS) : null;
+        if (targetBits == ALL_TARGETS) {
+          map.put(key, json.getString(key));
+          ruleTargets.remove(ruleKey);
+        } else if (previous == null) {
+          map.put(key, json.getString(key));
+          ruleTargets.put(ruleKey, targetBits);
+        } else if (previous != ALL_TARGETS) {
+          // Banned for several targets, with the reason of the first one.
+          ruleTargets.put(ruleKey, previous | targetBits);
+        }
+      }
+    }
+
+    /**
+     * Given a correctly formatted JSON file, adds the bans to the respective maps.
+     *
+     * @param json     A string containing the file contents.
+     * @param fileName The name of the file to be displayed in error messages.
+     */
+    private void getJsonData(String json, String fileName) {
+      JSONObject obj;
+
+      try {
+        obj = new JSONObject(json);
+      } catch (JSONException e) {
+        System.err.println(String.format("JSON file '%s' is invalid. Unable to parse.", fileName));
+        e.printStackTrace();
+        return;
+      }
+
+      addBans(obj, fileName, true);
+    }
+
+    /**
+     * Adds the bans of a parsed JSON file to the respective maps, including the bans of its {@code
+     * targets} section, and takes its {@code enabledTargets} if it has any. Where several targets
+     * ban the same symbol, the reason of the first one is kept.
+     *
+     * @param obj      The parsed file.
+     * @param fileName The name of the file to be displayed in error messages.
+     * @param required Whether the "classes", "packages" and "methods" sections must all be present,
+     *                 which they need not be in {@code .xplatbans.json} files.
+     */
+    private void addBans(JSONObject obj, String fileName, boolean required) {
+      addSections(obj, fileName, required, ALL_TARGETS);
+
+      JSONObject targetSections = obj.optJSONObject("targets");
+      if (targetSections != null) {
+        // JSON objects are unordered, so targets are declared in the order of their names.
+        Set<String> names = new TreeSet<>();
+        for (Iterator<?> it = targetSections.keys(); it.hasNext(); ) {
+          names.add(it.next().toString());
+        }
+        for (String target : names) {
+          int bit = targetBit(target, fileName);
+          JSONObject sections = targetSections.optJSONObject(target);
+          if (bit >= 0 && sections != null) {
+            addSections(sections, String.format("%s, target %s", fileName, target), false,
+                1L << bit);
+          }
+        }
+      }
+
+      JSONArray enabled = obj.optJSONArray("enabledTargets");
+      if (enabled != null) {
+        enabledTargetNames = new ArrayList<>();
+        for (int i = 0; i < enabled.length(); i++) {
+          enabledTargetNames.add(enabled.optString(i));
+        }
+      }
+    }
+
+    private void addSections(JSONObject obj, String fileName, boolean required,
+        long targetBits) {
+      try {
+        if (required || obj.has("classes")) {
+          addJsonToMap(obj.getJSONObject("classes"), this.classNames, BanRuleStats.CLASSES, null,
+              targetBits);
+        }
+
+      } catch (JSONException e) {
+        System.err
+            .println(
+                String.format("Missing \"classes\" top level JSON name inside '%s'.", fileName));
+        e.printStackTrace();
+      }
+
+      try {
+        if (required || obj.has("packages")) {
+          addJsonToMap(obj.getJSONObject("packages"), this.packageNames, BanRuleStats.PACKAGES,
+              null, targetBits);
+        }
+
+      } catch (JSONException e) {
+        System.err.println(
+            String.format("Missing \"packages\" top level JSON name inside '%s'.", fileName));
+        e.printStackTrace();
+      }
+
+      try {
+        if (required || obj.has("methods")) {
+          JSONObject containingClasses = obj.getJSONObject("methods");
+
+          for (Iterator<?> cont = containingClasses.keys(); cont.hasNext(); ) {
+            String curClass = cont.next().toString();
+
+            // Bans of the same class from several files add up.
+            addJsonToMap(containingClasses.getJSONObject(curClass),
+                this.methodNames.computeIfAbsent(curClass, unused -> new HashMap<>()),
+                BanRuleStats.METHODS, curClass, targetBits);
+          }
+        }
+      } catch (JSONException e) {
+        System.err
+            .println(
+                String.format("Missing \"methods\" top level JSON name inside '%s'.", fileName));
+        e.printStackTrace();
+      }
+    }
+
+    /** Returns the bit of a target, declaring it if it is new, or -1 if there are too many. */
+    private int targetBit(String target, String fileName) {
+      int bit = targets.indexOf(target);
+      if (bit < 0 && targets.size() < MAX_TARGETS) {
+        targets.add(target);
+        bit = targets.size() - 1;
+      } else if (bit < 0) {
+        System.err.println(String.format("Target '%s' inside '%s' is ignored, as there are more"
+            + " than %d targets.", target, fileName, MAX_TARGETS));
+      }
+      return bit;
+    }
+
+    private long enabledTargets() {
+      if (enabledTargetNames == null) {
+        return ALL_TARGETS;
+      }
+      long enabled = 0;
+      for (String name : enabledTargetNames) {
+        int bit = targets.indexOf(name);
+        if (bit < 0) {
+          System.err.println(String.format("Enabled target '%s' is not declared in any"
+              + " \"targets\" section and is ignored.", name));
+        } else {
+          enabled |= 1L << bit;
+        }
+      }
+      return enabled;
+    }
+  }
+
+  /** A re-implementation of Files.readString() since it's not available until JDK 11. */
+  private static String readFileAsString(Path path) throws IOException {
+    byte[] ba = Files.readAllBytes(path);
+    return new String(ba, StandardCharsets.UTF_8);
+  }
+
+  private static String readResourceAsString(String resource) throws IOException {
+    return Resources.toString(Resources.getResource(resource), StandardCharsets.UTF_8);
+  }
+
+  private static String readResourceAsString(URL url) throws IOException {
+    InputStream inputStream = null;
+
+    try {
+      URLConnection urlConn = url.openConnection();
+      urlConn.setUseCaches(false);
+      inputStream = urlConn.getInputStream();
+
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      byte[] buf = new byte[8192];
+      int read;
+      while ((read = inputStream.read(buf)) > 0) {
+        baos.write(buf, 0, read);
+      }
+      return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+    } finally {
+      inputStream.close();
+    }
+  }
+}
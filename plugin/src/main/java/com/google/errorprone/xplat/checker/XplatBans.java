@@ -17,43 +17,56 @@ package com.google.errorprone.xplat.checker;
 import static com.google.errorprone.BugPattern.SeverityLevel.ERROR;
 
 import com.google.auto.service.AutoService;
-import com.google.common.io.Resources;
+import com.google.common.base.Suppliers;
 import com.google.errorprone.BugPattern;
 import com.google.errorprone.ErrorProneFlags;
 import com.google.errorprone.VisitorState;
 import com.google.errorprone.bugpatterns.BugChecker;
+import com.google.errorprone.bugpatterns.BugChecker.ClassTreeMatcher;
+import com.google.errorprone.bugpatterns.BugChecker.CompilationUnitTreeMatcher;
+import com.google.errorprone.bugpatterns.BugChecker.IdentifierTreeMatcher;
+import com.google.errorprone.bugpatterns.BugChecker.MemberReferenceTreeMatcher;
+import com.google.errorprone.bugpatterns.BugChecker.MemberSelectTreeMatcher;
 import com.google.errorprone.bugpatterns.BugChecker.MethodInvocationTreeMatcher;
 import com.google.errorprone.bugpatterns.BugChecker.MethodTreeMatcher;
 import com.google.errorprone.bugpatterns.BugChecker.NewClassTreeMatcher;
 import com.google.errorprone.bugpatterns.BugChecker.VariableTreeMatcher;
 import com.google.errorprone.matchers.Description;
 import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.ImportTree;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MemberSelectTree;
 import com.sun.source.tree.MethodInvocationTree;
 import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.NewClassTree;
 import com.sun.source.tree.Tree;
 import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreePathScanner;
 import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
 import com.sun.tools.javac.code.Symbol.MethodSymbol;
+import com.sun.tools.javac.code.Symbol.PackageSymbol;
+import com.sun.tools.javac.code.Symbol.TypeSymbol;
 import com.sun.tools.javac.code.Symbol.VarSymbol;
 import com.sun.tools.javac.code.Type;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.UncheckedIOException;
-import java.net.URL;
-import java.net.URLConnection;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import com.sun.tools.javac.code.TypeTag;
+import com.sun.tools.javac.code.Types;
+import com.sun.tools.javac.util.Context;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * Check for usage of some classes and packages, which can be found in resources/Xplatbans.json.
@@ -62,6 +75,10 @@ import org.json.JSONObject;
  * is the path to a JSON file containing custom bans. Errors can be suppressed with the {@link
  * XplatBanSuppression} annotation.
  *
+ * <p>Banned types are looked for in declarations of variables and methods, in supertypes, and in
+ * the constructor calls, method calls, method references, field accesses and class literals that
+ * refer to them.
+ *
  * <p>The JSON file should be formatted in this way:
  *
  * <pre>
@@ -77,15 +94,36 @@ import org.json.JSONObject;
  *     "java.util.HashSet": {
  *       "contains": "a further reason.",
  *       "remove": ""
+ *     },
+ *     "java.util.Random": {
+ *       "ints(long)": "only this overload is banned.",
+ *       "next*": "wildcards match any part of the signature."
  *     }
  *   }
  * }
  * </pre>
  *
+ * Methods are banned either by name, which bans all of their overloads, or by name and erased
+ * parameter types. A method ban also applies to the methods that override the banned method, to
+ * calls of the banned method through a subclass, and to calls through the banned class of the
+ * methods that it inherits, such as {@code contains} for a ban of {@code java.util.LinkedHashSet}.
+ *
  * In each error message, the string following the ban fills in the %s in the following string:
  * {@code "has been banned due to %s"}. If an empty string is provided, the default message will be
  * used. The JSON file should include each top level name {@code (classes, packages, methods)}, even
  * if they have no content.
+ *
+ * <p>Bans may also be declared for named targets, such as {@code "targets": {"ios": {"classes":
+ * ...}}}, in which case the message lists the targets that the banned symbol breaks. All targets
+ * are checked in the same pass, see {@link XplatBanConfig}.
+ *
+ * <p>Further bans, and the sources they apply to, can be configured per directory with {@code
+ * .xplatbans.json} files, see {@link DirectoryBanConfigs}.
+ *
+ * <p>With {@code -XepOpt:XplatBans:RuleReport=X}, the number of lookups, hits and suppressed hits
+ * of every rule is written to the JSON lines report at X, see {@link BanRuleStats}. As Error Prone
+ * does not match anything within declarations that are suppressed, the suppressed hits are found
+ * by matching these declarations again at the start of each compilation unit.
  */
 @AutoService(BugChecker.class)
 @BugPattern(
@@ -98,155 +136,160 @@ import org.json.JSONObject;
             + " custom bans.",
     severity = ERROR,
     suppressionAnnotations = XplatBanSuppression.class)
-public class XplatBans extends BugChecker
+public class XplatBans extends XplatChecker
     implements MethodInvocationTreeMatcher,
         NewClassTreeMatcher,
         VariableTreeMatcher,
-        MethodTreeMatcher {
+        MethodTreeMatcher,
+        MemberReferenceTreeMatcher,
+        MemberSelectTreeMatcher,
+        IdentifierTreeMatcher,
+        ClassTreeMatcher,
+        CompilationUnitTreeMatcher {
 
-  private final Map<String, String> packageNames = new HashMap<>();
+  private static final Context.Key<MemberVerdicts> MEMBER_VERDICTS_KEY = new Context.Key<>();
 
-  private final Map<String, String> classNames = new HashMap<>();
+  /** Parsed on the first match, so that loading or disabling the checker costs nothing. */
+  private final Supplier<XplatBanConfig> config;
 
-  private final Map<String, Map<String, String>> methodNames = new HashMap<>();
+  private final Optional<Path> ruleReport;
 
+  /** Whether the matchers are called by {@link SuppressedHits}, so every hit is suppressed. */
+  private boolean countingSuppressedHits;
 
-  /**
-   * A helper function that iterates though the JSON keys and puts them inside a map.
-   *
-   * @param json The JSONObject to be iterated through.
-   * @param map  The map to be added to.
-   * @throws JSONException This function should never throw a JSONException, as the only time
-   *                       getString() is used, it is being used with keys returned from keys().
-   */
-  private void addJsonToMap(JSONObject json, Map<String, String> map) throws JSONException {
-    for (Iterator<?> it = json.keys(); it.hasNext(); ) {
-      String key = it.next().toString();
-      map.put(key, json.getString(key));
-    }
-  }
+  private static final String DEFAULT_REASON = "cross platform incompatibility.";
 
   /**
-   * Given a correctly formatted JSON file, adds the bans to the respective maps.
-   *
-   * @param json     A string containing the file contents.
-   * @param fileName The name of the file to be displayed in error messages.
+   * A banned class or package, and the reason why it is banned. For bans from the {@code methods}
+   * section, the banned method is kept as well. The section and rule identify the ban in the
+   * {@link BanRuleStats}, and the target bits tell which targets of the {@link XplatBanConfig} it
+   * breaks.
    */
-  private void getJsonData(String json, String fileName) {
-    JSONObject obj;
+  private static final class Ban {
 
-    try {
-      obj = new JSONObject(json);
-    } catch (JSONException e) {
-      System.err.println(String.format("JSON file '%s' is invalid. Unable to parse.", fileName));
-      e.printStackTrace();
-      return;
-    }
+    private final String section;
 
-    try {
-      addJsonToMap(obj.getJSONObject("classes"), this.classNames);
+    private final String rule;
+
+    private final String method;
 
-    } catch (JSONException e) {
-      System.err
-          .println(String.format("Missing \"classes\" top level JSON name inside '%s'.", fileName));
-      e.printStackTrace();
+    private final String target;
+
+    private final String reason;
+
+    private final long targets;
+
+    private Ban(String section, String rule, String method, String target, String reason,
+        long targets) {
+      this.section = section;
+      this.rule = rule;
+      this.method = method;
+      this.target = target;
+      this.reason = reason;
+      this.targets = targets;
     }
 
-    try {
-      addJsonToMap(obj.getJSONObject("packages"), this.packageNames);
+    static Ban forClass(String className, String reason, XplatBanConfig bans) {
+      return new Ban(BanRuleStats.CLASSES, className, null, className, reason,
+          bans.targets(BanRuleStats.CLASSES, className));
+    }
 
-    } catch (JSONException e) {
-      System.err.println(
-          String.format("Missing \"packages\" top level JSON name inside '%s'.", fileName));
-      e.printStackTrace();
+    static Ban forPackage(String packageName, String reason, XplatBanConfig bans) {
+      return new Ban(BanRuleStats.PACKAGES, packageName, null, packageName, reason,
+          bans.targets(BanRuleStats.PACKAGES, packageName));
     }
 
-    try {
-      JSONObject containingClasses = obj.getJSONObject("methods");
+    static Ban forMethod(String owner, String key, String method, String reason,
+        XplatBanConfig bans) {
+      String rule = BanRuleStats.methodRuleName(owner, key);
+      return new Ban(BanRuleStats.METHODS, rule, method, owner, reason,
+          bans.targets(BanRuleStats.METHODS, rule));
+    }
 
-      for (Iterator<?> cont = containingClasses.keys(); cont.hasNext(); ) {
-        String curClass = cont.next().toString();
-        Map<String, String> localMap = new HashMap<>();
+    /** Returns whether there is no target left that the ban does not break. */
+    boolean breaksAllTargets() {
+      return targets == XplatBanConfig.ALL_TARGETS;
+    }
 
-        addJsonToMap(containingClasses.getJSONObject(curClass), localMap);
+    /**
+     * Returns {@code first}, which is reported, breaking the targets of {@code second} as well.
+     * Either may be null.
+     */
+    static Ban combine(Ban first, Ban second) {
+      if (first == null || second == null || first.breaksAllTargets()) {
+        return first == null ? second : first;
+      }
+      return new Ban(first.section, first.rule, first.method, first.target, first.reason,
+          first.targets | second.targets);
+    }
 
-        this.methodNames.put(curClass, localMap);
+    /**
+     * Returns the reason of the ban, followed by the targets it breaks unless it is from the top
+     * level sections, which break all of them.
+     */
+    String reason(XplatBanConfig bans) {
+      if (breaksAllTargets()) {
+        return reason;
       }
-    } catch (JSONException e) {
-      System.err
-          .println(String.format("Missing \"methods\" top level JSON name inside '%s'.", fileName));
-      e.printStackTrace();
+      return String.format("%s (targets: %s)", reason.isEmpty() ? DEFAULT_REASON : reason,
+          bans.targetNames(targets));
     }
   }
 
+  /**
+   * Verdicts on the fields and methods referenced during a compilation, keyed by the bans they
+   * were computed from, by the class of the receiver and by the member's symbol. Calls, method
+   * references and field accesses of the same member through the same class share a single
+   * lookup.
+   */
+  private static final class MemberVerdicts {
+
+    private final Map<XplatBanConfig, Map<Symbol, Map<Symbol, Optional<Ban>>>> byConfig =
+        new ConcurrentHashMap<>();
+  }
+
   public XplatBans() {
     this(ErrorProneFlags.empty());
   }
 
   /**
-   * Adds bans to the maps based on the {@code Xplatbans.json} file. If the flag {@code
-   * XplatBans:JSON} is used, tries to add bans to the maps from the given file.
+   * Looks up the bans from the {@code Xplatbans.json} file and, if the flag {@code XplatBans:JSON}
+   * is used, from the given file, once the checker first matches a tree. Parsed bans are immutable
+   * and shared between checker instances that use the same flags, see {@link XplatBanConfig}.
    */
   public XplatBans(ErrorProneFlags flags) {
-    try {
-      // Obtain the URL of the top-level JSON file.
-      URL resource = getClass().getResource("/Xplatbans.json");
-      getJsonData(readResourceAsString(resource), "Xplatbans.json");
-    } catch (IOException e) {
-      System.err.println("Xplatbans.json resource file for XplatBan checker could not"
-          + " be converted to a String.");
-      throw new UncheckedIOException(e);
-    } catch (IllegalArgumentException e) {
-      System.err.println("Xplatbans.json resource file for XplatBan checker could not"
-          + " be found.");
-      throw new IllegalArgumentException(e);
-    }
-
-    Optional<String> arg;
-
-    arg = flags.get("XplatBans:JSONResource");
-    if (arg.isPresent()) {
-      try {
-        String jsonDataString = readResourceAsString(arg.get());
-        getJsonData(jsonDataString, arg.get());
-      } catch (IOException e) {
-        System.err.println(
-            "JSON resource argument for XplatBan checker could not"
-                + " be found/read. Custom bans will not be in effect.");
-        e.printStackTrace();
-      }
-    }
-
-    arg = flags.get("XplatBans:JSON");
-    if (arg.isPresent()) {
-      try {
-        String jsonDataString = readFileAsString(Paths.get(arg.get()));
-        getJsonData(jsonDataString, arg.get());
-      } catch (IOException e) {
-        System.err.println("JSON file argument for XplatBan checker could not"
-            + " be found/read. Custom bans will not be in effect.");
-        e.printStackTrace();
-      }
-    }
+    super(flags);
+    this.config = Suppliers.memoize(() -> XplatBanConfig.forFlags(flags));
+    this.ruleReport = flags.get("XplatBans:RuleReport").map(Paths::get);
   }
 
   public Description standardMessage(Tree tree, String target, String reason) {
+    return standardMessage(buildDescription(tree), target, reason);
+  }
+
+  private static Description standardMessage(Description.Builder description, String target,
+      String reason) {
     if (reason.length() == 0) {
-      reason = "cross platform incompatibility.";
+      reason = DEFAULT_REASON;
     }
 
-    return buildDescription(tree)
+    return description
         .setMessage(
             String.format("Use of %s has been banned due to %s", target, reason))
         .build();
   }
 
   public Description methodCallMessage(Tree tree, String method, String target, String reason) {
+    return methodCallMessage(buildDescription(tree), method, target, reason);
+  }
+
+  private static Description methodCallMessage(Description.Builder description, String method,
+      String target, String reason) {
     if (reason.length() == 0) {
-      reason = "cross platform incompatibility.";
+      reason = DEFAULT_REASON;
     }
 
-    return buildDescription(tree)
+    return description
         .setMessage(
             String.format("Use of %s is not allowed, as %s has been banned due to %s", method,
                 target, reason))
@@ -255,11 +298,16 @@ public class XplatBans extends BugChecker
 
   public Description constructorMessage(Tree tree, String constructor, String target,
       String reason) {
+    return constructorMessage(buildDescription(tree), constructor, target, reason);
+  }
+
+  private static Description constructorMessage(Description.Builder description,
+      String constructor, String target, String reason) {
     if (reason.length() == 0) {
-      reason = "cross platform incompatibility.";
+      reason = DEFAULT_REASON;
     }
 
-    return buildDescription(tree)
+    return description
         .setMessage(
             String.format(
                 "Use of this constructor (%s) is not allowed, as %s"
@@ -267,6 +315,233 @@ public class XplatBans extends BugChecker
         .build();
   }
 
+  /**
+   * Returns the bans for the compilation unit of the current tree, parsing them on the first call.
+   */
+  private XplatBanConfig config(VisitorState state) {
+    return DirectoryBanConfigs.forUnit(config.get(), state);
+  }
+
+  /** Returns the rule counters of the current compilation, or null if they are not reported. */
+  private BanRuleStats ruleStats(XplatBanConfig bans, VisitorState state) {
+    return ruleReport.isPresent()
+        ? BanRuleStats.instance(state.context, bans, ruleReport.get())
+        : null;
+  }
+
+  /**
+   * Returns the ban on a class, or on the package that it is in, or null if it is not banned.
+   */
+  private static Ban classBan(TypeSymbol symbol, XplatBanConfig bans, BanRuleStats stats) {
+    if (!(symbol instanceof ClassSymbol)) {
+      return null;
+    }
+    String className = ((ClassSymbol) symbol).getQualifiedName().toString();
+
+    // With targets, all the bans that match are combined, until every target is broken.
+    Ban ban = null;
+    boolean classBanned = bans.classNames.containsKey(className);
+    countLookup(stats, BanRuleStats.CLASSES, classBanned ? className : null);
+    if (classBanned) {
+      ban = Ban.forClass(className, bans.classNames.get(className), bans);
+      if (ban.breaksAllTargets()) {
+        return ban;
+      }
+    }
+
+    for (String packName : bans.packageNames.keySet()) {
+      countLookup(stats, BanRuleStats.PACKAGES, packName);
+      if (className.startsWith(packName)) {
+        ban = Ban.combine(ban, Ban.forPackage(packName, bans.packageNames.get(packName), bans));
+        if (ban.breaksAllTargets()) {
+          return ban;
+        }
+      }
+    }
+    return ban;
+  }
+
+  /**
+   * Returns the ban on a class by its exact name, or on a package by its exact name, or null if
+   * neither is banned. Unlike {@link #classBan}, subpackages of banned packages are not banned.
+   *
+   * @param className the qualified name of the class, or null to only look at the package.
+   */
+  private static Ban exactBan(String className, PackageSymbol packge, XplatBanConfig bans,
+      BanRuleStats stats) {
+    Ban ban = null;
+    if (className != null) {
+      boolean classBanned = bans.classNames.containsKey(className);
+      countLookup(stats, BanRuleStats.CLASSES, classBanned ? className : null);
+      if (classBanned) {
+        ban = Ban.forClass(className, bans.classNames.get(className), bans);
+        if (ban.breaksAllTargets()) {
+          return ban;
+        }
+      }
+    }
+
+    String packageName = packge.toString();
+    boolean packageBanned = bans.packageNames.containsKey(packageName);
+    countLookup(stats, BanRuleStats.PACKAGES, packageBanned ? packageName : null);
+    if (packageBanned) {
+      ban = Ban.combine(ban,
+          Ban.forPackage(packageName, bans.packageNames.get(packageName), bans));
+    }
+    return ban;
+  }
+
+  private static void countLookup(BanRuleStats stats, String section, String rule) {
+    if (stats != null) {
+      stats.lookup(section, rule);
+    }
+  }
+
+  /**
+   * Returns the first ban found anywhere inside of a type, including its type arguments, array
+   * components and bounds, or null if there is none. Verdicts are shared by all the checker
+   * instances that use the same bans, see {@link TypeInspector}.
+   */
+  private Ban typeBan(Type type, XplatBanConfig bans, VisitorState state) {
+    BanRuleStats stats = ruleStats(bans, state);
+    return TypeInspector.forCompilation(state, bans, symbol -> classBan(symbol, bans, stats))
+        .find(type);
+  }
+
+  /**
+   * Returns the ban on a field or method accessed through {@code receiver}, either through the
+   * class or package that declares it or through the {@code methods} section of the bans, or null
+   * if it is not banned. Verdicts are memoized per receiver class and member symbol.
+   *
+   * @param receiver the class of the receiver, as returned by {@link #receiverClass}.
+   */
+  private Ban memberBan(Symbol member, Symbol receiver, XplatBanConfig bans,
+      VisitorState state) {
+    MemberVerdicts verdicts = state.context.get(MEMBER_VERDICTS_KEY);
+    if (verdicts == null) {
+      verdicts = new MemberVerdicts();
+      state.context.put(MEMBER_VERDICTS_KEY, verdicts);
+    }
+
+    Map<Symbol, Optional<Ban>> memberBans = verdicts.byConfig
+        .computeIfAbsent(bans, unused -> new ConcurrentHashMap<>())
+        .computeIfAbsent(receiver, unused -> new ConcurrentHashMap<>());
+    return memberBans.computeIfAbsent(member,
+        unused -> Optional.ofNullable(computeMemberBan(member, receiver, bans, state)))
+        .orElse(null);
+  }
+
+  /**
+   * Returns the class through which a member is accessed: the erasure of the receiver type, or
+   * the class that declares the member if there is no receiver class, as for array methods.
+   */
+  private static Symbol receiverClass(Type receiverType, Symbol member, VisitorState state) {
+    if (receiverType != null) {
+      Type erasure = state.getTypes().erasure(receiverType);
+      if (erasure.hasTag(TypeTag.CLASS)
+          && erasure.tsym.isSubClass(member.owner, state.getTypes())) {
+        return erasure.tsym;
+      }
+    }
+    return member.owner;
+  }
+
+  private Ban computeMemberBan(Symbol member, Symbol receiver, XplatBanConfig bans,
+      VisitorState state) {
+    Symbol owner = member.owner;
+    if (!(owner instanceof ClassSymbol)) {
+      return null;
+    }
+
+    Ban ban = classBan((ClassSymbol) owner, bans, ruleStats(bans, state));
+    if (ban != null && ban.breaksAllTargets()) {
+      return ban;
+    }
+
+    if (member instanceof MethodSymbol) {
+      MethodSymbol method = (MethodSymbol) member;
+      Types types = state.getTypes();
+      Map<Symbol, MethodSymbol> overridden = new HashMap<>();
+      for (MethodSymbol superMethod : ASTHelpers.findSuperMethods(method, types)) {
+        overridden.putIfAbsent(superMethod.owner, superMethod);
+      }
+
+      // The rules of the receiver class and all of its supertypes, which include the class that
+      // declares the method and the classes of the methods that it overrides. A rule of a
+      // subclass also bans the methods that it inherits.
+      for (Type supertype : types.closure(receiver.type)) {
+        Symbol type = supertype.tsym;
+        MethodSymbol declared = type.isSubClass(owner, types) ? method : overridden.get(type);
+        if (declared == null) {
+          continue;
+        }
+        ban = Ban.combine(ban, methodRuleBan((ClassSymbol) type, declared, bans, state));
+        if (ban != null && ban.breaksAllTargets()) {
+          return ban;
+        }
+      }
+    }
+    return ban;
+  }
+
+  /**
+   * Returns the ban on a method from the rules of the given class, which declares or inherits it,
+   * if any.
+   */
+  private Ban methodRuleBan(ClassSymbol owner, MethodSymbol method, XplatBanConfig bans,
+      VisitorState state) {
+    String ownerName = owner.getQualifiedName().toString();
+    List<XplatBanConfig.MethodRule> rules = bans.methodRules.get(ownerName);
+    BanRuleStats stats = ruleStats(bans, state);
+    countLookup(stats, BanRuleStats.METHODS, null);
+    if (rules == null) {
+      return null;
+    }
+
+    String name = method.getSimpleName().toString();
+    String parameters = method.getParameters().stream()
+        .map(param -> state.getTypes().erasure(param.type).toString())
+        .collect(Collectors.joining(","));
+
+    for (XplatBanConfig.MethodRule rule : rules) {
+      countLookup(stats, BanRuleStats.METHODS, BanRuleStats.methodRuleName(ownerName, rule.key));
+      if (rule.matches(name, parameters)) {
+        String banned = rule.key.contains("(") ? rule.key : name + "()";
+        return Ban.forMethod(ownerName, rule.key, banned, rule.reason, bans);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Counts a hit of the rule behind a ban, and returns the description of {@code tree} completed by
+   * {@code message}, or NO_MATCH if the hit is suppressed.
+   */
+  private Description report(Tree tree, Ban ban, XplatBanConfig bans, VisitorState state,
+      Function<Description.Builder, Description> message) {
+    BanRuleStats stats = ruleStats(bans, state);
+    if (stats != null) {
+      stats.hit(ban.section, ban.rule, countingSuppressedHits);
+    }
+    if (countingSuppressedHits) {
+      return Description.NO_MATCH;
+    }
+    return message.apply(buildDescription(tree, ban.rule));
+  }
+
+  private Description banMessage(Tree tree, Ban ban, XplatBanConfig bans, VisitorState state) {
+    if (ban == null) {
+      return Description.NO_MATCH;
+    }
+    if (ban.method != null) {
+      return report(tree, ban, bans, state,
+          description -> methodCallMessage(description, ban.method, ban.target,
+              ban.reason(bans)));
+    }
+    return report(tree, ban, bans, state,
+        description -> standardMessage(description, ban.target, ban.reason(bans)));
+  }
+
   /**
    * Given a type, returns a String that removes type parameters.
    *
@@ -285,59 +560,168 @@ public class XplatBans extends BugChecker
     return typeString;
   }
 
+  /**
+   * Counts the hits within declarations suppressed with {@link XplatBanSuppression}, if the rules
+   * are reported, as the other matchers are never called there.
+   */
+  @Override
+  public Description matchCompilationUnit(CompilationUnitTree tree, VisitorState state) {
+    if (!ruleReport.isPresent()) {
+      return Description.NO_MATCH;
+    }
+
+    countingSuppressedHits = true;
+    try {
+      new SuppressedHits(state).scan(state.getPath(), null);
+    } finally {
+      countingSuppressedHits = false;
+    }
+    return Description.NO_MATCH;
+  }
+
+  /**
+   * Calls the matchers on every tree within the declarations annotated with {@link
+   * XplatBanSuppression}, including the declarations themselves, like Error Prone would without
+   * the annotation.
+   */
+  private final class SuppressedHits extends TreePathScanner<Void, Void> {
+
+    private final VisitorState state;
+
+    private boolean suppressed;
+
+    SuppressedHits(VisitorState state) {
+      this.state = state;
+    }
+
+    private VisitorState current() {
+      return state.withPath(getCurrentPath());
+    }
+
+    private Void declaration(Symbol symbol, Runnable matcher, Runnable scanChildren) {
+      boolean entered = !suppressed && symbol != null
+          && ASTHelpers.hasAnnotation(symbol, XplatBanSuppression.class, state);
+      suppressed |= entered;
+      try {
+        if (suppressed) {
+          matcher.run();
+        }
+        scanChildren.run();
+      } finally {
+        if (entered) {
+          suppressed = false;
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitClass(ClassTree tree, Void unused) {
+      return declaration(ASTHelpers.getSymbol(tree), () -> matchClass(tree, current()),
+          () -> super.visitClass(tree, null));
+    }
+
+    @Override
+    public Void visitMethod(MethodTree tree, Void unused) {
+      return declaration(ASTHelpers.getSymbol(tree), () -> matchMethod(tree, current()),
+          () -> super.visitMethod(tree, null));
+    }
+
+    @Override
+    public Void visitVariable(VariableTree tree, Void unused) {
+      return declaration(ASTHelpers.getSymbol(tree), () -> matchVariable(tree, current()),
+          () -> super.visitVariable(tree, null));
+    }
+
+    @Override
+    public Void visitMethodInvocation(MethodInvocationTree tree, Void unused) {
+      if (suppressed) {
+        matchMethodInvocation(tree, current());
+      }
+      return super.visitMethodInvocation(tree, null);
+    }
+
+    @Override
+    public Void visitNewClass(NewClassTree tree, Void unused) {
+      if (suppressed) {
+        matchNewClass(tree, current());
+      }
+      return super.visitNewClass(tree, null);
+    }
+
+    @Override
+    public Void visitMemberReference(MemberReferenceTree tree, Void unused) {
+      if (suppressed) {
+        matchMemberReference(tree, current());
+      }
+      return super.visitMemberReference(tree, null);
+    }
+
+    @Override
+    public Void visitMemberSelect(MemberSelectTree tree, Void unused) {
+      if (suppressed) {
+        matchMemberSelect(tree, current());
+      }
+      return super.visitMemberSelect(tree, null);
+    }
+
+    @Override
+    public Void visitIdentifier(IdentifierTree tree, Void unused) {
+      if (suppressed) {
+        matchIdentifier(tree, current());
+      }
+      return super.visitIdentifier(tree, null);
+    }
+  }
+
   @Override
   public Description matchMethodInvocation(MethodInvocationTree tree, VisitorState state) {
+    return match(tree, state, this::checkMethodInvocation);
+  }
+
+  private Description checkMethodInvocation(MethodInvocationTree tree, VisitorState state) {
+    XplatBanConfig bans = config(state);
 
     Symbol methodSymbol = ASTHelpers.getSymbol(tree);
     String methodRecvType = typeToString(ASTHelpers.getReceiverType(tree));
-    String methodType = typeToString(ASTHelpers.getType(tree));
+    BanRuleStats stats = ruleStats(bans, state);
 
     if (methodSymbol != null) {
-
       // checks receiver for banned classes/packages
-      if (classNames.containsKey(methodRecvType)) {
-        return standardMessage(tree, methodRecvType,
-            classNames.get(methodRecvType));
-      } else if (packageNames.containsKey(methodSymbol.packge().toString())) {
-        return standardMessage(tree, methodSymbol.packge().toString(),
-            packageNames.get(methodSymbol.packge().toString()));
+      Ban receiverBan = exactBan(methodRecvType, methodSymbol.packge(), bans, stats);
+      if (receiverBan != null) {
+        return banMessage(tree, receiverBan, bans, state);
       }
 
-      // checks if method was banned directly
-      if (methodNames.containsKey(methodRecvType) && methodNames.get(methodRecvType)
-          .containsKey(methodSymbol.getSimpleName().toString())) {
-        return methodCallMessage(tree, methodSymbol.getSimpleName().toString() + "()",
-            methodRecvType,
-            methodNames.get(methodRecvType).get(methodSymbol.getSimpleName().toString()));
+      // checks if the method was banned for the receiver class or any of its supertypes
+      Ban methodBan = memberBan(methodSymbol,
+          receiverClass(ASTHelpers.getReceiverType(tree), methodSymbol, state), bans, state);
+      if (methodBan != null) {
+        return banMessage(tree, methodBan, bans, state);
       }
 
-      // checks caller for banned classes
-      if (classNames.containsKey(methodType)) {
-        return methodCallMessage(tree, methodSymbol.toString(), methodType,
-            classNames.get(methodType));
-      }
-
-      // checks caller for banned packages
-      for (String pack_name : packageNames.keySet()) {
-        if (methodType.startsWith(pack_name)) {
-          return methodCallMessage(tree, methodSymbol.toString(), pack_name,
-              packageNames.get(pack_name));
-        }
+      // checks caller for banned classes/packages
+      Ban callerBan = typeBan(ASTHelpers.getType(tree), bans, state);
+      if (callerBan != null) {
+        return report(tree, callerBan, bans, state, description -> methodCallMessage(description,
+            methodSymbol.toString(), callerBan.target, callerBan.reason(bans)));
       }
     }
 
     // checks arguments for banned classes/packages
     for (ExpressionTree arg : tree.getArguments()) {
       Symbol argSymbol = ASTHelpers.getSymbol(arg);
-      String argType = typeToString(ASTHelpers.getType(arg));
 
       if (argSymbol != null && methodSymbol != null) {
-        if (classNames.containsKey(argType)) {
-          return standardMessage(tree, methodSymbol.toString(),
-              classNames.get(argType));
-        } else if (packageNames.containsKey(argSymbol.packge().toString())) {
-          return standardMessage(tree, methodSymbol.toString(),
-              packageNames.get(argSymbol.packge().toString()));
+        Ban argBan = typeBan(ASTHelpers.getType(arg), bans, state);
+        if (argBan == null) {
+          argBan = exactBan(null, argSymbol.packge(), bans, stats);
+        }
+
+        if (argBan != null) {
+          String reason = argBan.reason(bans);
+          return report(tree, argBan, bans, state,
+              description -> standardMessage(description, methodSymbol.toString(), reason));
         }
       }
     }
@@ -347,30 +731,40 @@ public class XplatBans extends BugChecker
 
   @Override
   public Description matchNewClass(NewClassTree tree, VisitorState state) {
+    return match(tree, state, this::checkNewClass);
+  }
+
+  private Description checkNewClass(NewClassTree tree, VisitorState state) {
+    XplatBanConfig bans = config(state);
 
     MethodSymbol constructorSymbol = ASTHelpers.getSymbol(tree);
     String constructorType = typeToString(ASTHelpers.getType(tree));
+    BanRuleStats stats = ruleStats(bans, state);
 
     if (constructorSymbol != null) {
       // checks constructor for banned classes/packages
-      if (classNames.containsKey(constructorType)) {
-        return standardMessage(tree, constructorType,
-            classNames.get(constructorType));
-      } else if (packageNames.containsKey(constructorSymbol.packge().toString())) {
-        return standardMessage(tree, constructorSymbol.packge().toString(),
-            packageNames.get(constructorSymbol.packge().toString()));
+      Ban constructorBan = exactBan(constructorType, constructorSymbol.packge(), bans, stats);
+      if (constructorBan != null) {
+        return banMessage(tree, constructorBan, bans, state);
+      }
+
+      // checks type arguments for banned classes/packages
+      Ban typeArgumentBan = typeBan(ASTHelpers.getType(tree), bans, state);
+      if (typeArgumentBan != null) {
+        return banMessage(tree, typeArgumentBan, bans, state);
       }
 
       // checks parameters for banned classes/packages
       for (VarSymbol param : constructorSymbol.getParameters()) {
-        String paramType = typeToString(param.type);
-
-        if (classNames.containsKey(paramType)) {
-          return constructorMessage(tree, constructorSymbol.toString(), paramType,
-              classNames.get(paramType));
-        } else if (packageNames.containsKey(param.packge().toString())) {
-          return constructorMessage(tree, constructorSymbol.toString(),
-              param.packge().toString(), packageNames.get(param.packge().toString()));
+        Ban paramBan = typeBan(param.type, bans, state);
+        if (paramBan == null) {
+          paramBan = exactBan(null, param.packge(), bans, stats);
+        }
+
+        if (paramBan != null) {
+          Ban ban = paramBan;
+          return report(tree, ban, bans, state, description -> constructorMessage(description,
+              constructorSymbol.toString(), ban.target, ban.reason(bans)));
         }
       }
     }
@@ -379,68 +773,125 @@ public class XplatBans extends BugChecker
 
   @Override
   public Description matchVariable(VariableTree tree, VisitorState state) {
-    String varType = typeToString(ASTHelpers.getType(tree));
+    return match(tree, state, this::checkVariable);
+  }
 
-    if (classNames.containsKey(varType)) {
-      return standardMessage(tree, varType, classNames.get(varType));
-    }
+  private Description checkVariable(VariableTree tree, VisitorState state) {
+    XplatBanConfig bans = config(state);
 
-    for (String packName : packageNames.keySet()) {
-      if (varType.startsWith(packName)) {
-        return standardMessage(tree, packName, packageNames.get(packName));
-      }
-    }
+    Ban ban = typeBan(ASTHelpers.getType(tree), bans, state);
 
-    return Description.NO_MATCH;
+    return banMessage(tree, ban, bans, state);
   }
 
   @Override
   public Description matchMethod(MethodTree tree, VisitorState state) {
+    return match(tree, state, this::checkMethod);
+  }
+
+  private Description checkMethod(MethodTree tree, VisitorState state) {
+    XplatBanConfig bans = config(state);
+
     Type type = ASTHelpers.getType(tree);
 
     if (type != null) {
-      String methodType = typeToString(type.getReturnType());
-      if (classNames.containsKey(methodType)) {
-        return standardMessage(tree, methodType, classNames.get(methodType));
-      }
+      Ban ban = typeBan(type.getReturnType(), bans, state);
 
-      for (String packName : packageNames.keySet()) {
-        if (methodType.startsWith(packName)) {
-          return standardMessage(tree, packName, packageNames.get(packName));
-        }
+      if (ban != null) {
+        return banMessage(tree, ban, bans, state);
       }
     }
     return Description.NO_MATCH;
   }
 
-  /** A re-implementation of Files.readString() since it's not available until JDK 11. */
-  private static String readFileAsString(Path path) throws IOException {
-    byte[] ba = Files.readAllBytes(path);
-    return new String(ba, StandardCharsets.UTF_8);
+  @Override
+  public Description matchMemberReference(MemberReferenceTree tree, VisitorState state) {
+    return match(tree, state, this::checkMemberReference);
+  }
+
+  private Description checkMemberReference(MemberReferenceTree tree, VisitorState state) {
+    XplatBanConfig bans = config(state);
+
+    Symbol symbol = ASTHelpers.getSymbol(tree);
+
+    if (symbol == null) {
+      return Description.NO_MATCH;
+    }
+
+    Ban ban = memberBan(symbol,
+        receiverClass(ASTHelpers.getType(tree.getQualifierExpression()), symbol, state), bans,
+        state);
+    if (ban == null) {
+      // checks the qualifier, as in bannedInstance::toString
+      ban = typeBan(ASTHelpers.getType(tree.getQualifierExpression()), bans, state);
+    }
+    return banMessage(tree, ban, bans, state);
+  }
+
+  @Override
+  public Description matchMemberSelect(MemberSelectTree tree, VisitorState state) {
+    return match(tree, state, this::checkMemberSelect);
+  }
+
+  private Description checkMemberSelect(MemberSelectTree tree, VisitorState state) {
+    XplatBanConfig bans = config(state);
+
+    if (state.findEnclosing(ImportTree.class) != null) {
+      return Description.NO_MATCH;
+    }
+
+    // checks class literals, as in Banned.class
+    if (tree.getIdentifier().contentEquals("class")) {
+      return banMessage(tree, typeBan(ASTHelpers.getType(tree), bans, state), bans, state);
+    }
+
+    // checks field accesses, method calls are checked with their invocation
+    Symbol symbol = ASTHelpers.getSymbol(tree);
+    if (symbol instanceof VarSymbol && symbol.getKind().isField()) {
+      return banMessage(tree, memberBan(symbol, symbol.owner, bans, state), bans, state);
+    }
+    return Description.NO_MATCH;
+  }
+
+  @Override
+  public Description matchIdentifier(IdentifierTree tree, VisitorState state) {
+    return match(tree, state, this::checkIdentifier);
   }
 
-  private static String readResourceAsString(String resource) throws IOException {
-    return Resources.toString(Resources.getResource(resource), StandardCharsets.UTF_8);
+  private Description checkIdentifier(IdentifierTree tree, VisitorState state) {
+    XplatBanConfig bans = config(state);
+
+    // checks statically imported and inherited constants
+    Symbol symbol = ASTHelpers.getSymbol(tree);
+
+    if (symbol instanceof VarSymbol && symbol.getKind().isField() && symbol.isStatic()) {
+      return banMessage(tree, memberBan(symbol, symbol.owner, bans, state), bans, state);
+    }
+    return Description.NO_MATCH;
   }
 
-  private static String readResourceAsString(URL url) throws IOException {
-    InputStream inputStream = null;
+  @Override
+  public Description matchClass(ClassTree tree, VisitorState state) {
+    return match(tree, state, this::checkClass);
+  }
 
-    try {
-      URLConnection urlConn = url.openConnection();
-      urlConn.setUseCaches(false);
-      inputStream = urlConn.getInputStream();
-
-      ByteArrayOutputStream baos = new ByteArrayOutputStream();
-      byte[] buf = new byte[8192];
-      int read;
-      while ((read = inputStream.read(buf)) > 0) {
-        baos.write(buf, 0, read);
+  private Description checkClass(ClassTree tree, VisitorState state) {
+    XplatBanConfig bans = config(state);
+
+    // checks the extends and implements clauses for banned classes/packages
+    List<Tree> supertypes = new ArrayList<>();
+    if (tree.getExtendsClause() != null) {
+      supertypes.add(tree.getExtendsClause());
+    }
+    supertypes.addAll(tree.getImplementsClause());
+
+    for (Tree supertype : supertypes) {
+      Ban ban = typeBan(ASTHelpers.getType(supertype), bans, state);
+
+      if (ban != null) {
+        return banMessage(supertype, ban, bans, state);
       }
-      return new String(baos.toByteArray(), StandardCharsets.UTF_8);
-    } finally {
-      inputStream.close();
     }
+    return Description.NO_MATCH;
   }
 }
-
@@ -0,0 +1,70 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import com.google.errorprone.ErrorProneFlags;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.bugpatterns.BugChecker;
+import com.google.errorprone.matchers.Description;
+import com.sun.source.tree.Tree;
+import java.util.function.BiFunction;
+
+/**
+ * The base of the xplat checkers. Each matcher of a checker hands its work to {@link #match}:
+ *
+ * <pre>
+ * public Description matchNewClass(NewClassTree tree, VisitorState state) {
+ *   return match(tree, state, this::checkNewClass);
+ * }
+ * </pre>
+ *
+ * This skips trees that are out of the scope of the {@code .xplatbans.json} files, see {@link
+ * DirectoryBanConfigs#inScope}, and times the call if profiling is on, see {@link CheckerProfile}.
+ * Every diagnostic that is built with {@link #buildDescription} is recorded as well.
+ */
+abstract class XplatChecker extends BugChecker {
+
+  private final CheckerProfile profile;
+
+  XplatChecker(ErrorProneFlags flags) {
+    this.profile = CheckerProfile.forFlags(flags, canonicalName());
+  }
+
+  /**
+   * Calls {@code matcher} on {@code tree}, unless the current tree is out of scope, in which case
+   * it returns NO_MATCH.
+   */
+  final <T extends Tree> Description match(T tree, VisitorState state,
+      BiFunction<T, VisitorState, Description> matcher) {
+    if (!DirectoryBanConfigs.inScope(state)) {
+      return Description.NO_MATCH;
+    }
+    return profile.time(tree, state, matcher);
+  }
+
+  @Override
+  public Description.Builder buildDescription(Tree node) {
+    return buildDescription(node, canonicalName());
+  }
+
+  /**
+   * Returns a description builder for a diagnostic of the given rule of the checker, such as a
+   * rule of the ban config of {@link XplatBans}.
+   */
+  final Description.Builder buildDescription(Tree node, String rule) {
+    profile.diagnostic(node, rule);
+    return super.buildDescription(node);
+  }
+}
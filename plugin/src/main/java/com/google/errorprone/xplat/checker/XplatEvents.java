@@ -0,0 +1,232 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.util.Context;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder events of the xplat checkers, so that their overhead can be correlated with
+ * GC and JIT activity in a recording of the build. All events are disabled by default, and can be
+ * enabled in a JFR configuration by their names, e.g. {@code
+ * -XX:StartFlightRecording:settings=xplat.jfc}:
+ *
+ * <ul>
+ *   <li>{@code com.google.errorprone.xplat.ConfigLoaded}: the ban config of {@link XplatBans} was
+ *   parsed, with the number of bans.
+ *   <li>{@code com.google.errorprone.xplat.UnitAnalysis}: a checker finished with a compilation
+ *   unit, with the number of matcher calls and the time spent in them.
+ *   <li>{@code com.google.errorprone.xplat.Diagnostic}: a checker reported a diagnostic, with the
+ *   rule behind it: the rule of the ban config for {@link XplatBans}, and the checker itself for
+ *   the others.
+ * </ul>
+ *
+ * Unless a recording is running, the checkers do not read the clock for them, and nothing is kept
+ * per compilation unit. Whether one is running is tracked by a {@link FlightRecorderListener}, so
+ * that the checkers only read a field to find out.
+ */
+final class XplatEvents {
+
+  private static final Context.Key<UnitEvents> KEY = new Context.Key<>();
+
+  /**
+   * Looked up once, as checking whether an event is enabled is on the path of every matcher call,
+   * and an event instance would be allocated just to ask.
+   */
+  private static final EventType UNIT_ANALYSIS = EventType.getEventType(UnitAnalysis.class);
+
+  private static final EventType DIAGNOSTIC = EventType.getEventType(Diagnostic.class);
+
+  /** The recordings that are running, of which the listener below is told. */
+  private static final Set<Recording> RUNNING = new HashSet<>();
+
+  private static volatile boolean recording;
+
+  static {
+    FlightRecorder.addListener(new FlightRecorderListener() {
+      @Override
+      public void recorderInitialized(FlightRecorder recorder) {
+        for (Recording running : recorder.getRecordings()) {
+          recordingStateChanged(running);
+        }
+      }
+
+      @Override
+      public void recordingStateChanged(Recording changed) {
+        synchronized (RUNNING) {
+          if (changed.getState() == RecordingState.RUNNING) {
+            RUNNING.add(changed);
+          } else {
+            RUNNING.remove(changed);
+          }
+          recording = !RUNNING.isEmpty();
+        }
+      }
+    });
+  }
+
+  private XplatEvents() {}
+
+  @Name("com.google.errorprone.xplat.ConfigLoaded")
+  @Label("Xplat Ban Config Loaded")
+  @Category({"Error Prone", "Xplat"})
+  static final class ConfigLoaded extends Event {
+
+    @Label("Sources")
+    String sources;
+
+    @Label("Class Bans")
+    int classBans;
+
+    @Label("Package Bans")
+    int packageBans;
+
+    @Label("Method Bans")
+    int methodBans;
+  }
+
+  @Name("com.google.errorprone.xplat.UnitAnalysis")
+  @Label("Xplat Compilation Unit Analysis")
+  @Category({"Error Prone", "Xplat"})
+  static final class UnitAnalysis extends Event {
+
+    @Label("Checker")
+    String checker;
+
+    @Label("File")
+    String file;
+
+    @Label("Matcher Calls")
+    long calls;
+
+    @Label("Time in Matchers")
+    @Timespan(Timespan.NANOSECONDS)
+    long matcherTime;
+  }
+
+  @Name("com.google.errorprone.xplat.Diagnostic")
+  @Label("Xplat Diagnostic")
+  @Category({"Error Prone", "Xplat"})
+  static final class Diagnostic extends Event {
+
+    @Label("Checker")
+    String checker;
+
+    @Label("Rule")
+    String rule;
+
+    @Label("Target")
+    String target;
+
+    @Label("Position")
+    int position;
+  }
+
+  /** Returns whether any JFR recording is running, which may have the events below enabled. */
+  static boolean isRecording() {
+    return recording;
+  }
+
+  /** Returns whether matcher calls should be timed for {@link UnitAnalysis} events. */
+  static boolean unitAnalysisEnabled() {
+    return UNIT_ANALYSIS.isEnabled();
+  }
+
+  /**
+   * Adds a matcher call to the {@link UnitAnalysis} event of a checker and the current compilation
+   * unit. The events of a compilation unit are committed once a checker moves on to the next one,
+   * or when the compilation has finished.
+   */
+  static void matcherCalled(String checker, long nanos, VisitorState state) {
+    UnitEvents events = state.context.get(KEY);
+    if (events == null) {
+      events = new UnitEvents();
+      state.context.put(KEY, events);
+      CompilationHooks.onCompilationFinished(state.context, events::commit);
+    }
+    events.add(checker, nanos, state.getPath().getCompilationUnit());
+  }
+
+  /**
+   * Commits a {@link Diagnostic} event, if enabled, for a diagnostic of {@code rule} about to be
+   * reported.
+   */
+  static void diagnostic(String checker, String rule, Tree tree) {
+    if (!DIAGNOSTIC.isEnabled()) {
+      return;
+    }
+
+    Diagnostic event = new Diagnostic();
+    Symbol symbol = ASTHelpers.getSymbol(tree);
+    event.checker = checker;
+    event.rule = rule;
+    event.target = symbol != null ? symbol.toString() : tree.getKind().toString();
+    event.position = ((JCTree) tree).getStartPosition();
+    event.commit();
+  }
+
+  /** The open {@link UnitAnalysis} events of a compilation, one per checker. */
+  private static final class UnitEvents {
+
+    private final Map<String, UnitAnalysis> events = new HashMap<>();
+
+    private CompilationUnitTree unit;
+
+    synchronized void add(String checker, long nanos, CompilationUnitTree currentUnit) {
+      if (currentUnit != unit) {
+        commit();
+        unit = currentUnit;
+      }
+
+      UnitAnalysis event = events.get(checker);
+      if (event == null) {
+        event = new UnitAnalysis();
+        event.checker = checker;
+        event.file = currentUnit.getSourceFile().getName();
+        event.begin();
+        events.put(checker, event);
+      }
+      event.calls++;
+      event.matcherTime += nanos;
+      event.end();
+    }
+
+    synchronized void commit() {
+      for (UnitAnalysis event : events.values()) {
+        event.commit();
+      }
+      events.clear();
+    }
+  }
+}
@@ -0,0 +1,524 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import com.google.auto.service.AutoService;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.errorprone.ErrorProneFlags;
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.bugpatterns.BugChecker;
+import com.google.errorprone.bugpatterns.BugChecker.ClassTreeMatcher;
+import com.google.errorprone.bugpatterns.BugChecker.CompilationUnitTreeMatcher;
+import com.google.errorprone.bugpatterns.BugChecker.IdentifierTreeMatcher;
+import com.google.errorprone.bugpatterns.BugChecker.MemberReferenceTreeMatcher;
+import com.google.errorprone.bugpatterns.BugChecker.MemberSelectTreeMatcher;
+import com.google.errorprone.bugpatterns.BugChecker.MethodInvocationTreeMatcher;
+import com.google.errorprone.bugpatterns.BugChecker.MethodTreeMatcher;
+import com.google.errorprone.bugpatterns.BugChecker.NewClassTreeMatcher;
+import com.google.errorprone.bugpatterns.BugChecker.VariableTreeMatcher;
+import com.google.errorprone.matchers.Description;
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.LineMap;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.Plugin;
+import com.sun.source.util.SourcePositions;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+import com.sun.tools.javac.api.BasicJavacTask;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.main.JavaCompiler;
+import com.sun.tools.javac.resources.CompilerProperties.Errors;
+import com.sun.tools.javac.resources.CompilerProperties.Notes;
+import com.sun.tools.javac.resources.CompilerProperties.Warnings;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.JCDiagnostic.DiagnosticFlag;
+import com.sun.tools.javac.util.Log;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Runs the ban checkers as a plain javac plugin, without Error Prone's scanner:
+ *
+ * <pre>
+ * javac -Xplugin:Xplat ...
+ * javac -Xplugin:"Xplat Xplat:Checks=XplatBans,LegacyTimeBan XplatBans:JSON=bans.json" ...
+ * </pre>
+ *
+ * Once all the classes of a compilation unit have been analyzed, the matchers of the unit are
+ * called, and then the tree of each class is walked by a single {@link TreePathScanner} that only
+ * calls the matchers the selected checkers implement. Their findings are reported through the
+ * compiler's {@link Log}. This skips the setup and the scanning of all of Error Prone's own
+ * checkers, which the {@code -Xplugin:ErrorProne} route pays for even when they are disabled. The
+ * Error Prone jars are still needed on the processor path, but only as a library.
+ *
+ * <p>The plugin arguments are the same {@code Checker:Option=Value} pairs that are passed with
+ * {@code -XepOpt:} to Error Prone. {@code Xplat:Checks} selects the checkers by name and defaults
+ * to the ban checkers, see {@link #DEFAULT_CHECKS}. Findings are suppressed with the same
+ * annotations and {@code @SuppressWarnings} names as under Error Prone. Suggested fixes are not
+ * applied, but the message of each finding is reported at the severity of its checker.
+ *
+ * <p>With {@code Xplat:DiffBase=REV}, only the classes and class members with lines that changed
+ * since the git revision REV are checked, see {@link ChangedLines}. Git runs in {@code
+ * Xplat:DiffDir}, which defaults to the working directory. Unchanged compilation units, classes and
+ * members are skipped before any matcher is called.
+ */
+@AutoService(Plugin.class)
+public final class XplatPlugin implements Plugin {
+
+  static final String NAME = "Xplat";
+
+  static final ImmutableList<String> DEFAULT_CHECKS =
+      ImmutableList.of("XplatBans", "LegacyTimeBan", "JodaTimeLocal", "JodaTimeObjectParamBan");
+
+  private static final ImmutableMap<String, Function<ErrorProneFlags, BugChecker>> CHECKERS =
+      ImmutableMap.<String, Function<ErrorProneFlags, BugChecker>>builder()
+          .put("J2objcMethodName", J2objcMethodName::new)
+          .put("JodaTimeAllocationInLoop", JodaTimeAllocationInLoop::new)
+          .put("JodaTimeLocal", JodaTimeLocal::new)
+          .put("JodaTimeMigration", JodaTimeMigration::new)
+          .put("JodaTimeObjectParamBan", JodaTimeObjectParamBan::new)
+          .put("LazyInitBan", LazyInitBan::new)
+          .put("LegacyTimeBan", LegacyTimeBan::new)
+          .put("TranslatedCodeSize", TranslatedCodeSize::new)
+          .put("UnnecessaryConcurrentHashMap", UnnecessaryConcurrentHashMap::new)
+          .put("XplatBans", XplatBans::new)
+          .build();
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public void init(JavacTask task, String... args) {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      int equals = arg.indexOf('=');
+      if (equals < 0) {
+        throw new IllegalArgumentException(
+            String.format("Invalid argument '%s' for -Xplugin:%s, expected Checker:Option=Value",
+                arg, NAME));
+      }
+      options.put(arg.substring(0, equals), arg.substring(equals + 1));
+    }
+    ErrorProneFlags flags = ErrorProneFlags.fromMap(options);
+
+    List<String> names = flags.getList(NAME + ":Checks").orElse(DEFAULT_CHECKS);
+    List<BugChecker> checkers = new ArrayList<>();
+    for (String name : names) {
+      Function<ErrorProneFlags, BugChecker> factory = CHECKERS.get(name);
+      if (factory == null) {
+        throw new IllegalArgumentException(
+            String.format("Unknown checker '%s' for -Xplugin:%s, expected one of %s",
+                name, NAME, CHECKERS.keySet()));
+      }
+      checkers.add(factory.apply(flags));
+    }
+
+    Context context = ((BasicJavacTask) task).getContext();
+    Trees trees = Trees.instance(task);
+    Log log = Log.instance(context);
+    Matchers matchers = new Matchers(checkers);
+    ChangedLines changedLines = changedLines(flags);
+    if (changedLines != null) {
+      // The line ranges of classes and methods need their end positions.
+      JavaCompiler.instance(context).genEndPos = true;
+    }
+
+    // The analyzed classes of each compilation unit, until all of its classes are analyzed.
+    Map<CompilationUnitTree, List<TreePath>> analyzed = new HashMap<>();
+
+    task.addTaskListener(new TaskListener() {
+      @Override
+      public void finished(TaskEvent e) {
+        if (e.getKind() != TaskEvent.Kind.ANALYZE || e.getTypeElement() == null) {
+          return;
+        }
+        TreePath path = trees.getPath(e.getTypeElement());
+        if (path == null) {
+          return;
+        }
+
+        CompilationUnitTree unit = e.getCompilationUnit();
+        Path file = null;
+        if (changedLines != null) {
+          file = ChangedLines.realPath(Paths.get(unit.getSourceFile().toUri()));
+          if (!changedLines.contains(file)) {
+            return;
+          }
+        }
+
+        // The matchers of the unit may look at all of its classes, so they wait for the last one.
+        List<TreePath> classes = analyzed.computeIfAbsent(unit, unused -> new ArrayList<>());
+        classes.add(path);
+        if (classes.size() < classCount(unit)) {
+          return;
+        }
+        analyzed.remove(unit);
+
+        JavaFileObject previous = log.useSource(unit.getSourceFile());
+        try {
+          VisitorState state = VisitorState.createForCustomFindingCollection(context,
+              description -> report(log, description));
+          Scanner scanner =
+              new Scanner(matchers, state, new Lines(changedLines, file, unit, trees));
+          scanner.matchUnit(new TreePath(unit));
+          for (TreePath classPath : classes) {
+            scanner.scan(classPath, null);
+          }
+        } finally {
+          log.useSource(previous);
+        }
+      }
+    });
+  }
+
+  /**
+   * Returns the lines that changed since {@code Xplat:DiffBase}, or null if all lines should be
+   * checked. Git runs in {@code Xplat:DiffDir}, which defaults to the working directory.
+   */
+  private static ChangedLines changedLines(ErrorProneFlags flags) {
+    Optional<String> base = flags.get(NAME + ":DiffBase");
+    if (!base.isPresent()) {
+      return null;
+    }
+    Path directory = Paths.get(flags.get(NAME + ":DiffDir").orElse(""));
+    try {
+      return ChangedLines.fromGit(base.get(), directory.toAbsolutePath());
+    } catch (IOException e) {
+      System.err.println(String.format("The lines changed since '%s' could not be found in %s."
+          + " All lines will be checked.", base.get(), directory.toAbsolutePath()));
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  /** Returns the number of classes declared at the top level of a compilation unit. */
+  private static int classCount(CompilationUnitTree unit) {
+    int count = 0;
+    for (Tree declaration : unit.getTypeDecls()) {
+      if (declaration instanceof ClassTree) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Reports a finding like Error Prone does, so that several errors at the same position are all
+   * reported instead of only the first one.
+   */
+  private static void report(Log log, Description description) {
+    String message = description.getMessage();
+    switch (description.severity) {
+      case ERROR:
+        log.error(DiagnosticFlag.MULTIPLE, description.position, Errors.ProcMessager(message));
+        break;
+      case WARNING:
+        log.warning(description.position, Warnings.ProcMessager(message));
+        break;
+      default:
+        log.note(description.position, Notes.ProcMessager(message));
+        break;
+    }
+  }
+
+  /** The selected checkers, sorted by the kinds of tree they match. */
+  private static final class Matchers {
+
+    final List<CompilationUnitTreeMatcher> compilationUnits = new ArrayList<>();
+
+    final List<ClassTreeMatcher> classes = new ArrayList<>();
+
+    final List<MethodTreeMatcher> methods = new ArrayList<>();
+
+    final List<VariableTreeMatcher> variables = new ArrayList<>();
+
+    final List<MethodInvocationTreeMatcher> invocations = new ArrayList<>();
+
+    final List<NewClassTreeMatcher> newClasses = new ArrayList<>();
+
+    final List<MemberReferenceTreeMatcher> memberReferences = new ArrayList<>();
+
+    final List<MemberSelectTreeMatcher> memberSelects = new ArrayList<>();
+
+    final List<IdentifierTreeMatcher> identifiers = new ArrayList<>();
+
+    final List<BugChecker> all;
+
+    Matchers(List<BugChecker> checkers) {
+      this.all = checkers;
+      for (BugChecker checker : checkers) {
+        if (checker instanceof CompilationUnitTreeMatcher) {
+          compilationUnits.add((CompilationUnitTreeMatcher) checker);
+        }
+        if (checker instanceof ClassTreeMatcher) {
+          classes.add((ClassTreeMatcher) checker);
+        }
+        if (checker instanceof MethodTreeMatcher) {
+          methods.add((MethodTreeMatcher) checker);
+        }
+        if (checker instanceof VariableTreeMatcher) {
+          variables.add((VariableTreeMatcher) checker);
+        }
+        if (checker instanceof MethodInvocationTreeMatcher) {
+          invocations.add((MethodInvocationTreeMatcher) checker);
+        }
+        if (checker instanceof NewClassTreeMatcher) {
+          newClasses.add((NewClassTreeMatcher) checker);
+        }
+        if (checker instanceof MemberReferenceTreeMatcher) {
+          memberReferences.add((MemberReferenceTreeMatcher) checker);
+        }
+        if (checker instanceof MemberSelectTreeMatcher) {
+          memberSelects.add((MemberSelectTreeMatcher) checker);
+        }
+        if (checker instanceof IdentifierTreeMatcher) {
+          identifiers.add((IdentifierTreeMatcher) checker);
+        }
+      }
+    }
+  }
+
+  /**
+   * Decides which classes and methods of a compilation unit are checked, based on the lines that
+   * changed.
+   */
+  private static final class Lines {
+
+    private final ChangedLines changedLines;
+
+    private final Path file;
+
+    private final CompilationUnitTree unit;
+
+    private final SourcePositions positions;
+
+    Lines(ChangedLines changedLines, Path file, CompilationUnitTree unit, Trees trees) {
+      this.changedLines = changedLines;
+      this.file = file;
+      this.unit = unit;
+      this.positions = trees.getSourcePositions();
+    }
+
+    /**
+     * Returns whether a class or a member of a class is checked, which is the case if any of its
+     * lines changed, or if all lines are checked.
+     */
+    boolean isChecked(Tree tree) {
+      if (changedLines == null) {
+        return true;
+      }
+      long start = positions.getStartPosition(unit, tree);
+      long end = positions.getEndPosition(unit, tree);
+      if (start == Diagnostic.NOPOS || end == Diagnostic.NOPOS) {
+        return true;
+      }
+      LineMap lineMap = unit.getLineMap();
+      return changedLines.overlaps(file, lineMap.getLineNumber(start),
+          lineMap.getLineNumber(end));
+    }
+  }
+
+  /**
+   * Walks a class and calls the matchers of every checker that is not suppressed at the current
+   * tree. As under Error Prone, a checker suppressed on a declaration is suppressed for all of the
+   * trees inside it, including the declaration itself. Classes and class members that are not
+   * checked are skipped as a whole.
+   */
+  private static final class Scanner extends TreePathScanner<Void, Void> {
+
+    private final Matchers matchers;
+
+    private final VisitorState state;
+
+    private final Lines lines;
+
+    private final Set<BugChecker> suppressed = new HashSet<>();
+
+    Scanner(Matchers matchers, VisitorState state, Lines lines) {
+      this.matchers = matchers;
+      this.state = state;
+      this.lines = lines;
+    }
+
+    /** Calls the matchers of a compilation unit, before any of its classes is scanned. */
+    void matchUnit(TreePath unit) {
+      match(unit, matchers.compilationUnits, (matcher, visitorState) ->
+          matcher.matchCompilationUnit((CompilationUnitTree) unit.getLeaf(), visitorState));
+    }
+
+    @Override
+    public Void visitClass(ClassTree tree, Void unused) {
+      if (isSkippedMember(tree)) {
+        return null;
+      }
+      return declaration(tree, ASTHelpers.getSymbol(tree), matchers.classes,
+          (matcher, visitorState) -> matcher.matchClass(tree, visitorState),
+          () -> super.visitClass(tree, null));
+    }
+
+    @Override
+    public Void visitMethod(MethodTree tree, Void unused) {
+      if (isSkippedMember(tree)) {
+        return null;
+      }
+      return declaration(tree, ASTHelpers.getSymbol(tree), matchers.methods,
+          (matcher, visitorState) -> matcher.matchMethod(tree, visitorState),
+          () -> super.visitMethod(tree, null));
+    }
+
+    @Override
+    public Void visitVariable(VariableTree tree, Void unused) {
+      if (isSkippedMember(tree)) {
+        return null;
+      }
+      return declaration(tree, ASTHelpers.getSymbol(tree), matchers.variables,
+          (matcher, visitorState) -> matcher.matchVariable(tree, visitorState),
+          () -> super.visitVariable(tree, null));
+    }
+
+    @Override
+    public Void visitMethodInvocation(MethodInvocationTree tree, Void unused) {
+      match(matchers.invocations,
+          (matcher, visitorState) -> matcher.matchMethodInvocation(tree, visitorState));
+      return super.visitMethodInvocation(tree, null);
+    }
+
+    @Override
+    public Void visitNewClass(NewClassTree tree, Void unused) {
+      match(matchers.newClasses,
+          (matcher, visitorState) -> matcher.matchNewClass(tree, visitorState));
+      return super.visitNewClass(tree, null);
+    }
+
+    @Override
+    public Void visitMemberReference(MemberReferenceTree tree, Void unused) {
+      match(matchers.memberReferences,
+          (matcher, visitorState) -> matcher.matchMemberReference(tree, visitorState));
+      return super.visitMemberReference(tree, null);
+    }
+
+    @Override
+    public Void visitMemberSelect(MemberSelectTree tree, Void unused) {
+      match(matchers.memberSelects,
+          (matcher, visitorState) -> matcher.matchMemberSelect(tree, visitorState));
+      return super.visitMemberSelect(tree, null);
+    }
+
+    @Override
+    public Void visitIdentifier(IdentifierTree tree, Void unused) {
+      match(matchers.identifiers,
+          (matcher, visitorState) -> matcher.matchIdentifier(tree, visitorState));
+      return super.visitIdentifier(tree, null);
+    }
+
+    /**
+     * Returns whether {@code tree}, the current tree, is a class or a member of a class that is not
+     * checked. Declarations inside methods are checked along with their method.
+     */
+    private boolean isSkippedMember(Tree tree) {
+      TreePath parent = getCurrentPath().getParentPath();
+      boolean member = parent.getLeaf() instanceof ClassTree
+          || parent.getLeaf() instanceof CompilationUnitTree;
+      return member && !lines.isChecked(tree);
+    }
+
+    /**
+     * Suppresses the checkers that are suppressed on the symbol of a declaration, matches the
+     * declaration and scans its children, and lifts the suppressions again.
+     */
+    private <M> Void declaration(Tree tree, Symbol symbol, List<M> declarationMatchers,
+        BiFunction<M, VisitorState, Description> matchFunction, Runnable scanChildren) {
+      List<BugChecker> added = new ArrayList<>();
+      if (symbol != null) {
+        for (BugChecker checker : matchers.all) {
+          if (!suppressed.contains(checker) && isSuppressed(checker, symbol)) {
+            suppressed.add(checker);
+            added.add(checker);
+          }
+        }
+      }
+      try {
+        match(declarationMatchers, matchFunction);
+        scanChildren.run();
+      } finally {
+        suppressed.removeAll(added);
+      }
+      return null;
+    }
+
+    private boolean isSuppressed(BugChecker checker, Symbol symbol) {
+      if (checker.supportsSuppressWarnings() && checker.isSuppressed(symbol)) {
+        return true;
+      }
+      for (Class<? extends Annotation> annotation : checker.customSuppressionAnnotations()) {
+        if (ASTHelpers.hasAnnotation(symbol, annotation, state)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private <M> void match(List<M> kindMatchers,
+        BiFunction<M, VisitorState, Description> matchFunction) {
+      match(getCurrentPath(), kindMatchers, matchFunction);
+    }
+
+    private <M> void match(TreePath path, List<M> kindMatchers,
+        BiFunction<M, VisitorState, Description> matchFunction) {
+      if (kindMatchers.isEmpty()) {
+        return;
+      }
+      VisitorState visitorState = state.withPath(path);
+      for (M matcher : kindMatchers) {
+        if (suppressed.contains(matcher)) {
+          continue;
+        }
+        Description description = matchFunction.apply(matcher, visitorState);
+        if (description != null && description != Description.NO_MATCH) {
+          visitorState.reportMatch(description);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,122 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import com.google.common.collect.ImmutableList;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link ChangedLines}.
+ */
+@RunWith(JUnit4.class)
+public class ChangedLinesTest {
+
+  private static final Path ROOT = Paths.get("/repo");
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void parse() {
+    ChangedLines lines = ChangedLines.parse(ROOT, String.join("\n",
+        "diff --git a/src/Foo.java b/src/Foo.java",
+        "index 1111111..2222222 100644",
+        "--- a/src/Foo.java",
+        "+++ b/src/Foo.java",
+        "@@ -3 +3,2 @@ class Foo {",
+        "-  int a;",
+        "+  int b;",
+        "+  int c;",
+        "@@ -10,2 +11,0 @@ class Foo {",
+        "-  int d;",
+        "-  int e;",
+        "diff --git a/src/Gone.java b/src/Gone.java",
+        "deleted file mode 100644",
+        "--- a/src/Gone.java",
+        "+++ /dev/null",
+        "@@ -1 +0,0 @@",
+        "-class Gone {}"),
+        ImmutableList.of("src/New.java"));
+
+    Path foo = ROOT.resolve("src/Foo.java");
+    assertThat(lines.contains(foo)).isTrue();
+    assertThat(lines.overlaps(foo, 1, 2)).isFalse();
+    assertThat(lines.overlaps(foo, 4, 4)).isTrue();
+    assertThat(lines.overlaps(foo, 5, 10)).isFalse();
+    // only lines were removed here, so the lines around the removal count as changed
+    assertThat(lines.overlaps(foo, 11, 11)).isTrue();
+    assertThat(lines.overlaps(foo, 13, 20)).isFalse();
+
+    assertThat(lines.contains(ROOT.resolve("src/Gone.java"))).isFalse();
+    assertThat(lines.overlaps(ROOT.resolve("src/New.java"), 1000, 1000)).isTrue();
+  }
+
+  @Test
+  public void parseWithoutPrefix() {
+    // what git prints with diff.noprefix=true, unless the prefixes are given explicitly
+    ChangedLines lines = ChangedLines.parse(ROOT, String.join("\n",
+        "diff --git src/Foo.java src/Foo.java",
+        "--- src/Foo.java",
+        "+++ src/Foo.java",
+        "@@ -3 +3 @@ class Foo {",
+        "-  int a;",
+        "+  int b;"),
+        ImmutableList.of());
+
+    assertThat(lines.contains(ROOT.resolve("src/Foo.java"))).isFalse();
+  }
+
+  @Test
+  public void fromGitIgnoresPrefixConfig() throws Exception {
+    for (String config : new String[] {"diff.noprefix", "diff.mnemonicPrefix"}) {
+      Path repo = temporaryFolder.newFolder().toPath().toRealPath();
+      Path file = repo.resolve("Foo.java");
+      Files.write(file, ImmutableList.of("class Foo {", "  int a;", "}"));
+      git(repo, "init", "-q");
+      git(repo, "config", config, "true");
+      git(repo, "add", ".");
+      git(repo, "-c", "user.name=Test", "-c", "user.email=test@example.com", "commit", "-q",
+          "-m", "Initial commit");
+      Files.write(file, ImmutableList.of("class Foo {", "  int b;", "}"));
+
+      ChangedLines lines = ChangedLines.fromGit("HEAD", repo);
+
+      assertWithMessage(config).that(lines.overlaps(file, 2, 2)).isTrue();
+      assertWithMessage(config).that(lines.overlaps(file, 1, 1)).isFalse();
+    }
+  }
+
+  private static void git(Path directory, String... args) throws Exception {
+    Process process = new ProcessBuilder(ImmutableList.<String>builder()
+        .add("git").add(args).build())
+        .directory(directory.toFile())
+        .redirectErrorStream(true)
+        .start();
+    String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+    assertWithMessage("git %s: %s", String.join(" ", args), output)
+        .that(process.waitFor()).isEqualTo(0);
+  }
+}
@@ -0,0 +1,98 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.CompilationTestHelper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link CheckerProfile}.
+ */
+@RunWith(JUnit4.class)
+public class CheckerProfileTest {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void report() throws IOException, JSONException {
+    Path report = temporaryFolder.getRoot().toPath().resolve("profile.jsonl");
+
+    CompilationTestHelper.newInstance(LegacyTimeBan.class, getClass())
+        .addSourceFile("LegacyTimeBanNegativeCases.java")
+        .setArgs(ImmutableList.of(
+            "-XepOpt:XplatProfile:Report=" + report,
+            "-XepOpt:XplatProfile:TopN=2"))
+        .doTest();
+
+    List<String> lines = Files.readAllLines(report, StandardCharsets.UTF_8);
+    assertThat(lines).hasSize(4);
+    assertThat(new JSONObject(lines.get(0)).getString("kind")).isEqualTo("compilation");
+
+    JSONObject checker = new JSONObject(lines.get(1));
+    assertThat(checker.getString("kind")).isEqualTo("checker");
+    assertThat(checker.getString("checker")).isEqualTo("LegacyTimeBan");
+    assertThat(checker.getLong("calls")).isGreaterThan(0L);
+    assertThat(checker.getLong("p99Nanos")).isAtLeast(checker.getLong("p50Nanos"));
+
+    JSONArray units = new JSONObject(lines.get(2)).getJSONArray("units");
+    assertThat(units.length()).isEqualTo(1);
+    assertThat(units.getJSONObject(0).getString("file"))
+        .endsWith("LegacyTimeBanNegativeCases.java");
+
+    JSONArray methods = new JSONObject(lines.get(3)).getJSONArray("methods");
+    assertThat(methods.length()).isEqualTo(2);
+    assertThat(methods.getJSONObject(0).getString("method"))
+        .startsWith("com.google.errorprone.xplat.checker.testdata.LegacyTimeBanNegativeCases.");
+  }
+
+  @Test
+  public void reportsOfLaterCompilationsAreAppended() throws IOException, JSONException {
+    Path report = temporaryFolder.getRoot().toPath().resolve("profile.jsonl");
+
+    // As in an incremental build, which only compiles the changed sources again.
+    for (String source : new String[] {"LegacyTimeBanNegativeCases.java",
+        "LegacyTimeBanPositiveCases.java"}) {
+      CompilationTestHelper.newInstance(LegacyTimeBan.class, getClass())
+          .addSourceFile(source)
+          .setArgs(ImmutableList.of("-XepOpt:XplatProfile:Report=" + report))
+          .doTest();
+    }
+
+    List<String> lines = Files.readAllLines(report, StandardCharsets.UTF_8);
+    assertThat(lines).hasSize(8);
+    assertThat(new JSONObject(lines.get(0)).getString("kind")).isEqualTo("compilation");
+    assertThat(new JSONObject(lines.get(4)).getString("kind")).isEqualTo("compilation");
+    assertThat(new JSONObject(lines.get(2)).getJSONArray("units").getJSONObject(0)
+        .getString("file")).endsWith("LegacyTimeBanNegativeCases.java");
+    assertThat(new JSONObject(lines.get(6)).getJSONArray("units").getJSONObject(0)
+        .getString("file")).endsWith("LegacyTimeBanPositiveCases.java");
+  }
+}
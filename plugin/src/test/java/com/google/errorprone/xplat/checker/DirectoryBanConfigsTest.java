@@ -0,0 +1,264 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for the {@code .xplatbans.json} files of {@link XplatBans}, which need sources on
+ * disk, so they are compiled with {@code -Xplugin:Xplat} instead of a {@code
+ * CompilationTestHelper}.
+ */
+@RunWith(JUnit4.class)
+public class DirectoryBanConfigsTest {
+
+  private static final String USES_RANDOM =
+      "class %s { Object random() { return new java.util.Random(); } }";
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path root;
+
+  @Before
+  public void setUp() throws IOException {
+    root = temporaryFolder.newFolder("project").toPath();
+    write(".xplatbans.json", "{\"root\": true}");
+  }
+
+  @Test
+  public void bansAreInheritedBySubdirectories() throws IOException {
+    write("shared/.xplatbans.json",
+        "{\"classes\": {\"java.util.Random\": \"it is not deterministic.\"}}");
+    File shared = writeClass("shared/a/Shared.java", "Shared");
+    File server = writeClass("server/Server.java", "Server");
+
+    List<String> errors = compile(shared, server);
+
+    assertThat(errors).hasSize(1);
+    assertThat(errors.get(0)).startsWith("Shared.java:1: ");
+    assertThat(errors.get(0)).contains("java.util.Random has been banned due to it is not");
+  }
+
+  @Test
+  public void methodBansOfSeveralFilesAreMerged() throws IOException {
+    write(".xplatbans.json",
+        "{\"root\": true, \"methods\": {\"java.util.Random\": {\"nextInt\": \"outer.\"}}}");
+    write("inner/.xplatbans.json",
+        "{\"methods\": {\"java.util.Random\": {\"nextLong\": \"inner.\"}}}");
+    File both = write("inner/Both.java",
+        "class Both {\n"
+            + "  int i = new java.util.Random().nextInt();\n"
+            + "  long l = new java.util.Random().nextLong();\n"
+            + "}\n");
+
+    List<String> errors = compile(both);
+
+    assertThat(errors).hasSize(2);
+    assertThat(errors.get(0)).startsWith("Both.java:2: ");
+    assertThat(errors.get(0)).contains("Use of nextInt() is not allowed, as java.util.Random has"
+        + " been banned due to outer.");
+    assertThat(errors.get(1)).startsWith("Both.java:3: ");
+    assertThat(errors.get(1)).contains("Use of nextLong() is not allowed, as java.util.Random has"
+        + " been banned due to inner.");
+  }
+
+  @Test
+  public void rootStopsTheLookup() throws IOException {
+    write(".xplatbans.json",
+        "{\"root\": true, \"classes\": {\"java.util.Random\": \"outer.\"}}");
+    write("module/.xplatbans.json", "{\"root\": true}");
+
+    assertThat(compile(writeClass("module/Module.java", "Module"))).isEmpty();
+    assertThat(compile(writeClass("Outer.java", "Outer"))).hasSize(1);
+  }
+
+  @Test
+  public void excludedFilesAreSkipped() throws IOException {
+    write(".xplatbans.json",
+        "{\"root\": true,"
+            + " \"exclude\": {\"paths\": [\"**/jvm/**\"], \"packages\": [\"com.example.server\"]},"
+            + " \"classes\": {\"java.util.Random\": \"\"}}");
+    File jvm = writeClass("src/jvm/Jvm.java", "Jvm");
+    File server = write("src/server/Server.java",
+        "package com.example.server.impl; " + String.format(USES_RANDOM, "Server"));
+    File shared = write("src/shared/Shared.java",
+        "package com.example.serverless; " + String.format(USES_RANDOM, "Shared"));
+
+    List<String> errors = compile(jvm, server, shared);
+
+    assertThat(errors).hasSize(1);
+    assertThat(errors.get(0)).startsWith("Shared.java:1: ");
+  }
+
+  @Test
+  public void innerFilesNarrowTheScope() throws IOException {
+    write(".xplatbans.json",
+        "{\"root\": true, \"include\": {\"paths\": [\"shared/**\"]},"
+            + " \"classes\": {\"java.util.Random\": \"\"}}");
+    write("shared/.xplatbans.json", "{\"include\": {\"packages\": [\"com.example.web\"]}}");
+    File web = write("shared/Web.java",
+        "package com.example.web; " + String.format(USES_RANDOM, "Web"));
+    File ios = write("shared/Ios.java",
+        "package com.example.ios; " + String.format(USES_RANDOM, "Ios"));
+    File other = writeClass("other/Other.java", "Other");
+
+    List<String> errors = compile(web, ios, other);
+
+    assertThat(errors).hasSize(1);
+    assertThat(errors.get(0)).startsWith("Web.java:1: ");
+  }
+
+  @Test
+  public void targetsAreEnabledPerDirectory() throws IOException {
+    write(".xplatbans.json",
+        "{\"root\": true, \"targets\": {"
+            + "\"ios\": {\"classes\": {\"java.util.Random\": \"\"}},"
+            + " \"web\": {\"classes\": {\"java.util.Random\": \"\"}}}}");
+    write("ios/.xplatbans.json", "{\"enabledTargets\": [\"ios\"]}");
+    write("server/.xplatbans.json", "{\"enabledTargets\": []}");
+    File shared = writeClass("Shared.java", "Shared");
+    File ios = writeClass("ios/Ios.java", "Ios");
+    File server = writeClass("server/Server.java", "Server");
+
+    List<String> errors = compile(shared, ios, server);
+
+    assertThat(errors).hasSize(2);
+    assertThat(errors.get(0)).startsWith("Shared.java:1: ");
+    assertThat(errors.get(0)).contains("(targets: ios, web)");
+    assertThat(errors.get(1)).startsWith("Ios.java:1: ");
+    assertThat(errors.get(1)).contains("(targets: ios)");
+  }
+
+  @Test
+  public void generatedClassesAreSkipped() throws IOException {
+    write(".xplatbans.json",
+        "{\"root\": true, \"exclude\": {\"generated\": true},"
+            + " \"classes\": {\"java.util.Random\": \"\"}}");
+    write("Generated.java", "@interface Generated {}");
+    File generated = write("Gen.java", "@Generated " + String.format(USES_RANDOM, "Gen"));
+
+    assertThat(compile(generated, root.resolve("Generated.java").toFile())).isEmpty();
+    assertThat(compile(writeClass("Handwritten.java", "Handwritten"))).hasSize(1);
+  }
+
+  @Test
+  public void scopeAppliesToAllCheckers() throws IOException {
+    write(".xplatbans.json",
+        "{\"root\": true, \"exclude\": {\"paths\": [\"**/jvm/**\"], \"generated\": true}}");
+    write("Generated.java", "@interface Generated {}");
+    String usesDate = "class %s { Object now() { return new java.util.Date(); } }";
+    File jvm = write("src/jvm/Jvm.java", String.format(usesDate, "Jvm"));
+    File generated = write("Gen.java",
+        "@Generated class Gen { class Nested { Object now() { return new java.util.Date(); } } }");
+    File shared = write("Shared.java", String.format(usesDate, "Shared"));
+
+    List<String> errors = compile("LegacyTimeBan", jvm, generated, shared,
+        root.resolve("Generated.java").toFile());
+
+    assertThat(errors).isNotEmpty();
+    for (String error : errors) {
+      assertThat(error).startsWith("Shared.java:1: ");
+    }
+  }
+
+  @Test
+  public void changedFilesAreReread() throws IOException {
+    File source = writeClass("Source.java", "Source");
+    assertThat(compile(source)).isEmpty();
+
+    // The size differs, so the change is seen even within the resolution of the file times.
+    write(".xplatbans.json", "{\"root\": true, \"classes\": {\"java.util.Random\": \"\"}}");
+    assertThat(compile(source)).hasSize(1);
+  }
+
+  @Test
+  public void replacedFilesAreEvicted() throws IOException {
+    File source = writeClass("Source.java", "Source");
+    write(".xplatbans.json", "{\"root\": true, \"classes\": {\"java.util.Random\": \"a\"}}");
+    assertThat(compile(source)).hasSize(1);
+    int merged = DirectoryBanConfigs.mergedCount();
+
+    for (String reason : new String[] {"ab", "abc", "abcd"}) {
+      write(".xplatbans.json",
+          "{\"root\": true, \"classes\": {\"java.util.Random\": \"" + reason + "\"}}");
+      assertThat(compile(source).get(0)).contains("banned due to " + reason);
+    }
+
+    assertThat(DirectoryBanConfigs.mergedCount()).isEqualTo(merged);
+  }
+
+  private File writeClass(String path, String className) throws IOException {
+    return write(path, String.format(USES_RANDOM, className));
+  }
+
+  private File write(String path, String content) throws IOException {
+    Path file = root.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    return file.toFile();
+  }
+
+  /** Returns the errors of {@code XplatBans} as {@code File.java:line: message}. */
+  private List<String> compile(File... sources) throws IOException {
+    return compile("XplatBans", sources);
+  }
+
+  /** Returns the errors of the given checkers as {@code File.java:line: message}. */
+  private List<String> compile(String checks, File... sources) throws IOException {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    try (StandardJavaFileManager fileManager =
+        compiler.getStandardFileManager(diagnostics, Locale.ROOT, null)) {
+      compiler.getTask(null, fileManager, diagnostics,
+          ImmutableList.of(
+              "-Xplugin:" + XplatPlugin.NAME + " Xplat:Checks=" + checks,
+              "-classpath", System.getProperty("java.class.path"),
+              "-d", temporaryFolder.newFolder().getPath()),
+          null, fileManager.getJavaFileObjectsFromFiles(ImmutableList.copyOf(sources))).call();
+    }
+
+    List<String> errors = new ArrayList<>();
+    for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+      if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+        errors.add(new File(diagnostic.getSource().getName()).getName() + ":"
+            + diagnostic.getLineNumber() + ": " + diagnostic.getMessage(Locale.ROOT));
+      }
+    }
+    return errors;
+  }
+}
@@ -14,6 +14,7 @@
 
 package com.google.errorprone.xplat.checker;
 
+import static com.google.common.truth.Truth.assertThat;
 import static com.google.errorprone.BugCheckerRefactoringTestHelper.TestMode.TEXT_MATCH;
 
 import com.google.common.collect.ImmutableList;
@@ -22,8 +23,19 @@ import com.google.errorprone.CompilationTestHelper;
 
 
 import com.google.errorprone.ErrorProneFlags;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import javax.tools.ToolProvider;
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
@@ -33,6 +45,9 @@ import org.junit.runners.JUnit4;
 @RunWith(JUnit4.class)
 public class J2objcMethodNameTest {
 
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   private CompilationTestHelper compilationHelper;
 
   @Before
@@ -72,6 +87,33 @@ public class J2objcMethodNameTest {
         .doTest();
   }
 
+  @Test
+  public void checkNameManglePackageOnClasspath() throws IOException {
+    // As in incremental builds, where the package-info is not compiled again.
+    Path packageInfo = temporaryFolder.newFolder().toPath().resolve("package-info.java");
+    Files.write(packageInfo, ImmutableList.of(
+        "@ObjectiveCName(\"XPT\")",
+        "package com.google.errorprone.xplat.checker.testdata;",
+        "import com.google.j2objc.annotations.ObjectiveCName;"));
+    Path classes = temporaryFolder.newFolder().toPath();
+    assertThat(ToolProvider.getSystemJavaCompiler().run(null, null, null,
+        "-classpath", System.getProperty("java.class.path"), "-d", classes.toString(),
+        packageInfo.toString())).isEqualTo(0);
+
+    compilationHelper.addSourceFile("J2objcMethodNameManglePackage.java")
+        .setArgs(ImmutableList.of("-XepOpt:J2ObjCMethodName:MethodNameLength=-1",
+            "-classpath", classes + File.pathSeparator + System.getProperty("java.class.path")))
+        .doTest();
+  }
+
+  @Test
+  public void checkAllMethods() {
+    compilationHelper.addSourceFile("J2objcMethodNameAllMethods.java")
+        .setArgs(ImmutableList.of("-XepOpt:J2ObjCMethodName:MethodNameLength=60",
+            "-XepOpt:J2ObjCMethodName:AllMethods=true"))
+        .doTest();
+  }
+
   @Test
   public void refactorManyParams() {
     BugCheckerRefactoringTestHelper
@@ -209,4 +251,116 @@ public class J2objcMethodNameTest {
         .doTest();
   }
 
+  @Test
+  public void refactorMethodSameNameSkipsTakenNames() {
+    BugCheckerRefactoringTestHelper
+        .newInstance(new J2objcMethodName(
+            ErrorProneFlags.builder()
+                .putFlag("J2ObjCMethodName:MethodNameLength", "10")
+                .build()), getClass())
+        .addInputLines("Test.java",
+            "import com.google.j2objc.annotations.ObjectiveCName;",
+            "import java.util.HashMap;",
+            "import java.util.Set;",
+            "class Test {",
+            "  public static HashMap<Object, Set<String>> hello(HashMap<Object, Set<String>> x) {\n",
+            "    return x;",
+            "  }",
+            "  public static HashMap<Object, Set<String>> hello() {\n",
+            "    return new HashMap<>();",
+            "  }",
+            "  @ObjectiveCName(\"hello2\")",
+            "  private static void hi() {\n",
+            "  }",
+            "}")
+        .addOutputLines("Test.java",
+            "import com.google.j2objc.annotations.ObjectiveCName;",
+            "import java.util.HashMap;",
+            "import java.util.Set;",
+            "class Test {",
+            "  @ObjectiveCName(\"hello\")",
+            "  public static HashMap<Object, Set<String>> hello(HashMap<Object, Set<String>> x) {\n",
+            "    return x;",
+            "  }",
+            "  @ObjectiveCName(\"hello3\")",
+            "  public static HashMap<Object, Set<String>> hello() {\n",
+            "    return new HashMap<>();",
+            "  }",
+            "  @ObjectiveCName(\"hello2\")",
+            "  private static void hi() {\n",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  public void refactorSameNameAcrossCompilations() {
+    J2objcMethodName checker = new J2objcMethodName(
+        ErrorProneFlags.builder()
+            .putFlag("J2ObjCMethodName:MethodNameLength", "10")
+            .build());
+
+    // Suggested names must not depend on earlier compilations that used the same checker.
+    for (int i = 0; i < 2; i++) {
+      BugCheckerRefactoringTestHelper
+          .newInstance(checker, getClass())
+          .addInputLines("Test.java",
+              "import java.util.HashMap;",
+              "import java.util.Set;",
+              "class Test {",
+              "  public static HashMap<Object, Set<String>> hello(HashMap<Object, Set<String>> x) {\n",
+              "    return x;",
+              "  }",
+              "}")
+          .addOutputLines("Test.java",
+              "import com.google.j2objc.annotations.ObjectiveCName;",
+              "import java.util.HashMap;",
+              "import java.util.Set;",
+              "class Test {",
+              "  @ObjectiveCName(\"hello\")",
+              "  public static HashMap<Object, Set<String>> hello(HashMap<Object, Set<String>> x) {\n",
+              "    return x;",
+              "  }",
+              "}")
+          .doTest();
+    }
+  }
+
+  @Test
+  public void report() throws IOException, JSONException {
+    Path report = temporaryFolder.getRoot().toPath().resolve("report.jsonl");
+
+    compilationHelper
+        .addSourceLines("Test.java",
+            "package com.google.test;",
+            "public class Test {",
+            "  public static void hello(int x) {}",
+            "  public static class Nested {",
+            "    public static void hi() {}",
+            "  }",
+            "}")
+        .setArgs(ImmutableList.of(
+            "-XepOpt:J2ObjCMethodName:Report=" + report,
+            "-XepOpt:J2ObjCMethodName:ReportTopOffenders=1"))
+        .doTest();
+
+    List<String> lines = Files.readAllLines(report, StandardCharsets.UTF_8);
+    assertThat(lines).hasSize(6);
+    assertThat(lines.get(0)).contains("\"kind\":\"compilation\"");
+    assertThat(lines.get(1)).contains("\"name\":\"ComGoogleTestTest\"");
+    assertThat(lines.get(2)).contains("\"name\":\"ComGoogleTestTest_helloWithInt_\"");
+    assertThat(lines.get(3)).contains("\"name\":\"ComGoogleTestTest_Nested\"");
+    assertThat(lines.get(4)).contains("\"name\":\"ComGoogleTestTest_Nested_hi\"");
+
+    JSONObject summary = new JSONObject(lines.get(5));
+    assertThat(summary.getString("kind")).isEqualTo("summary");
+    assertThat(summary.getJSONObject("method").getInt("count")).isEqualTo(2);
+    assertThat(summary.getJSONObject("class").getInt("count")).isEqualTo(2);
+    // Each distinct name is counted with its terminating NUL.
+    assertThat(summary.getLong("estimatedBytes")).isEqualTo(18 + 32 + 25 + 28);
+    assertThat(summary.getJSONArray("topOffenders").length()).isEqualTo(1);
+    assertThat(summary.getJSONArray("topOffenders").getJSONObject(0).getString("name"))
+        .isEqualTo("ComGoogleTestTest_helloWithInt_");
+  }
+
 }
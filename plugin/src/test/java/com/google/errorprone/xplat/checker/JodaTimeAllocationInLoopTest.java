@@ -0,0 +1,227 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import com.google.errorprone.BugCheckerRefactoringTestHelper;
+import com.google.errorprone.CompilationTestHelper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link JodaTimeAllocationInLoop}.
+ */
+@RunWith(JUnit4.class)
+public class JodaTimeAllocationInLoopTest {
+
+  private CompilationTestHelper compilationHelper;
+
+  @Before
+  public void setup() {
+    compilationHelper = CompilationTestHelper
+        .newInstance(JodaTimeAllocationInLoop.class, getClass());
+  }
+
+  @Test
+  public void positiveCases() {
+    compilationHelper.addSourceFile("JodaTimeAllocationInLoopPositiveCases.java").doTest();
+  }
+
+  @Test
+  public void negativeCases() {
+    compilationHelper.addSourceFile("JodaTimeAllocationInLoopNegativeCases.java").doTest();
+  }
+
+  @Test
+  public void refactorOutermostLoop() {
+    BugCheckerRefactoringTestHelper.newInstance(new JodaTimeAllocationInLoop(), getClass())
+        .addInputLines("Test.java",
+            "import java.util.List;",
+            "import org.joda.time.LocalDateTime;",
+            "import org.joda.time.DateTimeZone;",
+            "class Test {",
+            "  void print(List<List<LocalDateTime>> days, String id) {",
+            "    outer:",
+            "    for (List<LocalDateTime> day : days) {",
+            "      for (LocalDateTime time : day) {",
+            "        System.out.println(time.toDateTime(DateTimeZone.forID(id)).getMillis());",
+            "        System.out.println(DateTimeZone.forID(\"UTC\"));",
+            "      }",
+            "    }",
+            "  }",
+            "}")
+        .addOutputLines("Test.java",
+            "import java.util.List;",
+            "import org.joda.time.LocalDateTime;",
+            "import org.joda.time.DateTimeZone;",
+            "class Test {",
+            "  void print(List<List<LocalDateTime>> days, String id) {",
+            "    DateTimeZone zone = DateTimeZone.forID(\"UTC\");",
+            "    outer:",
+            "    for (List<LocalDateTime> day : days) {",
+            "      for (LocalDateTime time : day) {",
+            "        System.out.println(time.toDateTime(DateTimeZone.forID(id)).getMillis());",
+            "        System.out.println(zone);",
+            "      }",
+            "    }",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  public void refactorLoopVariant() {
+    BugCheckerRefactoringTestHelper.newInstance(new JodaTimeAllocationInLoop(), getClass())
+        .addInputLines("Test.java",
+            "import java.util.List;",
+            "import org.joda.time.DateTime;",
+            "import org.joda.time.DateTimeZone;",
+            "class Test {",
+            "  void print(List<Long> millis, String id) {",
+            "    for (long instant : millis) {",
+            "      System.out.println(new DateTime(instant, DateTimeZone.forID(id)));",
+            "      System.out.println(new DateTime(DateTimeZone.forID(id)));",
+            "      id = id + \"/\";",
+            "      System.out.println(DateTimeZone.forID(id));",
+            "    }",
+            "  }",
+            "}")
+        .expectUnchanged()
+        .doTest();
+  }
+
+  @Test
+  public void refactorMutable() {
+    BugCheckerRefactoringTestHelper.newInstance(new JodaTimeAllocationInLoop(), getClass())
+        .addInputLines("Test.java",
+            "import java.util.List;",
+            "import org.joda.time.DateTime;",
+            "import org.joda.time.MutableDateTime;",
+            "class Test {",
+            "  void print(List<Integer> days, long millis) {",
+            "    for (int day : days) {",
+            "      MutableDateTime time = new MutableDateTime(millis);",
+            "      time.addDays(day);",
+            "      System.out.println(new DateTime(new MutableDateTime(millis)));",
+            "    }",
+            "  }",
+            "}")
+        .expectUnchanged()
+        .doTest();
+  }
+
+  @Test
+  public void mutableIsStillReported() {
+    compilationHelper.addSourceLines("Test.java",
+            "import java.util.List;",
+            "import org.joda.time.MutableDateTime;",
+            "class Test {",
+            "  void print(List<Integer> days, long millis) {",
+            "    for (int day : days) {",
+            "      // BUG: Diagnostic matches: NO_FIX",
+            "      new MutableDateTime(millis).addDays(day);",
+            "    }",
+            "  }",
+            "}")
+        .expectErrorMessage("NO_FIX", message ->
+            message.contains("allocates on every iteration") && !message.contains("computed once"))
+        .doTest();
+  }
+
+  @Test
+  public void fixThatMayThrowIsPointedOut() {
+    compilationHelper.addSourceLines("Test.java",
+            "import java.util.List;",
+            "import org.joda.time.DateTime;",
+            "import org.joda.time.DateTimeZone;",
+            "class Test {",
+            "  void print(List<String> names, String id, long millis) {",
+            "    for (String name : names) {",
+            "      // BUG: Diagnostic matches: MAY_THROW",
+            "      System.out.println(name + DateTimeZone.forID(id));",
+            "      // BUG: Diagnostic matches: CANNOT_THROW",
+            "      System.out.println(name + new DateTime(millis, DateTimeZone.getDefault()));",
+            "    }",
+            "  }",
+            "}")
+        .expectErrorMessage("MAY_THROW", message -> message.contains("computed once")
+            && message.contains("even if the loop does not run"))
+        .expectErrorMessage("CANNOT_THROW", message -> message.contains("computed once")
+            && !message.contains("even if the loop does not run"))
+        .doTest();
+  }
+
+  @Test
+  public void refactorLoopInBranch() {
+    BugCheckerRefactoringTestHelper.newInstance(new JodaTimeAllocationInLoop(), getClass())
+        .addInputLines("Test.java",
+            "import java.util.List;",
+            "import org.joda.time.DateTimeZone;",
+            "class Test {",
+            "  void print(List<String> ids, String id, boolean utc) {",
+            "    if (utc)",
+            "      for (String other : ids) {",
+            "        System.out.println(DateTimeZone.forID(id));",
+            "      }",
+            "    else",
+            "      while (ids.isEmpty()) {",
+            "        System.out.println(DateTimeZone.forID(id));",
+            "      }",
+            "    for (String first : ids)",
+            "      for (String second : ids) {",
+            "        System.out.println(DateTimeZone.forID(first));",
+            "      }",
+            "  }",
+            "}")
+        .expectUnchanged()
+        .doTest();
+  }
+
+  @Test
+  public void refactorStreamLambda() {
+    BugCheckerRefactoringTestHelper.newInstance(new JodaTimeAllocationInLoop(), getClass())
+        .addInputLines("Test.java",
+            "import java.util.List;",
+            "import java.util.stream.Collectors;",
+            "import org.joda.time.LocalDate;",
+            "import org.joda.time.DateTimeZone;",
+            "class Test {",
+            "  List<Integer> days(List<Integer> offsets, long millis) {",
+            "    DateTimeZone zone = DateTimeZone.UTC;",
+            "    List<Integer> days = offsets.stream()",
+            "        .map(offset -> new LocalDate(millis, zone).plusDays(offset).getDayOfMonth())",
+            "        .collect(Collectors.toList());",
+            "    return days;",
+            "  }",
+            "}")
+        .addOutputLines("Test.java",
+            "import java.util.List;",
+            "import java.util.stream.Collectors;",
+            "import org.joda.time.LocalDate;",
+            "import org.joda.time.DateTimeZone;",
+            "class Test {",
+            "  List<Integer> days(List<Integer> offsets, long millis) {",
+            "    DateTimeZone zone = DateTimeZone.UTC;",
+            "    LocalDate localDate = new LocalDate(millis, zone);",
+            "    List<Integer> days = offsets.stream()",
+            "        .map(offset -> localDate.plusDays(offset).getDayOfMonth())",
+            "        .collect(Collectors.toList());",
+            "    return days;",
+            "  }",
+            "}")
+        .doTest();
+  }
+}
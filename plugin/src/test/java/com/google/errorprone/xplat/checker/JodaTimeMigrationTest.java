@@ -0,0 +1,156 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import com.google.errorprone.BugCheckerRefactoringTestHelper;
+import com.google.errorprone.CompilationTestHelper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link JodaTimeMigration}.
+ */
+@RunWith(JUnit4.class)
+public class JodaTimeMigrationTest {
+
+  private CompilationTestHelper compilationHelper;
+
+  @Before
+  public void setup() {
+    compilationHelper = CompilationTestHelper.newInstance(JodaTimeMigration.class, getClass());
+  }
+
+  @Test
+  public void positiveCases() {
+    compilationHelper.addSourceFile("JodaTimeMigrationPositiveCases.java").doTest();
+  }
+
+  @Test
+  public void unsupportedCases() {
+    compilationHelper
+        .addSourceFile("JodaTimeMigrationUnsupportedCases.java")
+        .addSourceFile("JodaTimeMigrationOtherFile.java")
+        .doTest();
+  }
+
+  @Test
+  public void negativeCases() {
+    compilationHelper.addSourceFile("JodaTimeMigrationNegativeCases.java").doTest();
+  }
+
+  @Test
+  public void refactorLocalClasses() {
+    BugCheckerRefactoringTestHelper.newInstance(new JodaTimeMigration(), getClass())
+        .addInputLines("Test.java",
+            "import org.joda.time.DateTime;",
+            "import org.joda.time.DateTimeZone;",
+            "import org.joda.time.LocalDate;",
+            "import org.joda.time.LocalDateTime;",
+            "import org.joda.time.LocalTime;",
+            "class Test {",
+            "  private DateTime atZone(LocalDateTime ldt, DateTimeZone zone) {",
+            "    return ldt.plusMillis(ldt.getMillisOfSecond()).toDateTime(zone);",
+            "  }",
+            "  private DateTime today(LocalTime time, DateTimeZone zone) {",
+            "    return time.toDateTimeToday(zone);",
+            "  }",
+            "  private DateTime now(LocalDate date, DateTimeZone zone) {",
+            "    return date.plusDays(1).toDateTimeAtCurrentTime(zone);",
+            "  }",
+            "  private int month() {",
+            "    return new LocalDate(2020, 6, 2).getMonthOfYear();",
+            "  }",
+            "  private LocalTime time() {",
+            "    return new LocalTime(8, 30, 0, 250);",
+            "  }",
+            "}")
+        .addOutputLines("Test.java",
+            "import java.time.LocalDate;",
+            "import java.time.LocalDateTime;",
+            "import java.time.LocalTime;",
+            "import java.time.ZoneId;",
+            "import java.time.ZonedDateTime;",
+            "import java.time.temporal.ChronoField;",
+            "import java.time.temporal.ChronoUnit;",
+            "class Test {",
+            "  private ZonedDateTime atZone(LocalDateTime ldt, ZoneId zone) {",
+            "    return ldt.plus(ldt.get(ChronoField.MILLI_OF_SECOND), ChronoUnit.MILLIS)"
+                + ".atZone(zone);",
+            "  }",
+            "  private ZonedDateTime today(LocalTime time, ZoneId zone) {",
+            "    return time.atDate(LocalDate.now(zone)).atZone(zone);",
+            "  }",
+            "  private ZonedDateTime now(LocalDate date, ZoneId zone) {",
+            "    return ZonedDateTime.now(zone).with(date.plusDays(1));",
+            "  }",
+            "  private int month() {",
+            "    return LocalDate.of(2020, 6, 2).getMonthValue();",
+            "  }",
+            "  private LocalTime time() {",
+            "    return LocalTime.of(8, 30, 0).plus(250, ChronoUnit.MILLIS);",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  public void refactorDateTime() {
+    BugCheckerRefactoringTestHelper.newInstance(new JodaTimeMigration(), getClass())
+        .addInputLines("Test.java",
+            "import java.util.List;",
+            "import org.joda.time.DateTime;",
+            "import org.joda.time.DateTimeZone;",
+            "import org.joda.time.Duration;",
+            "import org.joda.time.Instant;",
+            "class Test {",
+            "  private final Duration timeout = Duration.standardMinutes(5);",
+            "  private DateTime deadline(List<DateTime> starts) {",
+            "    DateTime start = starts.isEmpty() ? DateTime.now(DateTimeZone.UTC) : starts.get(0);",
+            "    return start.plus(timeout).withZone(DateTimeZone.getDefault());",
+            "  }",
+            "  private long elapsed(Instant start) {",
+            "    return new Instant().getMillis() - start.getMillis() + timeout.getMillis();",
+            "  }",
+            "  private boolean expired(long millis) {",
+            "    return new DateTime(millis, DateTimeZone.UTC).isBeforeNow();",
+            "  }",
+            "}")
+        .addOutputLines("Test.java",
+            "import java.time.Duration;",
+            "import java.time.Instant;",
+            "import java.time.ZoneId;",
+            "import java.time.ZoneOffset;",
+            "import java.time.ZonedDateTime;",
+            "import java.util.List;",
+            "class Test {",
+            "  private final Duration timeout = Duration.ofMinutes(5);",
+            "  private ZonedDateTime deadline(List<ZonedDateTime> starts) {",
+            "    ZonedDateTime start ="
+                + " starts.isEmpty() ? ZonedDateTime.now(ZoneOffset.UTC) : starts.get(0);",
+            "    return start.plus(timeout).withZoneSameInstant(ZoneId.systemDefault());",
+            "  }",
+            "  private long elapsed(Instant start) {",
+            "    return Instant.now().toEpochMilli() - start.toEpochMilli() + timeout.toMillis();",
+            "  }",
+            "  private boolean expired(long millis) {",
+            "    return Instant.ofEpochMilli(millis).atZone(ZoneOffset.UTC)"
+                + ".isBefore(ZonedDateTime.now());",
+            "  }",
+            "}")
+        .doTest();
+  }
+}
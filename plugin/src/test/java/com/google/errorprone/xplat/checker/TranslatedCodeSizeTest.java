@@ -0,0 +1,93 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.CompilationTestHelper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link TranslatedCodeSize}.
+ */
+@RunWith(JUnit4.class)
+public class TranslatedCodeSizeTest {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private CompilationTestHelper compilationHelper;
+
+  @Before
+  public void setup() {
+    compilationHelper = CompilationTestHelper.newInstance(TranslatedCodeSize.class, getClass());
+  }
+
+  @Test
+  public void positiveCases() {
+    compilationHelper.addSourceFile("TranslatedCodeSizePositiveCases.java")
+        .setArgs(ImmutableList.of("-XepOpt:TranslatedCodeSize:MaxBytes=3000"))
+        .doTest();
+  }
+
+  @Test
+  public void negativeCases() {
+    compilationHelper.addSourceFile("TranslatedCodeSizeNegativeCases.java").doTest();
+  }
+
+  @Test
+  public void report() throws IOException, JSONException {
+    Path report = temporaryFolder.getRoot().toPath().resolve("size.jsonl");
+
+    compilationHelper.addSourceFile("TranslatedCodeSizeNegativeCases.java")
+        .setArgs(ImmutableList.of(
+            "-XepOpt:TranslatedCodeSize:Report=" + report,
+            "-XepOpt:TranslatedCodeSize:JsWeights=CLASS=0"))
+        .doTest();
+
+    List<String> lines = Files.readAllLines(report, StandardCharsets.UTF_8);
+    assertThat(lines).hasSize(3);
+    assertThat(new JSONObject(lines.get(0)).getString("kind")).isEqualTo("compilation");
+
+    JSONObject outer = new JSONObject(lines.get(1));
+    assertThat(outer.getString("class"))
+        .isEqualTo("com.google.errorprone.xplat.checker.testdata.TranslatedCodeSizeNegativeCases");
+    assertThat(outer.getJSONObject("metrics").getInt("METHOD")).isEqualTo(2);
+    assertThat(outer.getJSONObject("metrics").getInt("FIELD")).isEqualTo(1);
+    // The super() call that javac adds to the constructor is part of the class
+    assertThat(outer.getJSONObject("metrics").getInt("STATEMENT")).isEqualTo(2);
+    // 2 methods, 1 field and 2 statements, with classes weighted 0
+    assertThat(outer.getLong("jsBytes")).isEqualTo(2 * 300 + 100 + 2 * 70);
+
+    JSONObject nested = new JSONObject(lines.get(2));
+    assertThat(nested.getString("class")).endsWith("TranslatedCodeSizeNegativeCases$Nested");
+    // So is the default constructor, along with its super() call
+    assertThat(nested.getJSONObject("metrics").getInt("METHOD")).isEqualTo(1);
+    assertThat(nested.getJSONObject("metrics").getInt("STATEMENT")).isEqualTo(1);
+  }
+}
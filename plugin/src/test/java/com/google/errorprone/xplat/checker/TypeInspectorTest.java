@@ -0,0 +1,134 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.sun.source.util.JavacTask;
+import com.sun.tools.javac.code.Type;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link TypeInspector}.
+ */
+@RunWith(JUnit4.class)
+public class TypeInspectorTest {
+
+  @Test
+  public void identicalDeclarationsAreInspectedOnce() throws IOException {
+    List<Type> types = fieldTypes(
+        "import java.util.List;",
+        "import java.util.Map;",
+        "class Test {",
+        "  static class Foo {}",
+        "  Map<String, List<Foo>> first;",
+        "  Map<String, List<Foo>> second;",
+        "  Map<String, List<Foo>>[] array;",
+        "}");
+    assertThat(types.get(0)).isNotSameInstanceAs(types.get(1));
+
+    Map<String, AtomicInteger> lookups = new ConcurrentHashMap<>();
+    TypeInspector<String> inspector = new TypeInspector<>(symbol -> {
+      lookups.computeIfAbsent(symbol.getSimpleName().toString(), unused -> new AtomicInteger())
+          .incrementAndGet();
+      return symbol.getSimpleName().contentEquals("Foo") ? "banned" : null;
+    });
+
+    for (Type type : types) {
+      assertThat(inspector.find(type)).isEqualTo("banned");
+    }
+
+    assertThat(lookups.get("Map").get()).isEqualTo(1);
+    assertThat(lookups.get("List").get()).isEqualTo(1);
+    assertThat(lookups.get("Foo").get()).isEqualTo(1);
+  }
+
+  @Test
+  public void canonicalKeys() throws IOException {
+    List<Type> types = fieldTypes(
+        "import java.util.List;",
+        "class Test<T extends Comparable<T>> {",
+        "  List<? extends T> first;",
+        "  List<? extends T> second;",
+        "  List<? super T> lower;",
+        "  List<T>[] array;",
+        "  List<T> list;",
+        "}");
+
+    assertThat(TypeInspector.canonicalKey(types.get(0)))
+        .isEqualTo(TypeInspector.canonicalKey(types.get(1)));
+    assertThat(TypeInspector.canonicalKey(types.get(0)))
+        .isNotEqualTo(TypeInspector.canonicalKey(types.get(2)));
+    assertThat(TypeInspector.canonicalKey(types.get(3)))
+        .isNotEqualTo(TypeInspector.canonicalKey(types.get(4)));
+  }
+
+  @Test
+  public void verdictsWithinCyclesAreNotMemoizedEarly() throws IOException {
+    List<Type> types = fieldTypes(
+        "interface Banned {}",
+        "class Test<T extends Comparable<T> & Banned> {",
+        "  T first;",
+        "  Comparable<T> second;",
+        "}");
+
+    TypeInspector<String> inspector = new TypeInspector<>(
+        symbol -> symbol.getSimpleName().contentEquals("Banned") ? "banned" : null);
+
+    assertThat(inspector.find(types.get(0))).isEqualTo("banned");
+    // Comparable<T> is inspected while T is, before Banned turns up
+    assertThat(inspector.find(types.get(1))).isEqualTo("banned");
+  }
+
+  /** Returns the types of the fields of the single top-level class of the given source. */
+  private static List<Type> fieldTypes(String... lines) throws IOException {
+    JavaFileObject source = new SimpleJavaFileObject(URI.create("string:///Test.java"),
+        JavaFileObject.Kind.SOURCE) {
+      @Override
+      public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+        return String.join("\n", lines);
+      }
+    };
+    JavacTask task = (JavacTask) ToolProvider.getSystemJavaCompiler()
+        .getTask(null, null, null, ImmutableList.of("-proc:none"), null,
+            ImmutableList.of(source));
+
+    List<Type> types = new ArrayList<>();
+    for (Element element : task.analyze()) {
+      for (Element member : ((TypeElement) element).getEnclosedElements()) {
+        if (member.getKind() == ElementKind.FIELD) {
+          types.add((Type) member.asType());
+        }
+      }
+    }
+    return types;
+  }
+}
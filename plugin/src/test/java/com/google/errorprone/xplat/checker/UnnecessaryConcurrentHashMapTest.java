@@ -14,8 +14,10 @@
 
 package com.google.errorprone.xplat.checker;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.errorprone.BugCheckerRefactoringTestHelper;
 import com.google.errorprone.CompilationTestHelper;
+import com.google.errorprone.ErrorProneFlags;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -56,13 +58,12 @@ public class UnnecessaryConcurrentHashMapTest {
             "  }",
             "}")
         .addOutputLines("Test.java",
-            "import java.util.Collections;",
             "import java.util.HashMap;",
             "import java.util.Map;",
             "import java.util.concurrent.ConcurrentHashMap;",
             "class Test {",
             "  private void test() {",
-            "    Map<String, Integer> map = Collections.synchronizedMap(new HashMap<>());",
+            "    Map<String, Integer> map = new HashMap<>();",
             "  }",
             "}")
         .doTest();
@@ -80,13 +81,12 @@ public class UnnecessaryConcurrentHashMapTest {
             "  }",
             "}")
         .addOutputLines("Test.java",
-            "import java.util.Collections;",
             "import java.util.HashMap;",
             "import java.util.Map;",
             "import java.util.concurrent.ConcurrentHashMap;",
             "class Test {",
             "  private void test() {",
-            "    Map<String, Integer> map = Collections.synchronizedMap(new HashMap<>());",
+            "    Map<String, Integer> map = new HashMap<>();",
             "  }",
             "}")
         .doTest();
@@ -104,14 +104,13 @@ public class UnnecessaryConcurrentHashMapTest {
             "  }",
             "}")
         .addOutputLines("Test.java",
-            "import java.util.Collections;",
             "import java.util.HashMap;",
             "import java.util.Map;",
             "import java.util.concurrent.ConcurrentHashMap;",
             "import java.util.concurrent.ConcurrentMap;",
             "class Test {",
             "  private void test() {",
-            "    Map<String, Integer> map = Collections.synchronizedMap(new HashMap<>());",
+            "    Map<String, Integer> map = new HashMap<>();",
             "  }",
             "}")
         .doTest();
@@ -151,7 +150,6 @@ public class UnnecessaryConcurrentHashMapTest {
             "  }",
             "}")
         .addOutputLines("Test.java",
-            "import java.util.Collections;",
             "import java.util.HashMap;",
             "import java.util.Map;",
             "import java.util.concurrent.ConcurrentHashMap;",
@@ -159,7 +157,7 @@ public class UnnecessaryConcurrentHashMapTest {
             "  private void test() {",
             "    Map<String, Integer> map;",
             "    int x = 1;",
-            "    map = Collections.synchronizedMap(new HashMap<>());",
+            "    map = new HashMap<>();",
             "  }",
             "}")
         .doTest();
@@ -179,7 +177,6 @@ public class UnnecessaryConcurrentHashMapTest {
             "  }",
             "}")
         .addOutputLines("Test.java",
-            "import java.util.Collections;",
             "import java.util.HashMap;",
             "import java.util.Map;",
             "import java.util.concurrent.ConcurrentHashMap;",
@@ -188,10 +185,273 @@ public class UnnecessaryConcurrentHashMapTest {
             "  private void test() {",
             "    Map<String, Integer> map;",
             "    int x = 1;",
-            "    map = Collections.synchronizedMap(new HashMap<>());",
+            "    map = new HashMap<>();",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  public void incompatibleInterfaceNamesTheSuggestedMap() {
+    compilationHelper
+        .addSourceLines("Test.java",
+            "import java.util.concurrent.ConcurrentMap;",
+            "import java.util.concurrent.ConcurrentHashMap;",
+            "class Test {",
+            "  private void confined() {",
+            "    // BUG: Diagnostic contains: not compatible with HashMap, which is suggested",
+            "    ConcurrentMap<String, Integer> map;",
+            "    // BUG: Diagnostic contains: so use a HashMap instead",
+            "    map = new ConcurrentHashMap<>();",
+            "  }",
+            "  private ConcurrentMap<String, Integer> shared() {",
+            "    // BUG: Diagnostic contains: not compatible with Collections.synchronizedMap,",
+            "    ConcurrentMap<String, Integer> map;",
+            "    // BUG: Diagnostic contains: Use Collections.synchronizedMap instead",
+            "    map = new ConcurrentHashMap<>();",
+            "    return map;",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  public void refactorShadowedName() {
+    BugCheckerRefactoringTestHelper.newInstance(new UnnecessaryConcurrentHashMap(), getClass())
+        .addInputLines("Test.java",
+            "import java.util.Map;",
+            "import java.util.concurrent.ConcurrentHashMap;",
+            "import java.util.concurrent.ConcurrentMap;",
+            "class Test {",
+            "  private void test() {",
+            "    {",
+            "      ConcurrentMap<String, Integer> map = null;",
+            "    }",
+            "    Map<String, Integer> map;",
+            "    map = new ConcurrentHashMap<>();",
+            "  }",
+            "}")
+        .addOutputLines("Test.java",
+            "import java.util.HashMap;",
+            "import java.util.Map;",
+            "import java.util.concurrent.ConcurrentHashMap;",
+            "import java.util.concurrent.ConcurrentMap;",
+            "class Test {",
+            "  private void test() {",
+            "    {",
+            "      ConcurrentMap<String, Integer> map = null;",
+            "    }",
+            "    Map<String, Integer> map;",
+            "    map = new HashMap<>();",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  public void refactorReturnedLocal() {
+    BugCheckerRefactoringTestHelper.newInstance(new UnnecessaryConcurrentHashMap(), getClass())
+        .addInputLines("Test.java",
+            "import java.util.Map;",
+            "import java.util.concurrent.ConcurrentHashMap;",
+            "class Test {",
+            "  private Map<String, Integer> test() {",
+            "    Map<String, Integer> map = new ConcurrentHashMap<>();",
+            "    map.put(\"a\", 1);",
+            "    return map;",
+            "  }",
+            "}")
+        .addOutputLines("Test.java",
+            "import java.util.Collections;",
+            "import java.util.HashMap;",
+            "import java.util.Map;",
+            "import java.util.concurrent.ConcurrentHashMap;",
+            "class Test {",
+            "  private Map<String, Integer> test() {",
+            "    Map<String, Integer> map = Collections.synchronizedMap(new HashMap<>());",
+            "    map.put(\"a\", 1);",
+            "    return map;",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  public void refactorCapturedLocal() {
+    BugCheckerRefactoringTestHelper.newInstance(new UnnecessaryConcurrentHashMap(), getClass())
+        .addInputLines("Test.java",
+            "import java.util.Map;",
+            "import java.util.concurrent.ConcurrentHashMap;",
+            "class Test {",
+            "  private Runnable test() {",
+            "    Map<String, Integer> map = new ConcurrentHashMap<>();",
+            "    return () -> map.put(\"a\", 1);",
+            "  }",
+            "}")
+        .addOutputLines("Test.java",
+            "import java.util.Collections;",
+            "import java.util.HashMap;",
+            "import java.util.Map;",
+            "import java.util.concurrent.ConcurrentHashMap;",
+            "class Test {",
+            "  private Runnable test() {",
+            "    Map<String, Integer> map = Collections.synchronizedMap(new HashMap<>());",
+            "    return () -> map.put(\"a\", 1);",
             "  }",
             "}")
         .doTest();
   }
 
-}
\ No newline at end of file
+  @Test
+  public void refactorLocalInsideLambda() {
+    BugCheckerRefactoringTestHelper.newInstance(new UnnecessaryConcurrentHashMap(), getClass())
+        .addInputLines("Test.java",
+            "import java.util.Map;",
+            "import java.util.concurrent.ConcurrentHashMap;",
+            "class Test {",
+            "  private Runnable test() {",
+            "    return () -> {",
+            "      Map<String, Integer> map = new ConcurrentHashMap<>();",
+            "      map.put(\"a\", 1);",
+            "    };",
+            "  }",
+            "}")
+        .addOutputLines("Test.java",
+            "import java.util.HashMap;",
+            "import java.util.Map;",
+            "import java.util.concurrent.ConcurrentHashMap;",
+            "class Test {",
+            "  private Runnable test() {",
+            "    return () -> {",
+            "      Map<String, Integer> map = new HashMap<>();",
+            "      map.put(\"a\", 1);",
+            "    };",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  public void refactorPublishedView() {
+    BugCheckerRefactoringTestHelper.newInstance(new UnnecessaryConcurrentHashMap(), getClass())
+        .addInputLines("Test.java",
+            "import java.util.Map;",
+            "import java.util.Set;",
+            "import java.util.concurrent.ConcurrentHashMap;",
+            "class Test {",
+            "  private Set<String> test() {",
+            "    Map<String, Integer> map = new ConcurrentHashMap<>();",
+            "    return map.keySet();",
+            "  }",
+            "}")
+        .addOutputLines("Test.java",
+            "import java.util.Collections;",
+            "import java.util.HashMap;",
+            "import java.util.Map;",
+            "import java.util.Set;",
+            "import java.util.concurrent.ConcurrentHashMap;",
+            "class Test {",
+            "  private Set<String> test() {",
+            "    Map<String, Integer> map = Collections.synchronizedMap(new HashMap<>());",
+            "    return map.keySet();",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  public void refactorPrivateField() {
+    BugCheckerRefactoringTestHelper.newInstance(new UnnecessaryConcurrentHashMap(), getClass())
+        .addInputLines("Test.java",
+            "import java.util.concurrent.ConcurrentHashMap;",
+            "class Test {",
+            "  private final ConcurrentHashMap<String, Integer> map = new ConcurrentHashMap<>();",
+            "  int get(String key) {",
+            "    return map.get(key);",
+            "  }",
+            "}")
+        .addOutputLines("Test.java",
+            "import java.util.Collections;",
+            "import java.util.HashMap;",
+            "import java.util.Map;",
+            "import java.util.concurrent.ConcurrentHashMap;",
+            "class Test {",
+            "  private final Map<String, Integer> map = Collections.synchronizedMap(new HashMap<>());",
+            "  int get(String key) {",
+            "    return map.get(key);",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  public void refactorPrivateFieldThreadConfined() {
+    BugCheckerRefactoringTestHelper.newInstance(new UnnecessaryConcurrentHashMap(), getClass())
+        .addInputLines("Test.java",
+            "import java.util.Map;",
+            "import java.util.concurrent.ConcurrentHashMap;",
+            "import javax.annotation.concurrent.NotThreadSafe;",
+            "@NotThreadSafe",
+            "class Test {",
+            "  private final Map<String, Integer> map;",
+            "  Test() {",
+            "    this.map = new ConcurrentHashMap<>();",
+            "  }",
+            "  int get(String key) {",
+            "    return this.map.get(key);",
+            "  }",
+            "}")
+        .addOutputLines("Test.java",
+            "import java.util.HashMap;",
+            "import java.util.Map;",
+            "import java.util.concurrent.ConcurrentHashMap;",
+            "import javax.annotation.concurrent.NotThreadSafe;",
+            "@NotThreadSafe",
+            "class Test {",
+            "  private final Map<String, Integer> map;",
+            "  Test() {",
+            "    this.map = new HashMap<>();",
+            "  }",
+            "  int get(String key) {",
+            "    return this.map.get(key);",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  public void refactorThreadConfinedAnnotationFlag() {
+    BugCheckerRefactoringTestHelper.newInstance(
+        new UnnecessaryConcurrentHashMap(ErrorProneFlags.fromMap(ImmutableMap.of(
+            "UnnecessaryConcurrentHashMap:ThreadConfinedAnnotations", "Test.UiThread"))),
+        getClass())
+        .addInputLines("Test.java",
+            "import java.util.Map;",
+            "import java.util.concurrent.ConcurrentHashMap;",
+            "@Test.UiThread",
+            "class Test {",
+            "  @interface UiThread {}",
+            "  private final Map<String, Integer> map = new ConcurrentHashMap<>();",
+            "  private final Map<String, Integer> listeners = new ConcurrentHashMap<>();",
+            "  Runnable get(String key) {",
+            "    return () -> listeners.get(key);",
+            "  }",
+            "}")
+        .addOutputLines("Test.java",
+            "import java.util.Collections;",
+            "import java.util.HashMap;",
+            "import java.util.Map;",
+            "import java.util.concurrent.ConcurrentHashMap;",
+            "@Test.UiThread",
+            "class Test {",
+            "  @interface UiThread {}",
+            "  private final Map<String, Integer> map = new HashMap<>();",
+            "  private final Map<String, Integer> listeners ="
+                + " Collections.synchronizedMap(new HashMap<>());",
+            "  Runnable get(String key) {",
+            "    return () -> listeners.get(key);",
+            "  }",
+            "}")
+        .doTest();
+  }
+}
@@ -14,11 +14,24 @@
 
 package com.google.errorprone.xplat.checker;
 
+import static com.google.common.truth.Truth.assertThat;
+
 import com.google.common.collect.ImmutableList;
 import com.google.errorprone.CompilationTestHelper;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
@@ -28,6 +41,9 @@ import org.junit.runners.JUnit4;
 @RunWith(JUnit4.class)
 public class XplatBansTest {
 
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   private CompilationTestHelper compilationHelper;
 
   @Before
@@ -67,4 +83,99 @@ public class XplatBansTest {
         .doTest();
   }
 
+  @Test
+  public void ruleReport() throws IOException, JSONException {
+    Path report = temporaryFolder.getRoot().toPath().resolve("rules.jsonl");
+
+    compilationHelper.addSourceFile("XplatBansPositiveCases.java")
+        .addSourceFile("XplatBansNegativeCases.java")
+        .setArgs(ImmutableList.of("-XepOpt:XplatBans:RuleReport=" + report))
+        .doTest();
+
+    Map<String, JSONObject> rules = new HashMap<>();
+    Map<String, Long> probes = new HashMap<>();
+    List<String> lines = Files.readAllLines(report, StandardCharsets.UTF_8);
+    assertThat(new JSONObject(lines.get(0)).getString("kind")).isEqualTo("compilation");
+    for (String line : lines.subList(1, lines.size())) {
+      JSONObject entry = new JSONObject(line);
+      if (entry.getString("kind").equals("banSection")) {
+        probes.put(entry.getString("section"), entry.getLong("probes"));
+      } else {
+        assertThat(entry.getString("kind")).isEqualTo("banRule");
+        rules.put(entry.getString("section") + ":" + entry.getString("rule"), entry);
+      }
+    }
+
+    JSONObject chronology = rules.get("classes:org.joda.time.Chronology");
+    assertThat(chronology.getLong("lookups")).isGreaterThan(0L);
+    assertThat(chronology.getLong("hits")).isGreaterThan(0L);
+    assertThat(chronology.getLong("suppressedHits")).isGreaterThan(0L);
+
+    // rules that never fire are listed as well
+    assertThat(rules.get("classes:org.joda.time.JodaTimePermission").getLong("hits"))
+        .isEqualTo(0L);
+    assertThat(rules.get("packages:org.joda.time.tz").getLong("lookups")).isGreaterThan(0L);
+
+    // classes without a rule are probed as well, so there are more probes than rule lookups
+    long classLookups = rules.entrySet().stream()
+        .filter(rule -> rule.getKey().startsWith("classes:"))
+        .mapToLong(rule -> rule.getValue().optLong("lookups"))
+        .sum();
+    assertThat(probes.get("classes")).isGreaterThan(classLookups);
+  }
+
+  private static final String TARGETS_CONFIG = "{"
+      + "\"classes\": {}, \"packages\": {}, \"methods\": {},"
+      + " \"targets\": {"
+      + "  \"ios\": {\"classes\": {\"java.util.Random\": \"no seeded sequences.\"},"
+      + "    \"packages\": {\"java.util.concurrent\": \"\"}},"
+      + "  \"web\": {\"classes\": {\"java.util.Random\": \"not on the web.\"}},"
+      + "  \"android\": {\"methods\": {\"java.lang.String\": {\"strip\": \"API 30.\"}}}"
+      + " }%s}";
+
+  @Test
+  public void targets() throws IOException {
+    compilationHelper
+        .addSourceLines("Targets.java",
+            "import java.util.Random;",
+            "import java.util.concurrent.Semaphore;",
+            "class Targets {",
+            "  // BUG: Diagnostic contains: banned due to no seeded sequences. (targets: ios, web)",
+            "  Random random;",
+            "  // BUG: Diagnostic contains: cross platform incompatibility. (targets: ios)",
+            "  Semaphore semaphore;",
+            "  String strip(String s) {",
+            "    // BUG: Diagnostic contains: due to API 30. (targets: android)",
+            "    return s.strip();",
+            "  }",
+            "}")
+        .setArgs(ImmutableList.of("-XepOpt:XplatBans:JSON=" + writeConfig(TARGETS_CONFIG, "")))
+        .doTest();
+  }
+
+  @Test
+  public void enabledTargets() throws IOException {
+    compilationHelper
+        .addSourceLines("Targets.java",
+            "import java.util.Random;",
+            "import java.util.concurrent.Semaphore;",
+            "class Targets {",
+            "  // BUG: Diagnostic contains: (targets: web)",
+            "  Random random;",
+            "  Semaphore semaphore;",
+            "  String strip(String s) {",
+            "    return s.strip();",
+            "  }",
+            "}")
+        .setArgs(ImmutableList.of("-XepOpt:XplatBans:JSON="
+            + writeConfig(TARGETS_CONFIG, ", \"enabledTargets\": [\"web\"]")))
+        .doTest();
+  }
+
+  private String writeConfig(String format, String extra) throws IOException {
+    File config = temporaryFolder.newFile();
+    Files.write(config.toPath(),
+        String.format(format, extra).getBytes(StandardCharsets.UTF_8));
+    return config.getPath();
+  }
 }
@@ -0,0 +1,141 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.CompilationTestHelper;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link XplatEvents}.
+ */
+@RunWith(JUnit4.class)
+public class XplatEventsTest {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void unitAnalysisAndDiagnostics() throws IOException {
+    List<RecordedEvent> events = record(() ->
+        CompilationTestHelper.newInstance(LegacyTimeBan.class, getClass())
+            .addSourceFile("LegacyTimeBanPositiveCases.java")
+            .doTest());
+
+    List<RecordedEvent> units = named(events, "com.google.errorprone.xplat.UnitAnalysis");
+    assertThat(units).hasSize(1);
+    assertThat(units.get(0).getString("checker")).isEqualTo("LegacyTimeBan");
+    assertThat(units.get(0).getString("file")).endsWith("LegacyTimeBanPositiveCases.java");
+    assertThat(units.get(0).getLong("calls")).isGreaterThan(0L);
+
+    List<RecordedEvent> diagnostics = named(events, "com.google.errorprone.xplat.Diagnostic");
+    assertThat(diagnostics).isNotEmpty();
+    assertThat(diagnostics.stream().map(event -> event.getString("checker")).distinct()
+        .collect(Collectors.toList())).containsExactly("LegacyTimeBan");
+    assertThat(diagnostics.stream().map(event -> event.getString("rule")).distinct()
+        .collect(Collectors.toList())).containsExactly("LegacyTimeBan");
+  }
+
+  @Test
+  public void diagnosticsOfBanRules() throws IOException {
+    Path config = temporaryFolder.getRoot().toPath().resolve("bans.json");
+    Files.copy(Paths.get(
+        "src/test/resources/com/google/errorprone/xplat/checker/testdata/XplatCustomBansTest.json"),
+        config);
+
+    List<RecordedEvent> events = record(() ->
+        CompilationTestHelper.newInstance(XplatBans.class, getClass())
+            .addSourceFile("XplatBansCustomPositiveCases.java")
+            .setArgs(ImmutableList.of("-XepOpt:XplatBans:JSON=" + config))
+            .doTest());
+
+    List<String> rules = named(events, "com.google.errorprone.xplat.Diagnostic").stream()
+        .map(event -> event.getString("rule"))
+        .distinct()
+        .collect(Collectors.toList());
+    assertThat(rules).containsAtLeast("java.util.HashMap", "java.io",
+        "java.util.Random#longs(long)", "java.util.Random#nextG*");
+  }
+
+  @Test
+  public void configLoaded() throws IOException {
+    Path config = temporaryFolder.getRoot().toPath().resolve("bans.json");
+    Files.copy(Paths.get(
+        "src/test/resources/com/google/errorprone/xplat/checker/testdata/XplatCustomBansTest.json"),
+        config);
+
+    List<RecordedEvent> events = record(() ->
+        CompilationTestHelper.newInstance(XplatBans.class, getClass())
+            .addSourceFile("XplatBansCustomNegativeCases.java")
+            .setArgs(ImmutableList.of("-XepOpt:XplatBans:JSON=" + config))
+            .doTest());
+
+    List<RecordedEvent> loaded = named(events, "com.google.errorprone.xplat.ConfigLoaded");
+    assertThat(loaded).hasSize(1);
+    assertThat(loaded.get(0).getString("sources")).endsWith(config.toString());
+    assertThat(loaded.get(0).getInt("classBans")).isGreaterThan(0);
+  }
+
+  @Test
+  public void disabledWithoutRecording() {
+    assertThat(XplatEvents.isRecording()).isFalse();
+    assertThat(XplatEvents.unitAnalysisEnabled()).isFalse();
+  }
+
+  @Test
+  public void recordingsAreTracked() {
+    try (Recording recording = new Recording()) {
+      recording.start();
+      assertThat(XplatEvents.isRecording()).isTrue();
+      recording.stop();
+    }
+    assertThat(XplatEvents.isRecording()).isFalse();
+  }
+
+  private List<RecordedEvent> record(Runnable compilation) throws IOException {
+    Path dump = temporaryFolder.newFile("recording.jfr").toPath();
+    try (Recording recording = new Recording()) {
+      recording.enable(XplatEvents.ConfigLoaded.class);
+      recording.enable(XplatEvents.UnitAnalysis.class);
+      recording.enable(XplatEvents.Diagnostic.class);
+      recording.start();
+      compilation.run();
+      recording.stop();
+      recording.dump(dump);
+    }
+    return RecordingFile.readAllEvents(dump);
+  }
+
+  private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+    return events.stream()
+        .filter(event -> event.getEventType().getName().equals(name))
+        .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,286 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static org.junit.Assert.fail;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link XplatPlugin}, which compile the checker test data with {@code
+ * -Xplugin:Xplat} and compare the reported findings with the {@code // BUG: Diagnostic contains:}
+ * comments. There is a test for each checker that the plugin runs.
+ */
+@RunWith(JUnit4.class)
+public class XplatPluginTest {
+
+  private static final Path TESTDATA =
+      Paths.get("src/test/resources/com/google/errorprone/xplat/checker/testdata");
+
+  private static final Pattern BUG_COMMENT = Pattern.compile("// BUG: Diagnostic contains: (.*)");
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void j2objcMethodName() throws IOException {
+    assertMatchesBugComments("J2objcMethodNamePositiveCases.java", "J2objcMethodName",
+        "J2ObjCMethodName:MethodNameLength=100");
+    assertMatchesBugComments("J2objcMethodNameMangle.java", "J2objcMethodName",
+        "J2ObjCMethodName:MethodNameLength=-1");
+  }
+
+  @Test
+  public void jodaTimeAllocationInLoop() throws IOException {
+    assertMatchesBugComments("JodaTimeAllocationInLoopPositiveCases.java",
+        "JodaTimeAllocationInLoop");
+    assertMatchesBugComments("JodaTimeAllocationInLoopNegativeCases.java",
+        "JodaTimeAllocationInLoop");
+  }
+
+  @Test
+  public void jodaTimeLocal() throws IOException {
+    assertMatchesBugComments("JodaTimeLocalPositiveCases.java", "JodaTimeLocal");
+    assertMatchesBugComments("JodaTimeLocalNegativeCases.java", "JodaTimeLocal");
+  }
+
+  @Test
+  public void jodaTimeMigration() throws IOException {
+    assertMatchesBugComments("JodaTimeMigrationPositiveCases.java", "JodaTimeMigration");
+    assertMatchesBugComments("JodaTimeMigrationUnsupportedCases.java", "JodaTimeMigration");
+    assertMatchesBugComments("JodaTimeMigrationNegativeCases.java", "JodaTimeMigration");
+  }
+
+  @Test
+  public void jodaTimeObjectParamBan() throws IOException {
+    assertMatchesBugComments("JodaTimeObjectParamPositiveCases.java", "JodaTimeObjectParamBan");
+    assertMatchesBugComments("JodaTimeObjectParamNegativeCases.java", "JodaTimeObjectParamBan");
+  }
+
+  @Test
+  public void lazyInitBan() throws IOException {
+    assertMatchesBugComments("LazyInitBanPositiveCases.java", "LazyInitBan");
+    assertMatchesBugComments("LazyInitBanNegativeCases.java", "LazyInitBan");
+  }
+
+  @Test
+  public void translatedCodeSize() throws IOException {
+    assertMatchesBugComments("TranslatedCodeSizePositiveCases.java", "TranslatedCodeSize",
+        "TranslatedCodeSize:MaxBytes=3000");
+    assertMatchesBugComments("TranslatedCodeSizeNegativeCases.java", "TranslatedCodeSize");
+  }
+
+  @Test
+  public void unnecessaryConcurrentHashMap() throws IOException {
+    assertMatchesBugComments("UnnecessaryConcurrentHashMapTestPositive.java",
+        "UnnecessaryConcurrentHashMap");
+    assertMatchesBugComments("UnnecessaryConcurrentHashMapTestNegative.java",
+        "UnnecessaryConcurrentHashMap");
+  }
+
+  @Test
+  public void legacyTimeBanPositiveCases() throws IOException {
+    assertMatchesBugComments("LegacyTimeBanPositiveCases.java", "LegacyTimeBan");
+  }
+
+  @Test
+  public void legacyTimeBanNegativeCases() throws IOException {
+    assertMatchesBugComments("LegacyTimeBanNegativeCases.java", "LegacyTimeBan");
+  }
+
+  @Test
+  public void xplatBansPositiveCases() throws IOException {
+    assertMatchesBugComments("XplatBansPositiveCases.java", "XplatBans");
+  }
+
+  @Test
+  public void xplatBansNegativeCases() throws IOException {
+    assertMatchesBugComments("XplatBansNegativeCases.java", "XplatBans");
+  }
+
+  @Test
+  public void selectedChecks() throws IOException {
+    List<Diagnostic<? extends JavaFileObject>> errors =
+        compile("LegacyTimeBanPositiveCases.java", "Xplat:Checks=XplatBans");
+
+    assertThat(errors).isEmpty();
+  }
+
+  @Test
+  public void unknownCheck() throws IOException {
+    try {
+      compile("LegacyTimeBanPositiveCases.java", "Xplat:Checks=NoSuchCheck");
+      fail("expected the plugin to reject the unknown checker");
+    } catch (RuntimeException e) {
+      assertThat(Throwables.getRootCause(e)).hasMessageThat().contains("NoSuchCheck");
+    }
+  }
+
+  @Test
+  public void changedLinesOnly() throws Exception {
+    Path repo = temporaryFolder.newFolder("repo").toPath();
+    Path changed = repo.resolve("Changed.java");
+    Path unchanged = repo.resolve("Unchanged.java");
+    Files.write(changed, ImmutableList.of(
+        "import java.util.Date;",
+        "class Changed {",
+        "  Date before() {",
+        "    return new Date();",
+        "  }",
+        "  Date after() {",
+        "    return new Date();",
+        "  }",
+        "}"));
+    Files.write(unchanged, ImmutableList.of(
+        "import java.util.Date;",
+        "class Unchanged {",
+        "  Date date = new Date();",
+        "}"));
+    git(repo, "init", "-q");
+    git(repo, "add", ".");
+    git(repo, "-c", "user.name=Test", "-c", "user.email=test@example.com", "commit", "-q",
+        "-m", "Initial commit");
+
+    Files.write(changed, ImmutableList.of(
+        "import java.util.Date;",
+        "class Changed {",
+        "  Date before() {",
+        "    return new Date();",
+        "  }",
+        "  Date after() {",
+        "    return new Date(0);",
+        "  }",
+        "}"));
+    Path untracked = repo.resolve("Untracked.java");
+    Files.write(untracked, ImmutableList.of(
+        "import java.util.Date;",
+        "class Untracked {",
+        "  Date date;",
+        "}"));
+
+    ListMultimap<String, Long> reported = ArrayListMultimap.create();
+    for (Diagnostic<? extends JavaFileObject> error : compile(
+        ImmutableList.of(changed.toFile(), unchanged.toFile(), untracked.toFile()),
+        "Xplat:Checks=LegacyTimeBan", "Xplat:DiffBase=HEAD", "Xplat:DiffDir=" + repo)) {
+      reported.put(Paths.get(error.getSource().toUri()).getFileName().toString(),
+          error.getLineNumber());
+    }
+
+    assertThat(reported.keySet()).containsExactly("Changed.java", "Untracked.java");
+    assertThat(reported.get("Changed.java")).containsExactly(6L, 7L);
+    assertThat(reported.get("Untracked.java")).containsExactly(3L);
+  }
+
+  private static void git(Path directory, String... args) throws Exception {
+    Process process = new ProcessBuilder(ImmutableList.<String>builder()
+        .add("git").add(args).build())
+        .directory(directory.toFile())
+        .redirectErrorStream(true)
+        .start();
+    String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+    assertWithMessage("git %s: %s", String.join(" ", args), output)
+        .that(process.waitFor()).isEqualTo(0);
+  }
+
+  private void assertMatchesBugComments(String fileName, String check, String... pluginArgs)
+      throws IOException {
+    Map<Long, String> expected = new HashMap<>();
+    List<String> lines = Files.readAllLines(TESTDATA.resolve(fileName));
+    for (int i = 0; i < lines.size(); i++) {
+      Matcher matcher = BUG_COMMENT.matcher(lines.get(i));
+      if (matcher.find()) {
+        // The comment is on the line before the finding; line numbers start at 1.
+        expected.put((long) i + 2, matcher.group(1));
+      }
+    }
+
+    ListMultimap<Long, String> reported = ArrayListMultimap.create();
+    for (Diagnostic<? extends JavaFileObject> finding : compile(fileName,
+        ImmutableList.<String>builder().add("Xplat:Checks=" + check).add(pluginArgs).build()
+            .toArray(new String[0]))) {
+      // Other test data that the file refers to is compiled from the class path as well.
+      if (Paths.get(finding.getSource().toUri()).endsWith(fileName)) {
+        reported.put(finding.getLineNumber(), finding.getMessage(Locale.ROOT));
+      }
+    }
+
+    assertWithMessage("lines with findings in %s", fileName).that(reported.keySet())
+        .containsExactlyElementsIn(expected.keySet());
+    for (Map.Entry<Long, String> bug : expected.entrySet()) {
+      assertWithMessage("findings on line %s of %s", bug.getKey(), fileName)
+          .that(String.join("\n", reported.get(bug.getKey()))).contains(bug.getValue());
+    }
+  }
+
+  private List<Diagnostic<? extends JavaFileObject>> compile(String fileName,
+      String... pluginArgs) throws IOException {
+    return compile(ImmutableList.of(TESTDATA.resolve(fileName).toFile()), pluginArgs);
+  }
+
+  private List<Diagnostic<? extends JavaFileObject>> compile(List<File> sources,
+      String... pluginArgs) throws IOException {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    try (StandardJavaFileManager fileManager =
+        compiler.getStandardFileManager(diagnostics, Locale.ROOT, null)) {
+      String plugin = String.join(" ", ImmutableList.<String>builder()
+          .add(XplatPlugin.NAME).add(pluginArgs).build());
+      compiler.getTask(null, fileManager, diagnostics,
+          ImmutableList.of(
+              "-Xplugin:" + plugin,
+              "-classpath", System.getProperty("java.class.path"),
+              "-d", temporaryFolder.newFolder().getPath()),
+          null, fileManager.getJavaFileObjectsFromFiles(sources)).call();
+    }
+
+    // The findings of the checkers at any severity, but none of javac's own diagnostics.
+    List<Diagnostic<? extends JavaFileObject>> findings = new ArrayList<>();
+    for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+      if (diagnostic.getCode().endsWith(".proc.messager")) {
+        findings.add(diagnostic);
+      }
+    }
+    return findings;
+  }
+}
@@ -0,0 +1,63 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker.testdata;
+
+import com.google.j2objc.annotations.ObjectiveCName;
+import java.util.HashMap;
+
+public class J2objcMethodNameAllMethods {
+
+  // BUG: Diagnostic contains: ComGoogleErrorproneXplatCheckerTestdataJ2objcMethodNameAllMethods_initWithJavaUtilHashMap_
+  public J2objcMethodNameAllMethods(HashMap<String, String> map) {
+  }
+
+  // BUG: Diagnostic contains: ComGoogleErrorproneXplatCheckerTestdataJ2objcMethodNameAllMethods_instanceMethodWithJavaUtilHashMap_
+  public void instanceMethod(HashMap<String, String> map) {
+  }
+
+  // BUG: Diagnostic contains: ComGoogleErrorproneXplatCheckerTestdataJ2objcMethodNameAllMethods_privateMethodWithInt_
+  private void privateMethod(int x) {
+  }
+
+  @ObjectiveCName("shared")
+  // BUG: Diagnostic contains: has the same Objective-C selector as second(long): shared
+  public void first(int x) {
+  }
+
+  @ObjectiveCName("shared")
+  // BUG: Diagnostic contains: has the same Objective-C selector as first(int): shared
+  public void second(long x) {
+  }
+
+  public interface Callback {
+
+    // BUG: Diagnostic contains: ComGoogleErrorproneXplatCheckerTestdataJ2objcMethodNameAllMethods_Callback_onResultWithJavaUtilHashMap_
+    void onResult(HashMap<String, String> result);
+  }
+
+  public static class CallbackImpl implements Callback {
+
+    // The selector is declared by Callback, so only Callback is warned against.
+    @Override
+    public void onResult(HashMap<String, String> result) {
+    }
+
+    // Methods of anonymous classes are not checked.
+    private final Object anonymous = new Object() {
+      public void anonymousMethod(HashMap<String, String> map) {
+      }
+    };
+  }
+}
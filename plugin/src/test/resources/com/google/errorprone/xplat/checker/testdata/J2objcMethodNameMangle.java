@@ -42,6 +42,11 @@ public class J2objcMethodNameMangle {
     return x;
   }
 
+  // BUG: Diagnostic contains: ComGoogleErrorproneXplatCheckerTestdataJ2objcMethodNameMangle_primitivesWithInt_withLongArray_withJavaUtilHashMapArray_
+  public static void primitives(int x, long[] y, HashMap<Object, Set<String>>[] z) {
+    return;
+  }
+
   @ObjectiveCName("renamedMethod")
   // BUG: Diagnostic contains: ComGoogleErrorproneXplatCheckerTestdataJ2objcMethodNameMangle_renamedMethod
   public static void hi() {
@@ -0,0 +1,59 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker.testdata;
+
+import java.util.List;
+import java.util.function.Supplier;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+
+public class JodaTimeAllocationInLoopNegativeCases {
+
+  private static final DateTimeZone ZONE = DateTimeZone.forID("Europe/Paris");
+
+  public void hoisted(List<Long> millis) {
+    DateTimeZone zone = DateTimeZone.forID("Europe/Paris");
+    for (long instant : millis) {
+      System.out.println(instant + zone.getOffset(instant));
+    }
+  }
+
+  public void runOnce(List<LocalDate> dates) {
+    for (DateTime start = new DateTime(0L, ZONE); start.getYear() < 2020; ) {
+      break;
+    }
+
+    for (LocalDate date : dates.isEmpty() ? List.of(new LocalDate(0L, ZONE)) : dates) {
+      System.out.println(date);
+    }
+  }
+
+  public Supplier<DateTime> lambda() {
+    return () -> new DateTime(0L, ZONE);
+  }
+
+  public void anonymousClass(List<Long> millis) {
+    for (long instant : millis) {
+      Runnable runnable = new Runnable() {
+        @Override
+        public void run() {
+          System.out.println(new DateTime(0L, ZONE));
+        }
+      };
+      runnable.run();
+    }
+  }
+}
@@ -0,0 +1,71 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.errorprone.xplat.checker.testdata;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.joda.time.LocalDateTime;
+import org.joda.time.LocalTime;
+
+public class JodaTimeAllocationInLoopPositiveCases {
+
+  public void constructors(List<Long> millis) {
+    for (long instant : millis) {
+      // BUG: Diagnostic contains: Constructing DateTime inside this loop
+      System.out.println(new DateTime(instant, DateTimeZone.UTC));
+    }
+
+    for (int i = 0; i < millis.size(); i++) {
+      // BUG: Diagnostic contains: can be computed once before the loop
+      System.out.println(new LocalDate(2020, 6, 2).plusDays(i));
+    }
+  }
+
+  public void zoneLookups(List<LocalDateTime> times, String id) {
+    int i = 0;
+    while (i < times.size()) {
+      // BUG: Diagnostic contains: Calling LocalDateTime.toDateTime inside this loop
+      System.out.println(times.get(i).toDateTime(DateTimeZone.forID(id)));
+      i++;
+    }
+
+    do {
+      // BUG: Diagnostic contains: Calling DateTimeZone.getDefault inside this loop
+      System.out.println(DateTimeZone.getDefault());
+    } while (--i > 0);
+  }
+
+  public void conversions(List<LocalDate> dates, List<LocalTime> times, DateTimeZone zone) {
+    for (LocalDate date : dates) {
+      // BUG: Diagnostic contains: Calling LocalDate.toDateTimeAtStartOfDay inside this loop
+      System.out.println(date.toDateTimeAtStartOfDay(zone));
+    }
+
+    for (LocalTime time : times) {
+      // BUG: Diagnostic contains: Calling LocalTime.toDateTimeToday inside this loop
+      System.out.println(time.toDateTimeToday(zone));
+    }
+  }
+
+  public List<DateTime> streams(List<Long> millis) {
+    return millis.stream()
+        // BUG: Diagnostic contains: Constructing DateTime inside this stream lambda
+        .map(instant -> new DateTime(instant, DateTimeZone.forID("Europe/Paris")))
+        .collect(Collectors.toList());
+  }
+}
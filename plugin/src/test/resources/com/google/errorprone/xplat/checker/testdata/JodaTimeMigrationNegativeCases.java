@@ -0,0 +1,27 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.errorprone.xplat.checker.testdata;
+
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+
+public class JodaTimeMigrationNegativeCases {
+
+  // Would clash with java.time.Duration, but nothing is migrated in this file
+  public static class Duration {}
+
+  public ZonedDateTime startOfDay(LocalDate date) {
+    return date.atStartOfDay(ZonedDateTime.now().getZone());
+  }
+}
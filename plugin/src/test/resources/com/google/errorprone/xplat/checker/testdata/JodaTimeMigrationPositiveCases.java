@@ -0,0 +1,33 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.errorprone.xplat.checker.testdata;
+
+// BUG: Diagnostic contains: This file can be migrated from Joda-Time to java.time
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.joda.time.LocalDate;
+
+public class JodaTimeMigrationPositiveCases {
+
+  private final Duration timeout = Duration.standardSeconds(30);
+
+  private DateTime deadline(DateTime start) {
+    return start.plus(timeout).withZone(DateTimeZone.UTC);
+  }
+
+  private boolean isWeekend(LocalDate date) {
+    return date.getDayOfWeek() >= 6;
+  }
+}
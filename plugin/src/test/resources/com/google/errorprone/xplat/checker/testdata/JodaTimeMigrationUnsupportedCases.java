@@ -0,0 +1,49 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.errorprone.xplat.checker.testdata;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalTime;
+import org.joda.time.Period;
+
+public class JodaTimeMigrationUnsupportedCases {
+
+  // BUG: Diagnostic contains: The type of lastRun, which can be used by other files, cannot be
+  DateTime lastRun;
+
+  // BUG: Diagnostic contains: The signature of nextWeek(org.joda.time.DateTime), which can be used
+  public DateTime nextWeek(DateTime start) {
+    // BUG: Diagnostic contains: org.joda.time.DateTime#plus(org.joda.time.Period) cannot be
+    return start.plus(Period.weeks(1));
+  }
+
+  private long remaining(JodaTimeMigrationOtherFile other) {
+    // The deadline would still be a Joda-Time DateTime
+    // BUG: Diagnostic contains: JodaTimeMigrationOtherFile.getDeadline(), which has Joda-Time in
+    DateTime deadline = other.getDeadline();
+    return deadline.getMillis() - System.currentTimeMillis();
+  }
+
+  private long millis(DateTime start) {
+    // This one could be migrated, but the rest of the file cannot
+    return start.getMillis();
+  }
+
+  private DateTime today(LocalTime time) {
+    // The zone would have to be computed twice
+    // BUG: Diagnostic contains: DateTimeZone.forID("UTC"), which would have to be moved or repeated
+    return time.toDateTimeToday(DateTimeZone.forID("UTC"));
+  }
+}
@@ -16,7 +16,9 @@ package com.google.errorprone.xplat.checker.testdata;
 
 import java.util.Date;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeComparator;
 import org.joda.time.LocalDateTime;
+import org.joda.time.MutableDateTime;
 
 
 public class JodaTimeObjectParamNegativeCases {
@@ -44,6 +46,18 @@ public class JodaTimeObjectParamNegativeCases {
     // method (not being checked)
     time.plusYears(1);
 
+    // overrides a method of java.lang.Object
+    time2.equals(null);
+
+    // method with object params, but using boxed longs
+    DateTimeComparator.getInstance().compare(new Long(1), Long.valueOf(2));
+
+    // anonymous class with object param, but using a boxed long
+    MutableDateTime time3 = new MutableDateTime(new Long(1)) {};
+
+    // method with object param that isn't a joda time class
+    test1.equals(null);
+
 
   }
 }
\ No newline at end of file
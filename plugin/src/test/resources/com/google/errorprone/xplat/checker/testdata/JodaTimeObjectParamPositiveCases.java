@@ -15,7 +15,10 @@
 package com.google.errorprone.xplat.checker.testdata;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeComparator;
 import org.joda.time.LocalDateTime;
+import org.joda.time.MutableDateTime;
+import org.joda.time.convert.ConverterManager;
 
 
 public class JodaTimeObjectParamPositiveCases {
@@ -30,5 +33,16 @@ public class JodaTimeObjectParamPositiveCases {
     // BUG: Diagnostic contains: LocalDateTime(java.lang.Object) is a banned constructor
     LocalDateTime time2 = new LocalDateTime(ob);
 
+    // testing anonymous classes with object param (not boxed long)
+    // BUG: Diagnostic contains: MutableDateTime(java.lang.Object) is a banned constructor
+    MutableDateTime time3 = new MutableDateTime(ob) {};
+
+    // testing instance methods with object params
+    // BUG: Diagnostic contains: DateTimeComparator.compare(java.lang.Object,java.lang.Object)
+    DateTimeComparator.getInstance().compare(time, ob);
+
+    // BUG: Diagnostic contains: ConverterManager.getInstantConverter(java.lang.Object)
+    ConverterManager.getInstance().getInstantConverter(ob);
+
   }
 }
\ No newline at end of file
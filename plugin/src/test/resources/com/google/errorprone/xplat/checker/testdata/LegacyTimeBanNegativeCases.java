@@ -66,4 +66,17 @@ public class LegacyTimeBanNegativeCases {
     @AllowLegacyTime("Required by legacy API")
     Calendar local = returnCalendar();
   }
+
+  // constructors, invocations and method references
+  @AllowLegacyTime
+  public long expressions() {
+    System.out.println(new Date());
+    Runnable runnable = TimeZone::getDefault;
+    return Calendar.getInstance().getTimeInMillis();
+  }
+
+  // modern time classes
+  public long modern() {
+    return java.time.Instant.now().toEpochMilli();
+  }
 }
\ No newline at end of file
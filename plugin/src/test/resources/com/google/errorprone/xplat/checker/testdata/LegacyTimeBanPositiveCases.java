@@ -17,6 +17,8 @@ package com.google.errorprone.xplat.checker.testdata;
 import com.google.errorprone.xplat.checker.AllowLegacyTime;
 
 import java.util.Calendar;
+import java.util.List;
+import java.util.function.Supplier;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.TimeZone;
@@ -45,12 +47,14 @@ public class LegacyTimeBanPositiveCases {
   // tests method
   // BUG: Diagnostic contains: java.util.Calendar is banned for cross platform development
   public Calendar returnCalendar() {
+    // BUG: Diagnostic contains: java.util.Calendar is banned for cross platform development
     return Calendar.getInstance();
   }
 
   // tests method
   // BUG: Diagnostic contains: java.util.TimeZone is banned for cross platform development
   public TimeZone returnTimeZone() {
+    // BUG: Diagnostic contains: java.util.TimeZone is banned for cross platform development
     return TimeZone.getDefault();
   }
 
@@ -62,4 +66,39 @@ public class LegacyTimeBanPositiveCases {
     Calendar test = Calendar.getInstance();
   }
 
+  // tests type arguments
+  // BUG: Diagnostic contains: java.util.Date is banned for cross platform development
+  private List<Date> dates;
+
+  // BUG: Diagnostic contains: java.util.TimeZone is banned for cross platform development
+  public List<TimeZone[]> returnTimeZones() {
+    return null;
+  }
+
+  // BUG: Diagnostic contains: java.util.Date is banned for cross platform development
+  public <T extends Date> List<? super T> returnBounded() {
+    return null;
+  }
+
+  // tests constructors, invocations and method references
+  public long expressions() {
+    // BUG: Diagnostic contains: java.util.Date is banned for cross platform development
+    System.out.println(new Date());
+
+    // BUG: Diagnostic contains: java.util.Calendar.Builder is banned for cross platform development
+    System.out.println(new Calendar.Builder());
+
+    // BUG: Diagnostic contains: java.util.Date is banned for cross platform development
+    System.out.println(new java.util.ArrayList<Date>());
+
+    // BUG: Diagnostic contains: java.util.Date is banned for cross platform development
+    Supplier<?> supplier = Date::new;
+
+    // BUG: Diagnostic contains: java.util.TimeZone is banned for cross platform development
+    supplier = TimeZone::getDefault;
+
+    // BUG: Diagnostic contains: java.util.Calendar is banned for cross platform development
+    return Calendar.getInstance().getTimeInMillis();
+  }
+
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.errorprone.xplat.checker.testdata;
+
+public class TranslatedCodeSizeNegativeCases {
+
+  private final int value;
+
+  public TranslatedCodeSizeNegativeCases(int value) {
+    this.value = value;
+  }
+
+  public int value() {
+    return value;
+  }
+
+  public static class Nested {
+
+    public String name() {
+      return "nested";
+    }
+  }
+}
@@ -0,0 +1,61 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.errorprone.xplat.checker.testdata;
+
+import java.util.function.Supplier;
+
+// BUG: Diagnostic contains: above the budget of 3000 bytes
+public class TranslatedCodeSizePositiveCases {
+
+  private static final int[] TABLE = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17,
+      18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36, 37, 38, 39, 40};
+
+  public static String name(int value) {
+    switch (value) {
+      case 1:
+        return "one";
+      case 2:
+        return "two";
+      case 3:
+        return "three";
+      case 4:
+        return "four";
+      case 5:
+        return "five";
+      default:
+        return "many";
+    }
+  }
+
+  public static Runnable runnable() {
+    return new Runnable() {
+      @Override
+      public void run() {
+        System.out.println(TABLE.length);
+      }
+    };
+  }
+
+  public static Supplier<String> supplier() {
+    return () -> name(TABLE[0]);
+  }
+
+  // Member classes are estimated on their own.
+  public static class Small {
+
+    public int value() {
+      return 1;
+    }
+  }
+}
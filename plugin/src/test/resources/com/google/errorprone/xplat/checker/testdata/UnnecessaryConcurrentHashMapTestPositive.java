@@ -14,6 +14,7 @@
 
 package com.google.errorprone.xplat.checker.testdata;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -58,5 +59,13 @@ public class UnnecessaryConcurrentHashMapTestPositive {
       // BUG: Diagnostic contains: ConcurrentHashMap is not well supported on iOS
       map4 = new ConcurrentHashMap<>();
     }
+
+    // Tests map nested in a type argument
+    // BUG: Diagnostic contains: ConcurrentHashMap is not well supported on iOS
+    List<ConcurrentHashMap<String, Integer>> maps;
+
+    // Tests array of maps
+    // BUG: Diagnostic contains: ConcurrentHashMap is not well supported on iOS
+    ConcurrentHashMap<String, Integer>[] mapArray;
   }
 }
\ No newline at end of file
@@ -30,6 +30,8 @@ public class XplatBansCustomNegativeCases {
     rand.doubles();
     rand.longs();
     rand.nextInt();
+    rand.longs(1L, 0L, 2L);
+    rand.nextBoolean();
 
     HashSet<String> set = new HashSet<>();
     set.add("1");
@@ -14,7 +14,9 @@
 
 package com.google.errorprone.xplat.checker.testdata;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.HashMap;
 import java.io.CharArrayReader;
 import java.util.Random;
@@ -58,6 +60,34 @@ public class XplatBansCustomPositiveCases {
     // BUG: Diagnostic contains: Use of ints() is not allowed, as java.util.Random has been banned due to other number types being cooler.
     rand.ints(1L);
 
+    // Tests custom method ban of a single overload
+    // BUG: Diagnostic contains: Use of longs(long) is not allowed, as java.util.Random has been banned due to streams being too long.
+    rand.longs(1L);
+
+    // Tests custom method ban with a wildcard
+    // BUG: Diagnostic contains: Use of nextGaussian() is not allowed, as java.util.Random has been banned due to bells being the wrong shape.
+    rand.nextGaussian();
+
+    // Tests custom method ban called through a subclass
+    LinkedHashSet<String> linkedSet = new LinkedHashSet<>();
+    // BUG: Diagnostic contains: Use of contains() is not allowed, as java.util.HashSet has been banned due to sets being a surprise.
+    linkedSet.contains("test");
+
+    // Tests custom method ban of a method that the banned class inherits
+    // BUG: Diagnostic contains: Use of add(java.lang.Object) is not allowed, as java.util.LinkedHashSet has been banned due to insertion order being overrated.
+    linkedSet.add("test");
+    java.util.Set<String> anySet = linkedSet;
+    anySet.add("test");
+
+    // Tests custom method ban of an overridden interface method
+    ArrayList<String> list = new ArrayList<>();
+    // BUG: Diagnostic contains: Use of isEmpty() is not allowed, as java.util.Collection has been banned due to collections never being empty.
+    list.isEmpty();
+
+    // Tests custom method ban in a method reference
+    // BUG: Diagnostic contains: Use of isEmpty() is not allowed, as java.util.Collection has been banned
+    java.util.function.Predicate<ArrayList<String>> empty = ArrayList::isEmpty;
+
   }
 
 
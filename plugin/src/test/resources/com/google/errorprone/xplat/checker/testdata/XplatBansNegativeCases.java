@@ -63,6 +63,20 @@ public class XplatBansNegativeCases {
     DateTime dt3;
 
     System.out.println(dt.toString());
+
+    // test allowed method reference, field and class literal
+    java.util.function.Function<DateTime, Integer> year = DateTime::getYear;
+    System.out.println(DateTimeZone.UTC);
+    System.out.println(DateTime.class);
+  }
+
+  // Test annotation suppression of references and supertypes
+  @XplatBanSuppression
+  private abstract class Suppressed implements org.joda.time.ReadWritablePeriod {
+
+    private Object days() {
+      return org.joda.time.Days.ZERO;
+    }
   }
 
   // Test annotation suppression
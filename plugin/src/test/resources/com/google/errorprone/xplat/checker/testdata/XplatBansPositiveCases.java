@@ -14,6 +14,8 @@
 
 package com.google.errorprone.xplat.checker.testdata;
 
+import static org.joda.time.Days.ONE;
+
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.LocalDateTime;
@@ -23,6 +25,11 @@ import org.joda.time.chrono.BuddhistChronology;
 import org.joda.time.Chronology;
 import org.joda.time.DateMidnight;
 import org.joda.time.tz.FixedDateTimeZone;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import org.joda.time.ReadWritablePeriod;
 
 
 public class XplatBansPositiveCases {
@@ -164,6 +171,52 @@ public class XplatBansPositiveCases {
   }
 
 
+  private class Generics {
+
+    // tests a banned class in a type argument
+    // BUG: Diagnostic contains: Use of org.joda.time.Days
+    private Map<String, Days> daysByName;
+
+    // tests an array of a banned class
+    // BUG: Diagnostic contains: Use of org.joda.time.MutableDateTime
+    private MutableDateTime[] times;
+
+    // tests a wildcard bound from a banned package
+    // BUG: Diagnostic contains: Use of org.joda.time.tz
+    private List<? extends FixedDateTimeZone> zones;
+
+    // tests a created method that returns a nested type argument with a banned type
+    // BUG: Diagnostic contains: Use of org.joda.time.DateMidnight
+    private List<List<DateMidnight>> returnMidnights() {
+      // tests a constructor with a banned type argument
+      // BUG: Diagnostic contains: Use of org.joda.time.DateMidnight
+      return new ArrayList<List<DateMidnight>>();
+    }
+  }
+
+  private void references() {
+    // tests a method reference to a banned class
+    // BUG: Diagnostic contains: Use of org.joda.time.Days
+    IntFunction<?> days = Days::days;
+
+    // tests a static field read from a banned class
+    // BUG: Diagnostic contains: Use of org.joda.time.Days
+    System.out.println(Days.ZERO);
+
+    // tests a statically imported field from a banned class
+    // BUG: Diagnostic contains: Use of org.joda.time.Days
+    System.out.println(ONE);
+
+    // tests a class literal of a banned class
+    // BUG: Diagnostic contains: Use of org.joda.time.MutableDateTime
+    System.out.println(MutableDateTime.class);
+  }
+
+  // tests a supertype that is banned
+  // BUG: Diagnostic contains: Use of org.joda.time.ReadWritablePeriod
+  private abstract class BannedSupertype implements ReadWritablePeriod {
+  }
+
   public static void main(String[] args) {
     XplatBansPositiveCases m = new XplatBansPositiveCases();
 